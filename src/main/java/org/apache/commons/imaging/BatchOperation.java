@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.imaging;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.imaging.common.ImageMetadata;
+
+/**
+ * An operation applied to each file of a batch by
+ * {@link Imaging#processAll(Iterable, BatchOperation, java.util.function.Consumer)}.
+ * <p>
+ * Operations are called concurrently from several threads, so they must
+ * not share mutable state without synchronization. The operations
+ * returned by the factory methods give each call its own copy of the
+ * parameters map, because parsers may modify it.
+ *
+ * @param <T> the type of the result for each file
+ */
+@FunctionalInterface
+public interface BatchOperation<T> {
+
+    /**
+     * Processes one file.
+     *
+     * @param file the file
+     * @return the result for the file
+     * @throws ImageReadException if the file cannot be parsed
+     * @throws IOException if the file cannot be read
+     */
+    T process(File file) throws ImageReadException, IOException;
+
+    /**
+     * Gets an operation that calls {@link Imaging#getImageInfo(File, Map)}.
+     *
+     * @param params optional parameters (nulls permitted)
+     * @return the operation
+     */
+    static BatchOperation<ImageInfo> imageInfo(final Map<String, Object> params) {
+        return file -> Imaging.getImageInfo(file,
+                params == null ? null : new HashMap<>(params));
+    }
+
+    /**
+     * Gets an operation that calls {@link Imaging#getMetadata(File, Map)}.
+     *
+     * @param params optional parameters (nulls permitted)
+     * @return the operation
+     */
+    static BatchOperation<ImageMetadata> metadata(final Map<String, Object> params) {
+        return file -> Imaging.getMetadata(file,
+                params == null ? null : new HashMap<>(params));
+    }
+
+    /**
+     * Gets an operation that calls {@link Imaging#getBufferedImage(File, Map)}.
+     *
+     * @param params optional parameters (nulls permitted)
+     * @return the operation
+     */
+    static BatchOperation<BufferedImage> bufferedImage(final Map<String, Object> params) {
+        return file -> Imaging.getBufferedImage(file,
+                params == null ? null : new HashMap<>(params));
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.imaging;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Runs a {@link BatchOperation} over many files on an executor.
+ * <p>
+ * The calling thread submits files and delivers results, so the consumer
+ * is never called concurrently. At most {@code maxPending} files are
+ * submitted but not yet delivered; once that many are outstanding the
+ * calling thread waits for a result before submitting another file. This
+ * bounds both the executor queue and the number of decoded results held
+ * in memory, however long the file sequence is. Failures are only
+ * counted; the consumer sees each of them.
+ */
+final class BatchProcessor<T> {
+    private final BatchOperation<T> operation;
+    private final CompletionService<BatchResult<T>> completionService;
+    private final int maxPending;
+    private final Consumer<? super BatchResult<T>> consumer;
+    private final List<Future<BatchResult<T>>> pending = new ArrayList<>();
+    private long failures;
+
+    BatchProcessor(final BatchOperation<T> operation, final ExecutorService executor,
+            final int maxPending, final Consumer<? super BatchResult<T>> consumer) {
+        if (maxPending <= 0) {
+            throw new IllegalArgumentException("Invalid maximum pending count: " + maxPending);
+        }
+        this.operation = operation;
+        this.completionService = new ExecutorCompletionService<>(executor);
+        this.maxPending = maxPending;
+        this.consumer = consumer;
+    }
+
+    long run(final Iterable<File> files) throws InterruptedException {
+        boolean succeeded = false;
+        try {
+            for (final File file : files) {
+                if (pending.size() >= maxPending) {
+                    deliver();
+                }
+                pending.add(completionService.submit(() -> process(file)));
+            }
+            while (!pending.isEmpty()) {
+                deliver();
+            }
+            succeeded = true;
+            return failures;
+        } finally {
+            if (!succeeded) {
+                for (final Future<BatchResult<T>> future : pending) {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+
+    private BatchResult<T> process(final File file) {
+        try {
+            return new BatchResult<>(file, operation.process(file), null);
+        } catch (final Exception e) {
+            return new BatchResult<>(file, null, e);
+        }
+    }
+
+    private void deliver() throws InterruptedException {
+        final Future<BatchResult<T>> future = completionService.take();
+        pending.remove(future);
+        final BatchResult<T> result;
+        try {
+            result = future.get();
+        } catch (final ExecutionException e) {
+            // process() catches every Exception, so only an Error gets here
+            final Throwable cause = e.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+        if (!result.isSuccess()) {
+            failures++;
+        }
+        consumer.accept(result);
+    }
+}
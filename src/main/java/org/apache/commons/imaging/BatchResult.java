@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.imaging;
+
+import java.io.File;
+
+/**
+ * The outcome of a {@link BatchOperation} for one file: either the value
+ * it returned or the exception it threw.
+ *
+ * @param <T> the type of the result value
+ */
+public final class BatchResult<T> {
+    private final File file;
+    private final T value;
+    private final Exception exception;
+
+    BatchResult(final File file, final T value, final Exception exception) {
+        this.file = file;
+        this.value = value;
+        this.exception = exception;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Gets the value returned by the operation.
+     *
+     * @return the value, or null if the operation failed
+     */
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * Gets the exception thrown by the operation.
+     *
+     * @return the exception, or null if the operation succeeded
+     */
+    public Exception getException() {
+        return exception;
+    }
+
+    public boolean isSuccess() {
+        return exception == null;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult[" + file + ": " + (exception == null ? value : exception) + "]";
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.imaging;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Identifies image formats from a fixed window of leading bytes.
+ * <p>
+ * Signatures are grouped by their first byte, so each header is compared
+ * only against the few signatures that can match it. Formats without a
+ * distinctive magic number (ICO, PCX, WBMP, XBM) are recognized by checking
+ * their header fields for plausible values.
+ */
+final class FormatSniffer {
+
+    /**
+     * The number of leading bytes examined.
+     */
+    static final int HEADER_LENGTH = 64;
+
+    private static final Signature[][] SIGNATURES = createSignatures();
+
+    private FormatSniffer() {
+    }
+
+    /**
+     * A check of the header against one format.
+     */
+    private interface Check {
+        boolean matches(byte[] header, long sourceLength);
+    }
+
+    private static final class Signature {
+        final ImageFormat format;
+        final byte[] magic;
+        final Check check;
+
+        Signature(final ImageFormat format, final byte[] magic, final Check check) {
+            this.format = format;
+            this.magic = magic;
+            this.check = check;
+        }
+
+        boolean matches(final byte[] header, final long sourceLength) {
+            if (header.length < magic.length) {
+                return false;
+            }
+            for (int i = 0; i < magic.length; i++) {
+                if (header[i] != magic[i]) {
+                    return false;
+                }
+            }
+            return check == null || check.matches(header, sourceLength);
+        }
+    }
+
+    private static Signature[][] createSignatures() {
+        final List<Signature> signatures = new ArrayList<>();
+        // the order matters only between signatures sharing a first byte
+        add(signatures, ImageFormats.GIF, 0x47, 0x49);
+        add(signatures, ImageFormats.PNG, 0x89, 0x50);
+        add(signatures, ImageFormats.JPEG, 0xff, 0xd8);
+        add(signatures, ImageFormats.BMP, 0x42, 0x4d);
+        add(signatures, ImageFormats.TIFF, 0x4D, 0x4D);
+        add(signatures, ImageFormats.TIFF, 0x49, 0x49);
+        add(signatures, ImageFormats.PSD, 0x38, 0x42);
+        add(signatures, ImageFormats.PAM, 0x50, 0x37);
+        add(signatures, ImageFormats.PBM, 0x50, 0x31);
+        add(signatures, ImageFormats.PBM, 0x50, 0x34);
+        add(signatures, ImageFormats.PGM, 0x50, 0x32);
+        add(signatures, ImageFormats.PGM, 0x50, 0x35);
+        add(signatures, ImageFormats.PPM, 0x50, 0x33);
+        add(signatures, ImageFormats.PPM, 0x50, 0x36);
+        add(signatures, ImageFormats.JBIG2, 0x97, 0x4A, 0x42, 0x32);
+        add(signatures, ImageFormats.ICNS, 0x69, 0x63);
+        add(signatures, ImageFormats.DCX, 0xB1, 0x68);
+        add(signatures, ImageFormats.RGBE, 0x23, 0x3F);
+        signatures.add(new Signature(ImageFormats.ICO, new byte[] { 0, 0 }, FormatSniffer::isIco));
+        signatures.add(new Signature(ImageFormats.WBMP, new byte[] { 0 }, FormatSniffer::isWbmp));
+        signatures.add(new Signature(ImageFormats.PCX, new byte[] { 0x0A }, FormatSniffer::isPcx));
+        signatures.add(new Signature(ImageFormats.XBM, ascii("#define"), FormatSniffer::isXbm));
+        signatures.add(new Signature(ImageFormats.XPM, ascii("/*"), FormatSniffer::isXpm));
+
+        final Signature[][] result = new Signature[256][];
+        for (int b = 0; b < result.length; b++) {
+            final List<Signature> matching = new ArrayList<>();
+            for (final Signature signature : signatures) {
+                if ((0xff & signature.magic[0]) == b) {
+                    matching.add(signature);
+                }
+            }
+            result[b] = matching.toArray(new Signature[0]);
+        }
+        return result;
+    }
+
+    private static void add(final List<Signature> signatures, final ImageFormat format,
+            final int... magic) {
+        final byte[] bytes = new byte[magic.length];
+        for (int i = 0; i < magic.length; i++) {
+            bytes[i] = (byte) magic[i];
+        }
+        signatures.add(new Signature(format, bytes, null));
+    }
+
+    private static byte[] ascii(final String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Identifies the format of an image from its leading bytes.
+     *
+     * @param header the first bytes of the image, up to {@link #HEADER_LENGTH}
+     * @param sourceLength the length of the image data, or -1 if unknown
+     * @return the format, or {@link ImageFormats#UNKNOWN}
+     */
+    static ImageFormat sniff(final byte[] header, final long sourceLength) {
+        if (header.length == 0) {
+            return ImageFormats.UNKNOWN;
+        }
+        for (final Signature signature : SIGNATURES[0xff & header[0]]) {
+            if (signature.matches(header, sourceLength)) {
+                return signature.format;
+            }
+        }
+        return ImageFormats.UNKNOWN;
+    }
+
+    private static int uint16(final byte[] bytes, final int offset) {
+        return (0xff & bytes[offset]) | ((0xff & bytes[offset + 1]) << 8);
+    }
+
+    private static long uint32(final byte[] bytes, final int offset) {
+        return uint16(bytes, offset) | ((long) uint16(bytes, offset + 2) << 16);
+    }
+
+    /**
+     * Checks the icon directory and its first entry. A bare "00 00 01 00"
+     * is also the start of many TGA files, so the entry must be plausible.
+     */
+    private static boolean isIco(final byte[] header, final long sourceLength) {
+        if (header.length < 22) {
+            return false;
+        }
+        final int type = uint16(header, 2);
+        final int count = uint16(header, 4);
+        if ((type != 1 && type != 2) || count == 0) {
+            return false;
+        }
+        if (type == 1) {
+            final int planes = uint16(header, 10);
+            final int bitCount = uint16(header, 12);
+            if (planes > 1 || (bitCount != 24 && ((bitCount & (bitCount - 1)) != 0 || bitCount > 32))) {
+                return false;
+            }
+        }
+        final long bytesInResource = uint32(header, 14);
+        final long imageOffset = uint32(header, 18);
+        if (bytesInResource == 0 || imageOffset < 6 + 16L * count) {
+            return false;
+        }
+        return sourceLength < 0 || imageOffset + bytesInResource <= sourceLength;
+    }
+
+    /**
+     * Checks a type 0 header. The header fields are too short to be
+     * distinctive, so a match also requires the data length to agree with
+     * the image size, which needs a known source length.
+     */
+    private static boolean isWbmp(final byte[] header, final long sourceLength) {
+        if (sourceLength < 0 || header.length < 4 || (header[1] & 0x9f) != 0) {
+            return false;
+        }
+        int position = 2;
+        final long[] size = new long[2];
+        for (int i = 0; i < size.length; i++) {
+            long value = 0;
+            int b;
+            do {
+                if (position >= header.length || value > (Integer.MAX_VALUE >> 7)) {
+                    return false;
+                }
+                b = 0xff & header[position++];
+                value = (value << 7) | (b & 0x7f);
+            } while ((b & 0x80) != 0);
+            size[i] = value;
+        }
+        return size[0] > 0 && size[1] > 0
+                && sourceLength == position + (size[0] + 7) / 8 * size[1];
+    }
+
+    private static boolean isPcx(final byte[] header, final long sourceLength) {
+        if (header.length < 4 || (sourceLength >= 0 && sourceLength < 128)) {
+            return false;
+        }
+        final int version = 0xff & header[1];
+        final int encoding = 0xff & header[2];
+        final int bitsPerPixel = 0xff & header[3];
+        return (version == 0 || (version >= 2 && version <= 5))
+                && (encoding == 0 || encoding == 1)
+                && (bitsPerPixel == 1 || bitsPerPixel == 2 || bitsPerPixel == 4
+                        || bitsPerPixel == 8 || bitsPerPixel == 24 || bitsPerPixel == 32);
+    }
+
+    /**
+     * Checks for "#define name_width". A name too long to end within the
+     * header is accepted.
+     */
+    private static boolean isXbm(final byte[] header, final long sourceLength) {
+        int position = 7;
+        if (position >= header.length || !isSpace(header[position])) {
+            return false;
+        }
+        while (position < header.length && isSpace(header[position])) {
+            position++;
+        }
+        final int start = position;
+        while (position < header.length && !isSpace(header[position])) {
+            position++;
+        }
+        if (position == header.length) {
+            return position > start;
+        }
+        final String name = new String(header, start, position - start, StandardCharsets.US_ASCII);
+        return name.endsWith("_width");
+    }
+
+    /**
+     * Checks for the "/* XPM *&#47;" comment that starts every XPM file.
+     */
+    private static boolean isXpm(final byte[] header, final long sourceLength) {
+        int position = 2;
+        while (position < header.length && isSpace(header[position])) {
+            position++;
+        }
+        final byte[] xpm = ascii("XPM");
+        if (position + xpm.length > header.length) {
+            return false;
+        }
+        for (final byte b : xpm) {
+            if (header[position++] != b) {
+                return false;
+            }
+        }
+        while (position < header.length && isSpace(header[position])) {
+            position++;
+        }
+        return position + 1 < header.length && header[position] == '*' && header[position + 1] == '/';
+    }
+
+    private static boolean isSpace(final byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+}
@@ -102,7 +102,11 @@ public abstract class ImageParser extends BinaryFileParser {
     private static final Logger LOGGER = Logger.getLogger(ImageParser.class.getName());
 
     /**
-     * Gets an array of new instances of all image parsers.
+     * Gets an array of new instances of all built-in image parsers.
+     * <p>
+     * Parsers may be reused and shared between threads, so most callers
+     * should look up the instances held by
+     * {@link ImageParserRegistry#getDefault()} instead.
      *
      * @return A valid array of image parsers
      */
@@ -278,7 +282,9 @@ public abstract class ImageParser extends BinaryFileParser {
             return null;
         }
 
-        return getMetadata(new ByteSourceFile(file), params);
+        try (ByteSourceFile byteSource = new ByteSourceFile(file)) {
+            return getMetadata(byteSource, params);
+        }
     }
 
     /**
@@ -386,7 +392,9 @@ public abstract class ImageParser extends BinaryFileParser {
             return null;
         }
 
-        return getImageInfo(new ByteSourceFile(file), params);
+        try (ByteSourceFile byteSource = new ByteSourceFile(file)) {
+            return getImageInfo(byteSource, params);
+        }
     }
 
     /**
@@ -432,7 +440,9 @@ public abstract class ImageParser extends BinaryFileParser {
             return null;
         }
 
-        return getFormatCompliance(new ByteSourceFile(file));
+        try (ByteSourceFile byteSource = new ByteSourceFile(file)) {
+            return getFormatCompliance(byteSource);
+        }
     }
 
     /**
@@ -490,7 +500,9 @@ public abstract class ImageParser extends BinaryFileParser {
             return null;
         }
 
-        return getAllBufferedImages(new ByteSourceFile(file));
+        try (ByteSourceFile byteSource = new ByteSourceFile(file)) {
+            return getAllBufferedImages(byteSource);
+        }
     }
 
     /**
@@ -552,7 +564,9 @@ public abstract class ImageParser extends BinaryFileParser {
             return null;
         }
 
-        return getBufferedImage(new ByteSourceFile(file), params);
+        try (ByteSourceFile byteSource = new ByteSourceFile(file)) {
+            return getBufferedImage(byteSource, params);
+        }
     }
 
 
@@ -650,7 +664,9 @@ public abstract class ImageParser extends BinaryFileParser {
             return null;
         }
 
-        return getImageSize(new ByteSourceFile(file), params);
+        try (ByteSourceFile byteSource = new ByteSourceFile(file)) {
+            return getImageSize(byteSource, params);
+        }
     }
 
     /**
@@ -743,7 +759,9 @@ public abstract class ImageParser extends BinaryFileParser {
             LOGGER.finest(getName() + ": " + file.getName());
         }
 
-        return getICCProfileBytes(new ByteSourceFile(file), params);
+        try (ByteSourceFile byteSource = new ByteSourceFile(file)) {
+            return getICCProfileBytes(byteSource, params);
+        }
     }
 
     /**
@@ -799,7 +817,9 @@ public abstract class ImageParser extends BinaryFileParser {
             LOGGER.finest(getName() + ": " + file.getName());
         }
 
-        return dumpImageFile(new ByteSourceFile(file));
+        try (ByteSourceFile byteSource = new ByteSourceFile(file)) {
+            return dumpImageFile(byteSource);
+        }
     }
 
     /**
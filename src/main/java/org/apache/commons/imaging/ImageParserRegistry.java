@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.imaging;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A registry of reusable image parser instances with precomputed
+ * lookups by image format and file extension.
+ * <p>
+ * Image parsers keep no per-image state, so a single instance of each can
+ * serve any number of concurrent requests. The {@link #getDefault() default
+ * registry} holds the built-in parsers followed by any parsers found through
+ * {@link ServiceLoader}; third-party formats can be added by listing their
+ * {@code ImageParser} subclasses in a
+ * {@code META-INF/services/org.apache.commons.imaging.ImageParser} file, or
+ * by calling {@link #register(ImageParser)}.
+ * <p>
+ * A registered parser takes precedence over parsers registered before it
+ * for the formats and file extensions it accepts. All methods are
+ * thread-safe; lookups read an immutable snapshot and never block.
+ */
+public final class ImageParserRegistry {
+
+    private static final Logger LOGGER = Logger.getLogger(ImageParserRegistry.class.getName());
+
+    private static final ImageParserRegistry DEFAULT = createDefault();
+
+    private volatile Snapshot snapshot = new Snapshot();
+
+    /**
+     * Creates an empty registry.
+     */
+    public ImageParserRegistry() {
+        // empty
+    }
+
+    private static ImageParserRegistry createDefault() {
+        final ImageParserRegistry registry = new ImageParserRegistry();
+        for (final ImageParser imageParser : ImageParser.getAllImageParsers()) {
+            registry.add(imageParser, false);
+        }
+        final Iterator<ImageParser> it = ServiceLoader.load(ImageParser.class).iterator();
+        while (true) {
+            try {
+                if (!it.hasNext()) {
+                    break;
+                }
+                registry.register(it.next());
+            } catch (final ServiceConfigurationError e) {
+                LOGGER.log(Level.WARNING, "Could not load image parser: " + e.getMessage(), e);
+            }
+        }
+        return registry;
+    }
+
+    /**
+     * Gets the registry used by {@link Imaging}.
+     *
+     * @return the default registry
+     */
+    public static ImageParserRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Adds a parser to this registry.
+     *
+     * @param imageParser a parser that is safe to use from several threads
+     */
+    public void register(final ImageParser imageParser) {
+        add(imageParser, true);
+    }
+
+    private synchronized void add(final ImageParser imageParser, final boolean override) {
+        final Snapshot old = snapshot;
+        final Snapshot next = new Snapshot();
+        next.imageParsers.addAll(old.imageParsers);
+        next.imageParsers.add(imageParser);
+        next.byFormat.putAll(old.byFormat);
+        next.byExtension.putAll(old.byExtension);
+        next.anyExtension.addAll(old.anyExtension);
+
+        final ImageFormat[] types = imageParser.getAcceptedTypes();
+        if (types != null) {
+            for (final ImageFormat type : types) {
+                if (override || !next.byFormat.containsKey(type)) {
+                    next.byFormat.put(type, imageParser);
+                }
+            }
+        }
+        final String[] extensions = imageParser.getAcceptedExtensions();
+        if (extensions == null) {
+            next.anyExtension.add(imageParser);
+        } else {
+            for (final String extension : extensions) {
+                final String key = extension.toLowerCase(Locale.ENGLISH);
+                if (override || !next.byExtension.containsKey(key)) {
+                    next.byExtension.put(key, imageParser);
+                }
+            }
+        }
+        snapshot = next;
+    }
+
+    /**
+     * Gets the registered parsers in registration order.
+     *
+     * @return an unmodifiable list of parsers
+     */
+    public List<ImageParser> getImageParsers() {
+        return Collections.unmodifiableList(snapshot.imageParsers);
+    }
+
+    /**
+     * Gets the parser for an image format.
+     *
+     * @param format the image format
+     * @return the parser, or {@code null} if no parser accepts the format
+     */
+    public ImageParser getImageParser(final ImageFormat format) {
+        return snapshot.byFormat.get(format);
+    }
+
+    /**
+     * Gets the parser for a file name, based on its extension.
+     *
+     * @param fileName a file name or file path
+     * @return the parser, or {@code null} if no parser accepts the extension
+     */
+    public ImageParser getImageParserByFileName(final String fileName) {
+        final Snapshot current = snapshot;
+        final int index = fileName.lastIndexOf('.');
+        if (index >= 0) {
+            final ImageParser imageParser = current.byExtension.get(
+                    fileName.substring(index).toLowerCase(Locale.ENGLISH));
+            if (imageParser != null) {
+                return imageParser;
+            }
+        }
+        return current.anyExtension.isEmpty() ? null : current.anyExtension.get(0);
+    }
+
+    @Override
+    public String toString() {
+        final Snapshot current = snapshot;
+        final String[] names = new String[current.imageParsers.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = current.imageParsers.get(i).getName();
+        }
+        return "ImageParserRegistry" + Arrays.toString(names);
+    }
+
+    /**
+     * The registry contents, never modified once published.
+     */
+    private static final class Snapshot {
+        final List<ImageParser> imageParsers = new ArrayList<>();
+        final Map<ImageFormat, ImageParser> byFormat = new HashMap<>();
+        final Map<String, ImageParser> byExtension = new HashMap<>();
+        final List<ImageParser> anyExtension = new ArrayList<>();
+    }
+}
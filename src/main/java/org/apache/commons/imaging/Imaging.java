@@ -18,6 +18,7 @@ package org.apache.commons.imaging;
 
 import static org.apache.commons.imaging.ImagingConstants.PARAM_KEY_FILENAME;
 import static org.apache.commons.imaging.ImagingConstants.PARAM_KEY_FORMAT;
+import static org.apache.commons.imaging.ImagingConstants.PARAM_KEY_STREAM_MEMORY_LIMIT;
 
 import java.awt.Dimension;
 import java.awt.color.ICC_Profile;
@@ -31,8 +32,10 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 import org.apache.commons.imaging.common.ImageMetadata;
 import org.apache.commons.imaging.common.XmpEmbeddable;
@@ -113,26 +116,6 @@ import org.apache.commons.imaging.icc.IccProfileParser;
  */
 public final class Imaging {
 
-    private static final int[] MAGIC_NUMBERS_GIF = { 0x47, 0x49, };
-    private static final int[] MAGIC_NUMBERS_PNG = { 0x89, 0x50, };
-    private static final int[] MAGIC_NUMBERS_JPEG = { 0xff, 0xd8, };
-    private static final int[] MAGIC_NUMBERS_BMP = { 0x42, 0x4d, };
-    private static final int[] MAGIC_NUMBERS_TIFF_MOTOROLA = { 0x4D, 0x4D, };
-    private static final int[] MAGIC_NUMBERS_TIFF_INTEL = { 0x49, 0x49, };
-    private static final int[] MAGIC_NUMBERS_PAM = { 0x50, 0x37, };
-    private static final int[] MAGIC_NUMBERS_PSD = { 0x38, 0x42, };
-    private static final int[] MAGIC_NUMBERS_PBM_A = { 0x50, 0x31, };
-    private static final int[] MAGIC_NUMBERS_PBM_B = { 0x50, 0x34, };
-    private static final int[] MAGIC_NUMBERS_PGM_A = { 0x50, 0x32, };
-    private static final int[] MAGIC_NUMBERS_PGM_B = { 0x50, 0x35, };
-    private static final int[] MAGIC_NUMBERS_PPM_A = { 0x50, 0x33, };
-    private static final int[] MAGIC_NUMBERS_PPM_B = { 0x50, 0x36, };
-    private static final int[] MAGIC_NUMBERS_JBIG2_1 = { 0x97, 0x4A, };
-    private static final int[] MAGIC_NUMBERS_JBIG2_2 = { 0x42, 0x32, };
-    private static final int[] MAGIC_NUMBERS_ICNS = { 0x69, 0x63, };
-    private static final int[] MAGIC_NUMBERS_DCX = { 0xB1, 0x68, };
-    private static final int[] MAGIC_NUMBERS_RGBE = { 0x23, 0x3F, };
-
     private Imaging() {
         // Instances can not be created
     }
@@ -168,17 +151,7 @@ public final class Imaging {
             return false;
         }
 
-        final String normalizedFilename = fileName.toLowerCase(Locale.ENGLISH);
-
-        for (final ImageParser imageParser : ImageParser.getAllImageParsers()) {
-            for (final String extension : imageParser.getAcceptedExtensions()) {
-                if (normalizedFilename.endsWith(extension.toLowerCase(Locale.ENGLISH))) {
-                    return true;
-                }
-            }
-        }
-
-        return false;
+        return ImageParserRegistry.getDefault().getImageParserByFileName(fileName) != null;
     }
 
     /**
@@ -224,14 +197,27 @@ public final class Imaging {
      */
     public static ImageFormat guessFormat(final File file) throws ImageReadException,
             IOException {
-        return guessFormat(new ByteSourceFile(file));
+        try (ByteSourceFile byteSource = new ByteSourceFile(file)) {
+            return guessFormat(byteSource);
+        }
     }
 
-    private static boolean compareBytePair(final int[] a, final int[] b) {
-        if (a.length != 2 && b.length != 2) {
-            throw new RuntimeException("Invalid Byte Pair.");
+    private static ByteSourceInputStream createByteSource(final InputStream is,
+            final String fileName, final Map<String, Object> params) {
+        final Object memoryLimit = params == null ? null : params.get(PARAM_KEY_STREAM_MEMORY_LIMIT);
+        if (memoryLimit == null) {
+            return new ByteSourceInputStream(is, fileName);
         }
-        return (a[0] == b[0]) && (a[1] == b[1]);
+        return new ByteSourceInputStream(is, fileName, ((Number) memoryLimit).longValue());
+    }
+
+    private static Map<String, Object> withoutStreamParams(final Map<String, Object> params) {
+        if (params == null || !params.containsKey(PARAM_KEY_STREAM_MEMORY_LIMIT)) {
+            return params;
+        }
+        final Map<String, Object> result = new HashMap<>(params);
+        result.remove(PARAM_KEY_STREAM_MEMORY_LIMIT);
+        return result;
     }
 
 
@@ -261,72 +247,14 @@ public final class Imaging {
             return ImageFormats.UNKNOWN;
         }
 
-        try (InputStream is = byteSource.getInputStream()) {
-            final int i1 = is.read();
-            final int i2 = is.read();
-            if ((i1 < 0) || (i2 < 0)) {
-                throw new ImageReadException(
-                        "Couldn't read magic numbers to guess format.");
-            }
-
-            final int b1 = i1 & 0xff;
-            final int b2 = i2 & 0xff;
-            final int[] bytePair = { b1, b2, };
-
-            if (compareBytePair(MAGIC_NUMBERS_GIF, bytePair)) {
-                return ImageFormats.GIF;
-            // } else if (b1 == 0x00 && b2 == 0x00) // too similar to TGA
-            // {
-            // return ImageFormat.IMAGE_FORMAT_ICO;
-            } else if (compareBytePair(MAGIC_NUMBERS_PNG, bytePair)) {
-                return ImageFormats.PNG;
-            } else if (compareBytePair(MAGIC_NUMBERS_JPEG, bytePair)) {
-                return ImageFormats.JPEG;
-            } else if (compareBytePair(MAGIC_NUMBERS_BMP, bytePair)) {
-                return ImageFormats.BMP;
-            } else if (compareBytePair(MAGIC_NUMBERS_TIFF_MOTOROLA, bytePair)) {
-                return ImageFormats.TIFF;
-            } else if (compareBytePair(MAGIC_NUMBERS_TIFF_INTEL, bytePair)) {
-                return ImageFormats.TIFF;
-            } else if (compareBytePair(MAGIC_NUMBERS_PSD, bytePair)) {
-                return ImageFormats.PSD;
-            } else if (compareBytePair(MAGIC_NUMBERS_PAM, bytePair)) {
-                return ImageFormats.PAM;
-            } else if (compareBytePair(MAGIC_NUMBERS_PBM_A, bytePair)) {
-                return ImageFormats.PBM;
-            } else if (compareBytePair(MAGIC_NUMBERS_PBM_B, bytePair)) {
-                return ImageFormats.PBM;
-            } else if (compareBytePair(MAGIC_NUMBERS_PGM_A, bytePair)) {
-                return ImageFormats.PGM;
-            } else if (compareBytePair(MAGIC_NUMBERS_PGM_B, bytePair)) {
-                return ImageFormats.PGM;
-            } else if (compareBytePair(MAGIC_NUMBERS_PPM_A, bytePair)) {
-                return ImageFormats.PPM;
-            } else if (compareBytePair(MAGIC_NUMBERS_PPM_B, bytePair)) {
-                return ImageFormats.PPM;
-            } else if (compareBytePair(MAGIC_NUMBERS_JBIG2_1, bytePair)) {
-                final int i3 = is.read();
-                final int i4 = is.read();
-                if ((i3 < 0) || (i4 < 0)) {
-                    throw new ImageReadException(
-                            "Couldn't read magic numbers to guess format.");
-                }
-
-                final int b3 = i3 & 0xff;
-                final int b4 = i4 & 0xff;
-                final int[] bytePair2 = { b3, b4, };
-                if (compareBytePair(MAGIC_NUMBERS_JBIG2_2, bytePair2)) {
-                    return ImageFormats.JBIG2;
-                }
-            } else if (compareBytePair(MAGIC_NUMBERS_ICNS, bytePair)) {
-                return ImageFormats.ICNS;
-            } else if (compareBytePair(MAGIC_NUMBERS_DCX, bytePair)) {
-                return ImageFormats.DCX;
-            } else if (compareBytePair(MAGIC_NUMBERS_RGBE, bytePair)) {
-                return ImageFormats.RGBE;
-            }
-            return ImageFormats.UNKNOWN;
+        final byte[] header = byteSource.getHeader(FormatSniffer.HEADER_LENGTH);
+        if (header.length < 2) {
+            throw new ImageReadException(
+                    "Couldn't read magic numbers to guess format.");
         }
+        // draining a stream to find its length would defeat the point
+        final long length = byteSource instanceof ByteSourceInputStream ? -1 : byteSource.getLength();
+        return FormatSniffer.sniff(header, length);
     }
 
     /**
@@ -398,7 +326,9 @@ public final class Imaging {
      */
     public static ICC_Profile getICCProfile(final InputStream is, final String fileName,
             final Map<String, Object> params) throws ImageReadException, IOException {
-        return getICCProfile(new ByteSourceInputStream(is, fileName), params);
+        try (ByteSourceInputStream byteSource = createByteSource(is, fileName, params)) {
+            return getICCProfile(byteSource, withoutStreamParams(params));
+        }
     }
 
     /**
@@ -432,7 +362,9 @@ public final class Imaging {
      */
     public static ICC_Profile getICCProfile(final File file, final Map<String, Object> params)
             throws ImageReadException, IOException {
-        return getICCProfile(new ByteSourceFile(file), params);
+        try (ByteSourceFile byteSource = new ByteSourceFile(file)) {
+            return getICCProfile(byteSource, params);
+        }
     }
 
     protected static ICC_Profile getICCProfile(final ByteSource byteSource, final Map<String, Object> params)
@@ -535,7 +467,9 @@ public final class Imaging {
      */
     public static byte[] getICCProfileBytes(final File file, final Map<String, Object> params)
             throws ImageReadException, IOException {
-        return getICCProfileBytes(new ByteSourceFile(file), params);
+        try (ByteSourceFile byteSource = new ByteSourceFile(file)) {
+            return getICCProfileBytes(byteSource, params);
+        }
     }
 
     private static byte[] getICCProfileBytes(final ByteSource byteSource, final Map<String, Object> params)
@@ -634,7 +568,9 @@ public final class Imaging {
      */
     public static ImageInfo getImageInfo(final InputStream is, final String fileName,
             final Map<String, Object> params) throws ImageReadException, IOException {
-        return getImageInfo(new ByteSourceInputStream(is, fileName), params);
+        try (ByteSourceInputStream byteSource = createByteSource(is, fileName, params)) {
+            return getImageInfo(byteSource, withoutStreamParams(params));
+        }
     }
 
     /**
@@ -698,7 +634,9 @@ public final class Imaging {
      */
     public static ImageInfo getImageInfo(final File file, final Map<String, Object> params)
             throws ImageReadException, IOException {
-        return getImageInfo(new ByteSourceFile(file), params);
+        try (ByteSourceFile byteSource = new ByteSourceFile(file)) {
+            return getImageInfo(byteSource, params);
+        }
     }
 
     /**
@@ -728,26 +666,20 @@ public final class Imaging {
 
     private static ImageParser getImageParser(final ByteSource byteSource)
             throws ImageReadException, IOException {
+        final ImageParserRegistry registry = ImageParserRegistry.getDefault();
         final ImageFormat format = guessFormat(byteSource);
         if (!format.equals(ImageFormats.UNKNOWN)) {
-
-            final ImageParser[] imageParsers = ImageParser.getAllImageParsers();
-
-            for (final ImageParser imageParser : imageParsers) {
-                if (imageParser.canAcceptType(format)) {
-                    return imageParser;
-                }
+            final ImageParser imageParser = registry.getImageParser(format);
+            if (imageParser != null) {
+                return imageParser;
             }
         }
 
         final String fileName = byteSource.getFileName();
         if (fileName != null) {
-            final ImageParser[] imageParsers = ImageParser.getAllImageParsers();
-
-            for (final ImageParser imageParser : imageParsers) {
-                if (imageParser.canAcceptExtension(fileName)) {
-                    return imageParser;
-                }
+            final ImageParser imageParser = registry.getImageParserByFileName(fileName);
+            if (imageParser != null) {
+                return imageParser;
             }
         }
 
@@ -787,7 +719,9 @@ public final class Imaging {
      */
     public static Dimension getImageSize(final InputStream is, final String fileName,
             final Map<String, Object> params) throws ImageReadException, IOException {
-        return getImageSize(new ByteSourceInputStream(is, fileName), params);
+        try (ByteSourceInputStream byteSource = createByteSource(is, fileName, params)) {
+            return getImageSize(byteSource, withoutStreamParams(params));
+        }
     }
 
     /**
@@ -851,7 +785,9 @@ public final class Imaging {
      */
     public static Dimension getImageSize(final File file, final Map<String, Object> params)
             throws ImageReadException, IOException {
-        return getImageSize(new ByteSourceFile(file), params);
+        try (ByteSourceFile byteSource = new ByteSourceFile(file)) {
+            return getImageSize(byteSource, params);
+        }
     }
 
     public static Dimension getImageSize(final ByteSource byteSource, final Map<String, Object> params)
@@ -894,7 +830,9 @@ public final class Imaging {
      */
     public static String getXmpXml(final InputStream is, final String fileName, final Map<String, Object> params)
             throws ImageReadException, IOException {
-        return getXmpXml(new ByteSourceInputStream(is, fileName), params);
+        try (ByteSourceInputStream byteSource = createByteSource(is, fileName, params)) {
+            return getXmpXml(byteSource, withoutStreamParams(params));
+        }
     }
 
     /**
@@ -958,7 +896,9 @@ public final class Imaging {
      */
     public static String getXmpXml(final File file, final Map<String, Object> params)
             throws ImageReadException, IOException {
-        return getXmpXml(new ByteSourceFile(file), params);
+        try (ByteSourceFile byteSource = new ByteSourceFile(file)) {
+            return getXmpXml(byteSource, params);
+        }
     }
 
     /**
@@ -1087,7 +1027,9 @@ public final class Imaging {
      */
     public static ImageMetadata getMetadata(final InputStream is, final String fileName,
             final Map<String, Object> params) throws ImageReadException, IOException {
-        return getMetadata(new ByteSourceInputStream(is, fileName), params);
+        try (ByteSourceInputStream byteSource = createByteSource(is, fileName, params)) {
+            return getMetadata(byteSource, withoutStreamParams(params));
+        }
     }
 
     /**
@@ -1139,7 +1081,9 @@ public final class Imaging {
      */
     public static ImageMetadata getMetadata(final File file, final Map<String, Object> params)
             throws ImageReadException, IOException {
-        return getMetadata(new ByteSourceFile(file), params);
+        try (ByteSourceFile byteSource = new ByteSourceFile(file)) {
+            return getMetadata(byteSource, params);
+        }
     }
 
     private static ImageMetadata getMetadata(final ByteSource byteSource, final Map<String, Object> params)
@@ -1178,7 +1122,9 @@ public final class Imaging {
      */
     public static String dumpImageFile(final File file) throws ImageReadException,
             IOException {
-        return dumpImageFile(new ByteSourceFile(file));
+        try (ByteSourceFile byteSource = new ByteSourceFile(file)) {
+            return dumpImageFile(byteSource);
+        }
     }
 
     private static String dumpImageFile(final ByteSource byteSource)
@@ -1215,7 +1161,9 @@ public final class Imaging {
      */
     public static FormatCompliance getFormatCompliance(final File file)
             throws ImageReadException, IOException {
-        return getFormatCompliance(new ByteSourceFile(file));
+        try (ByteSourceFile byteSource = new ByteSourceFile(file)) {
+            return getFormatCompliance(byteSource);
+        }
     }
 
     private static FormatCompliance getFormatCompliance(final ByteSource byteSource)
@@ -1271,7 +1219,9 @@ public final class Imaging {
      */
     public static List<BufferedImage> getAllBufferedImages(final File file)
             throws ImageReadException, IOException {
-        return getAllBufferedImages(new ByteSourceFile(file));
+        try (ByteSourceFile byteSource = new ByteSourceFile(file)) {
+            return getAllBufferedImages(byteSource);
+        }
     }
 
 
@@ -1332,7 +1282,9 @@ public final class Imaging {
         if (params != null && params.containsKey(PARAM_KEY_FILENAME)) {
             fileName = (String) params.get(PARAM_KEY_FILENAME);
         }
-        return getBufferedImage(new ByteSourceInputStream(is, fileName), params);
+        try (ByteSourceInputStream byteSource = createByteSource(is, fileName, params)) {
+            return getBufferedImage(byteSource, withoutStreamParams(params));
+        }
     }
 
     /**
@@ -1401,7 +1353,9 @@ public final class Imaging {
      */
     public static BufferedImage getBufferedImage(final File file)
             throws ImageReadException, IOException {
-        return getBufferedImage(new ByteSourceFile(file), null);
+        try (ByteSourceFile byteSource = new ByteSourceFile(file)) {
+            return getBufferedImage(byteSource, null);
+        }
     }
 
 
@@ -1427,7 +1381,9 @@ public final class Imaging {
      */
     public static BufferedImage getBufferedImage(final File file, final Map<String, Object> params)
             throws ImageReadException, IOException {
-        return getBufferedImage(new ByteSourceFile(file), params);
+        try (ByteSourceFile byteSource = new ByteSourceFile(file)) {
+            return getBufferedImage(byteSource, params);
+        }
     }
 
 
@@ -1535,8 +1491,6 @@ public final class Imaging {
     public static void writeImage(final BufferedImage src, final OutputStream os,
             final ImageFormat format, Map<String, Object> params) throws ImageWriteException,
             IOException {
-        final ImageParser[] imageParsers = ImageParser.getAllImageParsers();
-
         // make sure params are non-null
         if (params == null) {
             params = new HashMap<>();
@@ -1544,13 +1498,7 @@ public final class Imaging {
 
         params.put(PARAM_KEY_FORMAT, format);
 
-        ImageParser imageParser = null;
-        for (final ImageParser imageParser2 : imageParsers) {
-            if (imageParser2.canAcceptType(format)) {
-                imageParser = imageParser2;
-                break;
-            }
-        }
+        final ImageParser imageParser = ImageParserRegistry.getDefault().getImageParser(format);
         if (imageParser != null) {
             imageParser.writeImage(src, os, params);
         } else {
@@ -1558,4 +1506,61 @@ public final class Imaging {
         }
     }
 
+    /**
+     * Applies an operation to many files in parallel on a built-in thread
+     * pool with one thread per available processor.
+     *
+     * @param <T> the type of the result for each file
+     * @param files the files to process
+     * @param operation the operation, for example {@link BatchOperation#imageInfo(Map)}
+     * @param consumer receives each result on the calling thread
+     * @return the number of files that failed
+     * @throws InterruptedException if the calling thread is interrupted;
+     * files not yet processed are cancelled
+     * @see #processAll(Iterable, BatchOperation, ExecutorService, int, Consumer)
+     */
+    public static <T> long processAll(final Iterable<File> files,
+            final BatchOperation<T> operation, final Consumer<? super BatchResult<T>> consumer)
+            throws InterruptedException {
+        final int threads = Runtime.getRuntime().availableProcessors();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            return processAll(files, operation, executor, 2 * threads, consumer);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Applies an operation to many files in parallel.
+     * <p>
+     * Results, including failures, are passed to the consumer in the order
+     * in which they complete. The consumer is called only from the calling
+     * thread, so it needs no synchronization. An exception thrown by the
+     * operation for one file is recorded in that file's result and does not
+     * stop the batch. Failed results are not retained; a caller that needs
+     * them keeps them from the consumer.
+     * <p>
+     * At most {@code maxPending} files are queued or being processed, or
+     * have results waiting for the consumer, at any time. Files are taken
+     * lazily from the iterable, so it may be backed by a directory walk of
+     * any length. The executor is not shut down.
+     *
+     * @param <T> the type of the result for each file
+     * @param files the files to process
+     * @param operation the operation, for example {@link BatchOperation#metadata(Map)}
+     * @param executor runs the operation
+     * @param maxPending the maximum number of files in flight
+     * @param consumer receives each result on the calling thread
+     * @return the number of files that failed
+     * @throws InterruptedException if the calling thread is interrupted;
+     * files not yet processed are cancelled
+     */
+    public static <T> long processAll(final Iterable<File> files,
+            final BatchOperation<T> operation, final ExecutorService executor,
+            final int maxPending, final Consumer<? super BatchResult<T>> consumer)
+            throws InterruptedException {
+        return new BatchProcessor<>(operation, executor, maxPending, consumer).run(files);
+    }
+
 }
@@ -117,6 +117,20 @@ public final class ImagingConstants {
      */
     public static final String PARAM_KEY_PIXEL_DENSITY = "PIXEL_DENSITY";
 
+    /**
+     * <p>Parameter key. Limits how many bytes of an input stream are cached
+     * in memory while it is read; older cached data is moved to a temporary
+     * file, or discarded when the parser reads the stream forward only.</p>
+     *
+     * <p>Applies to read operations on an {@code InputStream}.</p>
+     *
+     * <p>Valid values: a non-negative {@code Number} of bytes. By default
+     * the whole stream is cached in memory.</p>
+     *
+     * @see org.apache.commons.imaging.common.bytesource.ByteSourceInputStream
+     */
+    public static final String PARAM_KEY_STREAM_MEMORY_LIMIT = "STREAM_MEMORY_LIMIT";
+
     /**
      * Empty byte array.
      */
@@ -0,0 +1,282 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.imaging.common.bytesource;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of fixed-size blocks read from byte sources, bounded by the
+ * total number of cached bytes and evicting the least recently used block.
+ * <p>
+ * Blocks are keyed by the identity of their source and the block index.
+ * For {@link ByteSourceFile} the identity is the absolute path together
+ * with the modification time and length of the file, so a file that is
+ * changed on disk is read again rather than served from stale blocks.
+ * A file rewritten without changing its length, within the resolution of
+ * its modification time, keeps its identity; such writers call
+ * {@link #invalidate(File)}.
+ * Because the identity does not depend on the byte source instance, the
+ * headers read by {@code Imaging.getImageInfo()} can be served from the
+ * cache to a later {@code Imaging.getMetadata()} or
+ * {@code Imaging.getBufferedImage()} call on the same file.
+ * <p>
+ * The cache is disabled unless a shared instance is installed with
+ * {@link #setShared(BlockCache)}. All methods are thread-safe. Blocks are
+ * loaded outside the cache lock, so two threads missing the same block
+ * at the same time may both read it.
+ */
+public final class BlockCache {
+    /**
+     * The default block size, in bytes.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 32 * 1024;
+
+    private static volatile BlockCache shared;
+
+    private final long maxSize;
+    private final int blockSize;
+    private final LinkedHashMap<Key, byte[]> blocks = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * Reads a block of a source on a cache miss.
+     */
+    interface Loader {
+        byte[] load(long start, int length) throws IOException;
+    }
+
+    /**
+     * Creates a cache of at most {@code maxSize} bytes using the default
+     * block size.
+     *
+     * @param maxSize the maximum number of bytes held by the cache
+     */
+    public BlockCache(final long maxSize) {
+        this(maxSize, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Creates a cache of at most {@code maxSize} bytes.
+     *
+     * @param maxSize the maximum number of bytes held by the cache
+     * @param blockSize the size of the cached blocks, in bytes
+     */
+    public BlockCache(final long maxSize, final int blockSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Invalid maximum size: " + maxSize);
+        }
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Invalid block size: " + blockSize);
+        }
+        this.maxSize = maxSize;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Returns the cache used by byte sources created without an explicit
+     * cache, or {@code null} if block caching is disabled.
+     *
+     * @return the shared cache, or {@code null}
+     */
+    public static BlockCache getShared() {
+        return shared;
+    }
+
+    /**
+     * Installs the cache used by byte sources created without an explicit
+     * cache. Passing {@code null} disables block caching for byte sources
+     * created afterwards.
+     *
+     * @param cache the shared cache, or {@code null}
+     */
+    public static void setShared(final BlockCache cache) {
+        shared = cache;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Returns the number of bytes currently held by the cache.
+     *
+     * @return the cached byte count
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Discards all cached blocks. The statistics are kept.
+     */
+    public synchronized void clear() {
+        blocks.clear();
+        size = 0;
+    }
+
+    /**
+     * Discards the cached blocks of a file, whatever its modification time
+     * and length were when they were read. The statistics are kept.
+     *
+     * @param file the file
+     */
+    public synchronized void invalidate(final File file) {
+        final String prefix = ByteSourceFile.getCacheIdPrefix(file);
+        final Iterator<Map.Entry<Key, byte[]>> it = blocks.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<Key, byte[]> entry = it.next();
+            final Object sourceId = entry.getKey().sourceId;
+            if (sourceId instanceof String && ((String) sourceId).startsWith(prefix)) {
+                size -= entry.getValue().length;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Resets the hit, miss and eviction counts to zero.
+     */
+    public synchronized void resetStatistics() {
+        hitCount = 0;
+        missCount = 0;
+        evictionCount = 0;
+    }
+
+    /**
+     * Copies bytes of a source through the cache.
+     *
+     * @param sourceId the identity of the source
+     * @param sourceLength the length of the source, which bounds the last block
+     * @param loader reads uncached blocks from the source
+     * @param start the offset of the first byte to copy
+     * @param dst the destination array
+     * @param offset the offset in the destination array
+     * @param length the number of bytes to copy; the caller has checked the bounds
+     */
+    void read(final Object sourceId, final long sourceLength, final Loader loader,
+            final long start, final byte[] dst, final int offset, final int length)
+            throws IOException {
+        long position = start;
+        int off = offset;
+        int remaining = length;
+        while (remaining > 0) {
+            final long index = position / blockSize;
+            final byte[] block = getBlock(sourceId, sourceLength, loader, index);
+            final int blockOffset = (int) (position - index * blockSize);
+            final int count = Math.min(remaining, block.length - blockOffset);
+            System.arraycopy(block, blockOffset, dst, off, count);
+            position += count;
+            off += count;
+            remaining -= count;
+        }
+    }
+
+    /**
+     * Returns a block of a source, loading it on a cache miss. The returned
+     * array is shared and must not be modified.
+     */
+    byte[] getBlock(final Object sourceId, final long sourceLength,
+            final Loader loader, final long index) throws IOException {
+        final Key key = new Key(sourceId, index);
+        synchronized (this) {
+            final byte[] block = blocks.get(key);
+            if (block != null) {
+                hitCount++;
+                return block;
+            }
+            missCount++;
+        }
+
+        final long blockStart = index * blockSize;
+        final byte[] block = loader.load(blockStart,
+                (int) Math.min(blockSize, sourceLength - blockStart));
+        put(key, block);
+        return block;
+    }
+
+    private synchronized void put(final Key key, final byte[] block) {
+        if (block.length > maxSize) {
+            return;
+        }
+        final byte[] previous = blocks.put(key, block);
+        if (previous != null) {
+            size -= previous.length;
+        }
+        size += block.length;
+        final Iterator<Map.Entry<Key, byte[]>> it = blocks.entrySet().iterator();
+        while (size > maxSize && it.hasNext()) {
+            final Map.Entry<Key, byte[]> eldest = it.next();
+            size -= eldest.getValue().length;
+            it.remove();
+            evictionCount++;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BlockCache[size=" + size + ", maxSize=" + maxSize
+                + ", blocks=" + blocks.size() + ", hits=" + hitCount
+                + ", misses=" + missCount + ", evictions=" + evictionCount + "]";
+    }
+
+    private static final class Key {
+        private final Object sourceId;
+        private final long index;
+
+        Key(final Object sourceId, final long index) {
+            this.sourceId = sourceId;
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return index == other.index && sourceId.equals(other.sourceId);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * sourceId.hashCode() + Long.hashCode(index);
+        }
+    }
+}
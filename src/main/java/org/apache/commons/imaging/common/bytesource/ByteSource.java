@@ -18,17 +18,31 @@ package org.apache.commons.imaging.common.bytesource;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import org.apache.commons.imaging.common.BinaryFunctions;
 
 public abstract class ByteSource {
     private final String fileName;
+    private byte[] header;
+    private int headerRequest;
 
     public ByteSource(final String fileName) {
         this.fileName = fileName;
     }
 
-    public final InputStream getInputStream(final long start) throws IOException {
+    /**
+     * Gets an input stream positioned at the given offset. The default
+     * implementation skips forward from the start of the source;
+     * random-access sources may override it to seek directly.
+     *
+     * @param start the offset of the first byte to be read
+     * @return an input stream positioned at {@code start}
+     * @throws IOException if the source cannot be read or positioned
+     */
+    public InputStream getInputStream(final long start) throws IOException {
         InputStream is = null;
         boolean succeeded = false;
         try {
@@ -45,12 +59,91 @@ public abstract class ByteSource {
 
     public abstract InputStream getInputStream() throws IOException;
 
+    /**
+     * Writes the bytes from the given offset to the end of the source to a
+     * stream. The default implementation copies them from
+     * {@link #getInputStream(long)}; sources backed by a file may hand the
+     * copy to the operating system instead.
+     *
+     * @param start the offset of the first byte to be written
+     * @param os the stream to write to, which is left open
+     * @throws IOException if the source cannot be read or the stream
+     *             cannot be written
+     */
+    public void writeTo(final long start, final OutputStream os) throws IOException {
+        try (InputStream is = getInputStream(start)) {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = is.read(buffer)) > 0) {
+                os.write(buffer, 0, read);
+            }
+        }
+    }
+
     public byte[] getBlock(final int start, final int length) throws IOException {
         return getBlock(0xFFFFffffL & start, length);
     }
 
     public abstract byte[] getBlock(long start, int length) throws IOException;
 
+    /**
+     * Gets a read-only view of a block of bytes. Sources that hold their
+     * data in memory return a slice of it without copying; the default
+     * implementation wraps the result of {@link #getBlock(long, int)}.
+     * <p>
+     * The returned buffer has position 0 and a limit of {@code length}.
+     *
+     * @param start the offset of the first byte of the block
+     * @param length the number of bytes in the block
+     * @return a read-only buffer holding the block
+     * @throws IOException if the block cannot be read
+     */
+    public ByteBuffer getBlockBuffer(final long start, final int length) throws IOException {
+        return ByteBuffer.wrap(getBlock(start, length)).asReadOnlyBuffer();
+    }
+
+    /**
+     * Gets up to {@code maxLength} bytes from the start of the source, or
+     * fewer if the source is shorter. The bytes are kept by the source, so
+     * format detection followed by further header checks on the same source
+     * reads them only once.
+     *
+     * @param maxLength the maximum number of bytes to return
+     * @return a new array holding the first bytes of the source
+     * @throws IOException if the source cannot be read
+     */
+    public synchronized byte[] getHeader(final int maxLength) throws IOException {
+        // a short header holds the whole source and satisfies any request
+        if (header == null || (header.length < maxLength && header.length == headerRequest)) {
+            header = readHeader(maxLength);
+            headerRequest = maxLength;
+        }
+        return Arrays.copyOf(header, Math.min(maxLength, header.length));
+    }
+
+    /**
+     * Reads up to {@code maxLength} bytes from the start of the source.
+     * The default implementation reads them from {@link #getInputStream()}.
+     *
+     * @param maxLength the maximum number of bytes to read
+     * @return the bytes read, fewer than {@code maxLength} only at the end of the source
+     * @throws IOException if the source cannot be read
+     */
+    protected byte[] readHeader(final int maxLength) throws IOException {
+        final byte[] result = new byte[maxLength];
+        int count = 0;
+        try (InputStream is = getInputStream()) {
+            while (count < maxLength) {
+                final int read = is.read(result, count, maxLength - count);
+                if (read < 0) {
+                    break;
+                }
+                count += read;
+            }
+        }
+        return count == maxLength ? result : Arrays.copyOf(result, count);
+    }
+
     public abstract byte[] getAll() throws IOException;
 
     /**
@@ -19,6 +19,7 @@ package org.apache.commons.imaging.common.bytesource;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 public class ByteSourceArray extends ByteSource {
     private final byte[] bytes;
@@ -53,6 +54,20 @@ public class ByteSourceArray extends ByteSource {
         return result;
     }
 
+    @Override
+    public ByteBuffer getBlockBuffer(final long startLong, final int length) throws IOException {
+        final int start = (int) startLong;
+        // We include a separate check for int overflow.
+        if ((start < 0) || (length < 0) || (start + length < 0)
+                || (start + length > bytes.length)) {
+            throw new IOException("Could not read block (block start: " + start
+                    + ", block length: " + length + ", data length: "
+                    + bytes.length + ").");
+        }
+
+        return ByteBuffer.wrap(bytes, start, length).slice().asReadOnlyBuffer();
+    }
+
     @Override
     public long getLength() {
         return bytes.length;
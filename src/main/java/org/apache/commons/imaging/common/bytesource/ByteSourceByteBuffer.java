@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.imaging.common.bytesource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A byte source backed by a heap or direct {@code ByteBuffer}.
+ * <p>
+ * The source covers the bytes between the buffer's position and limit at
+ * construction time. Later changes to the position or limit of the
+ * caller's buffer do not affect the source, but changes to its content
+ * do. Blocks requested through {@link #getBlockBuffer(long, int)} are
+ * read-only slices that share the buffer's memory.
+ */
+public class ByteSourceByteBuffer extends ByteSource {
+    private final ByteBuffer buffer;
+
+    public ByteSourceByteBuffer(final String fileName, final ByteBuffer buffer) {
+        super(fileName);
+        this.buffer = buffer.asReadOnlyBuffer().slice();
+    }
+
+    public ByteSourceByteBuffer(final ByteBuffer buffer) {
+        this(null, buffer);
+    }
+
+    private ByteBuffer slice(final long startLong, final int length) throws IOException {
+        final int start = (int) startLong;
+        // We include a separate check for int overflow.
+        if ((startLong != start) || (start < 0) || (length < 0) || (start + length < 0)
+                || (start + length > buffer.limit())) {
+            throw new IOException("Could not read block (block start: " + startLong
+                    + ", block length: " + length + ", data length: "
+                    + buffer.limit() + ").");
+        }
+
+        final ByteBuffer view = buffer.duplicate();
+        view.limit(start + length);
+        view.position(start);
+        return view;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new ByteBufferInputStream(buffer.duplicate());
+    }
+
+    @Override
+    public InputStream getInputStream(final long start) throws IOException {
+        return new ByteBufferInputStream(slice(start, (int) (buffer.limit() - start)));
+    }
+
+    @Override
+    public byte[] getBlock(final long start, final int length) throws IOException {
+        final byte[] result = new byte[length];
+        slice(start, length).get(result);
+        return result;
+    }
+
+    @Override
+    public ByteBuffer getBlockBuffer(final long start, final int length) throws IOException {
+        return slice(start, length).slice();
+    }
+
+    @Override
+    public long getLength() {
+        return buffer.limit();
+    }
+
+    @Override
+    public byte[] getAll() throws IOException {
+        return getBlock(0, buffer.limit());
+    }
+
+    @Override
+    public String getDescription() {
+        return buffer.limit() + " byte " + (buffer.isDirect() ? "direct " : "") + "buffer";
+    }
+
+}
@@ -18,50 +18,210 @@ package org.apache.commons.imaging.common.bytesource;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.RandomAccessFile;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
 
-import org.apache.commons.imaging.common.BinaryFunctions;
-
-public class ByteSourceFile extends ByteSource {
+/**
+ * A byte source backed by a local file.
+ * <p>
+ * Blocks are read with positional reads on a {@code FileChannel} that is
+ * opened on first use and kept open until {@link #close()} is called.
+ * Positional reads do not change the channel position, so one instance
+ * may be shared by several threads, for example to decode different
+ * tiles of the same file. A closed source reopens its channel if it is
+ * used again.
+ * <p>
+ * If a {@link BlockCache} is in use, blocks and input streams are served
+ * from the cache. The identity of the file in the cache (its path,
+ * modification time and length) is taken on the first read.
+ */
+public class ByteSourceFile extends ByteSource implements Closeable {
     private final File file;
+    private final BlockCache blockCache;
+    private FileChannel channel;
+    private String cacheId;
+    private long cacheLength;
 
+    /**
+     * Creates a byte source for a file that uses the shared block cache, if
+     * one is installed.
+     *
+     * @param file the file
+     * @see BlockCache#getShared()
+     */
     public ByteSourceFile(final File file) {
+        this(file, BlockCache.getShared());
+    }
+
+    /**
+     * Creates a byte source for a file that uses the given block cache.
+     *
+     * @param file the file
+     * @param blockCache the block cache, or {@code null} to read the file directly
+     */
+    public ByteSourceFile(final File file, final BlockCache blockCache) {
         super(file.getName());
         this.file = file;
+        this.blockCache = blockCache;
+    }
+
+    private synchronized String getCacheId() {
+        if (cacheId == null) {
+            cacheLength = file.length();
+            cacheId = getCacheIdPrefix(file) + file.lastModified() + '\0' + cacheLength;
+        }
+        return cacheId;
+    }
+
+    /**
+     * Returns the part of the cache identity that depends only on the
+     * path, and so is shared by every version of the file.
+     */
+    static String getCacheIdPrefix(final File file) {
+        return file.getAbsolutePath() + '\0';
+    }
+
+    private synchronized FileChannel getChannel() throws IOException {
+        // a channel is also closed when a thread reading from it is interrupted
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        }
+        return channel;
     }
 
     @Override
     public InputStream getInputStream() throws IOException {
+        if (blockCache != null) {
+            return new CachedInputStream(getCacheId(), 0);
+        }
         return new BufferedInputStream(new FileInputStream(file));
     }
 
+    @Override
+    public InputStream getInputStream(final long start) throws IOException {
+        if (blockCache != null) {
+            final String id = getCacheId();
+            if (start < 0 || start > cacheLength) {
+                throw new IOException("Could not seek to " + start
+                        + " (data length: " + cacheLength + ").");
+            }
+            return new CachedInputStream(id, start);
+        }
+        final FileInputStream fis = new FileInputStream(file);
+        boolean succeeded = false;
+        try {
+            fis.getChannel().position(start);
+            succeeded = true;
+        } finally {
+            if (!succeeded) {
+                fis.close();
+            }
+        }
+        return new BufferedInputStream(fis);
+    }
+
+    /**
+     * Writes the bytes from the given offset to the end of the file to a
+     * stream. When the stream writes to a file, the bytes are moved with
+     * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+     * without passing through the Java heap.
+     */
+    @Override
+    public void writeTo(final long start, final OutputStream os) throws IOException {
+        if (!(os instanceof FileOutputStream)) {
+            super.writeTo(start, os);
+            return;
+        }
+        final FileChannel source = getChannel();
+        final long length = source.size();
+        if (start < 0 || start > length) {
+            throw new IOException("Could not seek to " + start
+                    + " (data length: " + length + ").");
+        }
+        // the target channel shares its position with the stream
+        final FileChannel target = ((FileOutputStream) os).getChannel();
+        long position = start;
+        while (position < length) {
+            final long transferred = source.transferTo(position, length - position, target);
+            if (transferred <= 0) {
+                // copy whatever the channel refused to transfer
+                super.writeTo(position, os);
+                return;
+            }
+            position += transferred;
+        }
+    }
+
     @Override
     public byte[] getBlock(final long start, final int length) throws IOException {
-        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+        if (blockCache != null) {
+            final String id = getCacheId();
             // We include a separate check for int overflow.
             if ((start < 0) || (length < 0) || (start + length < 0)
-                    || (start + length > raf.length())) {
+                    || (start + length > cacheLength)) {
                 throw new IOException("Could not read block (block start: "
                         + start + ", block length: " + length
-                        + ", data length: " + raf.length() + ").");
+                        + ", data length: " + cacheLength + ").");
             }
+            final byte[] result = new byte[length];
+            blockCache.read(id, cacheLength, this::readBlock, start, result, 0, length);
+            return result;
+        }
+        return readBlock(start, length);
+    }
 
-            return BinaryFunctions.getRAFBytes(raf, start, length,
-                    "Could not read value from file");
+    private byte[] readBlock(final long start, final int length) throws IOException {
+        final FileChannel fc = getChannel();
+        final long size = fc.size();
+        // We include a separate check for int overflow.
+        if ((start < 0) || (length < 0) || (start + length < 0)
+                || (start + length > size)) {
+            throw new IOException("Could not read block (block start: "
+                    + start + ", block length: " + length
+                    + ", data length: " + size + ").");
         }
+
+        final byte[] result = new byte[length];
+        final ByteBuffer buffer = ByteBuffer.wrap(result);
+        while (buffer.hasRemaining()) {
+            final int count = fc.read(buffer, start + buffer.position());
+            if (count < 0) {
+                throw new IOException("Could not read value from file");
+            }
+        }
+        return result;
+    }
+
+    @Override
+    protected byte[] readHeader(final int maxLength) throws IOException {
+        // a positional read on the shared channel rather than a new stream
+        return getBlock(0, (int) Math.min(maxLength, getLength()));
     }
 
     @Override
     public long getLength() {
+        if (blockCache != null) {
+            getCacheId();
+            return cacheLength;
+        }
         return file.length();
     }
 
     @Override
     public byte[] getAll() throws IOException {
+        if (blockCache != null) {
+            getCacheId();
+            return getBlock(0, (int) cacheLength);
+        }
         final ByteArrayOutputStream baos = new ByteArrayOutputStream();
 
         try (InputStream is = getInputStream()) {
@@ -79,4 +239,100 @@ public class ByteSourceFile extends ByteSource {
         return "File: '" + file.getAbsolutePath() + "'";
     }
 
+    /**
+     * Closes the channel used for block reads, if it has been opened.
+     *
+     * @throws IOException if the channel cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private final class CachedInputStream extends InputStream {
+        private final String id;
+        private byte[] block;
+        private long blockStart;
+        private long position;
+        private long mark;
+
+        CachedInputStream(final String id, final long position) {
+            this.id = id;
+            this.position = position;
+            this.mark = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position >= cacheLength) {
+                return -1;
+            }
+            final byte[] current = currentBlock();
+            final int result = 0xff & current[(int) (position - blockStart)];
+            position++;
+            return result;
+        }
+
+        @Override
+        public int read(final byte[] array, final int off, final int len) throws IOException {
+            Objects.requireNonNull(array, "array");
+            if ((off < 0) || (len < 0) || (len > array.length - off)) {
+                throw new IndexOutOfBoundsException();
+            } else if (len == 0) {
+                return 0;
+            }
+            if (position >= cacheLength) {
+                return -1;
+            }
+            final byte[] current = currentBlock();
+            final int index = (int) (position - blockStart);
+            final int count = Math.min(len, current.length - index);
+            System.arraycopy(current, index, array, off, count);
+            position += count;
+            return count;
+        }
+
+        private byte[] currentBlock() throws IOException {
+            if (block == null || position < blockStart || position >= blockStart + block.length) {
+                final long index = position / blockCache.getBlockSize();
+                block = blockCache.getBlock(id, cacheLength, ByteSourceFile.this::readBlock, index);
+                blockStart = index * blockCache.getBlockSize();
+            }
+            return block;
+        }
+
+        @Override
+        public long skip(final long n) {
+            if (n <= 0) {
+                return 0;
+            }
+            final long skipped = Math.min(n, cacheLength - position);
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, cacheLength - position);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(final int readlimit) {
+            mark = position;
+        }
+
+        @Override
+        public synchronized void reset() {
+            position = mark;
+        }
+    }
+
 }
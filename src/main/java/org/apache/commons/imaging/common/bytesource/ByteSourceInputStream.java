@@ -18,32 +18,110 @@ package org.apache.commons.imaging.common.bytesource;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.Objects;
 
 import org.apache.commons.imaging.common.BinaryFunctions;
 
-public class ByteSourceInputStream extends ByteSource {
+/**
+ * A byte source that reads an input stream once and caches what it has
+ * read, so the data can be read again from any offset.
+ * <p>
+ * By default every byte read is kept in memory for the life of the
+ * source. When a memory limit is given, the oldest cached blocks are
+ * moved to a temporary file once the limit is exceeded. If the source is
+ * also declared {@link #setForwardOnly(boolean) forward-only}, those
+ * blocks are discarded instead, and reading them again fails with an
+ * {@code IOException}.
+ * <p>
+ * {@link #close()} releases the temporary file; it does not close the
+ * wrapped input stream.
+ */
+public class ByteSourceInputStream extends ByteSource implements Closeable {
     private static final int BLOCK_SIZE = 1024;
+    private static final int BOUNDED_BLOCK_SIZE = 64 * 1024;
 
     private final InputStream is;
+    private final int blockSize;
+    private final long memoryLimit;
+    private final ArrayDeque<CacheBlock> residentBlocks = new ArrayDeque<>();
     private CacheBlock cacheHead;
     private byte[] readBuffer;
     private long streamLength = -1;
+    private long memoryUsed;
+    private boolean forwardOnly;
+    private FileChannel spillChannel;
+    private long spillLength;
 
     public ByteSourceInputStream(final InputStream is, final String fileName) {
         super(fileName);
         this.is = new BufferedInputStream(is);
+        this.blockSize = BLOCK_SIZE;
+        this.memoryLimit = -1;
+    }
+
+    /**
+     * Creates a byte source that keeps at most about {@code memoryLimit}
+     * bytes of the stream in memory.
+     *
+     * @param is the stream to read
+     * @param fileName the file name, or null if unknown
+     * @param memoryLimit the number of cached bytes to keep in memory
+     */
+    public ByteSourceInputStream(final InputStream is, final String fileName, final long memoryLimit) {
+        super(fileName);
+        if (memoryLimit < 0) {
+            throw new IllegalArgumentException("Invalid memory limit: " + memoryLimit);
+        }
+        this.is = new BufferedInputStream(is);
+        this.blockSize = BOUNDED_BLOCK_SIZE;
+        this.memoryLimit = memoryLimit;
+    }
+
+    /**
+     * Declares whether the data will only be read forward from here on.
+     * A forward-only source with a memory limit discards old blocks rather
+     * than moving them to a temporary file. Without a memory limit this
+     * has no effect.
+     *
+     * @param forwardOnly true if data before the current read position
+     *            will not be read again
+     */
+    public void setForwardOnly(final boolean forwardOnly) {
+        this.forwardOnly = forwardOnly;
+    }
+
+    public boolean isForwardOnly() {
+        return forwardOnly;
     }
 
     private class CacheBlock {
-        public final byte[] bytes;
+        private final int length;
+        private byte[] bytes;
+        private long spillOffset = -1;
         private CacheBlock next;
         private boolean triedNext;
 
         CacheBlock(final byte[] bytes) {
             this.bytes = bytes;
+            this.length = bytes.length;
+        }
+
+        public byte[] getBytes() throws IOException {
+            if (bytes != null) {
+                return bytes;
+            }
+            if (spillOffset < 0) {
+                throw new IOException("Cached stream data has been discarded (forward-only source).");
+            }
+            return readSpilled(this);
         }
 
         public CacheBlock getNext() throws IOException {
@@ -62,23 +140,71 @@ public class ByteSourceInputStream extends ByteSource {
 
     private CacheBlock readBlock() throws IOException {
         if (null == readBuffer) {
-            readBuffer = new byte[BLOCK_SIZE];
+            readBuffer = new byte[blockSize];
         }
 
         final int read = is.read(readBuffer);
+        final CacheBlock block;
         if (read < 1) {
             return null;
-        } else if (read < BLOCK_SIZE) {
+        } else if (read < blockSize) {
             // return a copy.
             final byte[] result = new byte[read];
             System.arraycopy(readBuffer, 0, result, 0, read);
-            return new CacheBlock(result);
+            block = new CacheBlock(result);
         } else {
             // return current buffer.
             final byte[] result = readBuffer;
             readBuffer = null;
-            return new CacheBlock(result);
+            block = new CacheBlock(result);
+        }
+
+        if (memoryLimit >= 0) {
+            residentBlocks.add(block);
+            memoryUsed += block.length;
+            trimCache();
         }
+        return block;
+    }
+
+    private void trimCache() throws IOException {
+        // the newest block always stays in memory
+        while (memoryUsed > memoryLimit && residentBlocks.size() > 1) {
+            final CacheBlock oldest = residentBlocks.remove();
+            if (!forwardOnly) {
+                spill(oldest);
+            }
+            oldest.bytes = null;
+            memoryUsed -= oldest.length;
+        }
+    }
+
+    private void spill(final CacheBlock block) throws IOException {
+        if (spillChannel == null) {
+            spillChannel = FileChannel.open(Files.createTempFile("imaging", ".cache"),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(block.bytes);
+        while (buffer.hasRemaining()) {
+            spillChannel.write(buffer, spillLength + buffer.position());
+        }
+        block.spillOffset = spillLength;
+        spillLength += block.length;
+    }
+
+    private byte[] readSpilled(final CacheBlock block) throws IOException {
+        if (spillChannel == null) {
+            throw new IOException("Cached stream data is no longer available: the byte source is closed.");
+        }
+        final byte[] result = new byte[block.length];
+        final ByteBuffer buffer = ByteBuffer.wrap(result);
+        while (buffer.hasRemaining()) {
+            if (spillChannel.read(buffer, block.spillOffset + buffer.position()) < 0) {
+                throw new IOException("Could not read cached stream data.");
+            }
+        }
+        return result;
     }
 
     private CacheBlock getFirstBlock() throws IOException {
@@ -90,33 +216,48 @@ public class ByteSourceInputStream extends ByteSource {
 
     private class CacheReadingInputStream extends InputStream {
         private CacheBlock block;
+        private byte[] blockBytes;
         private boolean readFirst;
         private int blockIndex;
 
-        @Override
-        public int read() throws IOException {
+        /**
+         * Moves to the next block if the current one is exhausted.
+         *
+         * @return false at the end of the stream
+         */
+        private boolean nextBlock() throws IOException {
             if (null == block) {
                 if (readFirst) {
-                    return -1;
+                    return false;
                 }
                 block = getFirstBlock();
                 readFirst = true;
+                blockBytes = null;
             }
 
-            if (block != null && blockIndex >= block.bytes.length) {
+            if (block != null && blockIndex >= block.length) {
                 block = block.getNext();
                 blockIndex = 0;
+                blockBytes = null;
             }
 
-            if (null == block) {
-                return -1;
+            return block != null && blockIndex < block.length;
+        }
+
+        private byte[] getBlockBytes() throws IOException {
+            if (blockBytes == null) {
+                blockBytes = block.getBytes();
             }
+            return blockBytes;
+        }
 
-            if (blockIndex >= block.bytes.length) {
+        @Override
+        public int read() throws IOException {
+            if (!nextBlock()) {
                 return -1;
             }
 
-            return 0xff & block.bytes[blockIndex++];
+            return 0xff & getBlockBytes()[blockIndex++];
         }
 
         @Override
@@ -132,29 +273,12 @@ public class ByteSourceInputStream extends ByteSource {
 
             // optimized block read
 
-            if (null == block) {
-                if (readFirst) {
-                    return -1;
-                }
-                block = getFirstBlock();
-                readFirst = true;
-            }
-
-            if (block != null && blockIndex >= block.bytes.length) {
-                block = block.getNext();
-                blockIndex = 0;
-            }
-
-            if (null == block) {
-                return -1;
-            }
-
-            if (blockIndex >= block.bytes.length) {
+            if (!nextBlock()) {
                 return -1;
             }
 
-            final int readSize = Math.min(len, block.bytes.length - blockIndex);
-            System.arraycopy(block.bytes, blockIndex, array, off, readSize);
+            final int readSize = Math.min(len, block.length - blockIndex);
+            System.arraycopy(getBlockBytes(), blockIndex, array, off, readSize);
             blockIndex += readSize;
             return readSize;
         }
@@ -168,31 +292,9 @@ public class ByteSourceInputStream extends ByteSource {
                 return 0;
             }
 
-            while (remaining > 0) {
-                // read the first block
-                if (null == block) {
-                    if (readFirst) {
-                        return -1;
-                    }
-                    block = getFirstBlock();
-                    readFirst = true;
-                }
-
-                // get next block
-                if (block != null && blockIndex >= block.bytes.length) {
-                    block = block.getNext();
-                    blockIndex = 0;
-                }
-
-                if (null == block) {
-                    break;
-                }
-
-                if (blockIndex >= block.bytes.length) {
-                    break;
-                }
-
-                final int readSize = Math.min((int) Math.min(BLOCK_SIZE, remaining), block.bytes.length - blockIndex);
+            // skipping only needs block lengths, so spilled blocks are not loaded
+            while (remaining > 0 && nextBlock()) {
+                final int readSize = (int) Math.min(remaining, block.length - blockIndex);
 
                 blockIndex += readSize;
                 remaining -= readSize;
@@ -245,7 +347,7 @@ public class ByteSourceInputStream extends ByteSource {
         final InputStream cis = getInputStream();
         long result = 0;
         long skipped;
-        while ((skipped = cis.skip(1024)) > 0) {
+        while ((skipped = cis.skip(blockSize)) > 0) {
             result += skipped;
         }
         streamLength = result;
@@ -258,7 +360,7 @@ public class ByteSourceInputStream extends ByteSource {
 
         CacheBlock block = getFirstBlock();
         while (block != null) {
-            baos.write(block.bytes);
+            baos.write(block.getBytes());
             block = block.getNext();
         }
         return baos.toByteArray();
@@ -269,4 +371,18 @@ public class ByteSourceInputStream extends ByteSource {
         return "Inputstream: '" + getFileName() + "'";
     }
 
+    /**
+     * Deletes the temporary file holding spilled blocks, if one was
+     * created. The wrapped input stream is left open.
+     *
+     * @throws IOException if the temporary file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (spillChannel != null) {
+            spillChannel.close();
+            spillChannel = null;
+        }
+    }
+
 }
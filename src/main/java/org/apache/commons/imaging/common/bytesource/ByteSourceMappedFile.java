@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.imaging.common.bytesource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * A byte source that memory-maps a local file.
+ * <p>
+ * Blocks, block buffers and input streams are served directly from the
+ * mapping, so seeking to an arbitrary offset costs no system call and no
+ * bytes need to be skipped. Files larger than 2 GB are mapped as a series of
+ * segments. The mapping is created on first access and is released by
+ * the garbage collector once the byte source is no longer referenced.
+ * <p>
+ * Reads never move the position of the shared mapped buffers, so a
+ * single instance may be shared by several threads.
+ */
+public class ByteSourceMappedFile extends ByteSource {
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = (int) (SEGMENT_SIZE - 1);
+
+    private final File file;
+    private volatile MappedByteBuffer[] segments;
+    private long length = -1;
+
+    public ByteSourceMappedFile(final File file) {
+        super(file.getName());
+        this.file = file;
+    }
+
+    private MappedByteBuffer[] getSegments() throws IOException {
+        MappedByteBuffer[] result = segments;
+        if (result == null) {
+            synchronized (this) {
+                result = segments;
+                if (result == null) {
+                    result = map();
+                    segments = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private MappedByteBuffer[] map() throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final int count = (int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+            final MappedByteBuffer[] result = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                final long position = (long) i << SEGMENT_SHIFT;
+                result[i] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(SEGMENT_SIZE, size - position));
+            }
+            length = size;
+            return result;
+        }
+    }
+
+    /**
+     * Copies bytes from the mapping; the caller must have checked the bounds.
+     */
+    private void copy(final MappedByteBuffer[] mapped, final long position,
+            final byte[] dst, final int offset, final int count) {
+        long pos = position;
+        int off = offset;
+        int remaining = count;
+        while (remaining > 0) {
+            final MappedByteBuffer segment = mapped[(int) (pos >>> SEGMENT_SHIFT)];
+            final int index = (int) pos & SEGMENT_MASK;
+            final int chunk = Math.min(remaining, segment.limit() - index);
+            // read through a duplicate so the shared buffer position is untouched
+            final ByteBuffer view = segment.duplicate();
+            view.position(index);
+            view.get(dst, off, chunk);
+            pos += chunk;
+            off += chunk;
+            remaining -= chunk;
+        }
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return new MappedInputStream(getSegments(), 0);
+    }
+
+    @Override
+    public InputStream getInputStream(final long start) throws IOException {
+        final MappedByteBuffer[] mapped = getSegments();
+        if (start < 0 || start > length) {
+            throw new IOException("Could not seek to " + start
+                    + " (data length: " + length + ").");
+        }
+        return new MappedInputStream(mapped, start);
+    }
+
+    @Override
+    public byte[] getBlock(final long start, final int length) throws IOException {
+        final MappedByteBuffer[] mapped = getSegments();
+        // We include a separate check for int overflow.
+        if ((start < 0) || (length < 0) || (start + length < 0)
+                || (start + length > this.length)) {
+            throw new IOException("Could not read block (block start: "
+                    + start + ", block length: " + length
+                    + ", data length: " + this.length + ").");
+        }
+
+        final byte[] result = new byte[length];
+        copy(mapped, start, result, 0, length);
+        return result;
+    }
+
+    @Override
+    public ByteBuffer getBlockBuffer(final long start, final int length) throws IOException {
+        final MappedByteBuffer[] mapped = getSegments();
+        // We include a separate check for int overflow.
+        if ((start < 0) || (length < 0) || (start + length < 0)
+                || (start + length > this.length)) {
+            throw new IOException("Could not read block (block start: "
+                    + start + ", block length: " + length
+                    + ", data length: " + this.length + ").");
+        }
+
+        final int first = (int) (start >>> SEGMENT_SHIFT);
+        if (length == 0 || first != (int) ((start + length - 1) >>> SEGMENT_SHIFT)) {
+            // blocks spanning two segments are copied
+            return super.getBlockBuffer(start, length);
+        }
+        final int index = (int) start & SEGMENT_MASK;
+        final ByteBuffer view = mapped[first].duplicate();
+        view.limit(index + length);
+        view.position(index);
+        return view.slice();
+    }
+
+    @Override
+    public long getLength() throws IOException {
+        getSegments();
+        return length;
+    }
+
+    @Override
+    public byte[] getAll() throws IOException {
+        final long size = getLength();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("File is too large to read into an array: "
+                    + size + " bytes.");
+        }
+        return getBlock(0, (int) size);
+    }
+
+    @Override
+    public String getDescription() {
+        return "Mapped file: '" + file.getAbsolutePath() + "'";
+    }
+
+    private final class MappedInputStream extends InputStream {
+        private final MappedByteBuffer[] mapped;
+        private long position;
+        private long mark;
+
+        MappedInputStream(final MappedByteBuffer[] mapped, final long position) {
+            this.mapped = mapped;
+            this.position = position;
+            this.mark = position;
+        }
+
+        @Override
+        public int read() {
+            if (position >= length) {
+                return -1;
+            }
+            final MappedByteBuffer segment = mapped[(int) (position >>> SEGMENT_SHIFT)];
+            final int result = 0xff & segment.get((int) position & SEGMENT_MASK);
+            position++;
+            return result;
+        }
+
+        @Override
+        public int read(final byte[] array, final int off, final int len) {
+            Objects.requireNonNull(array, "array");
+            if ((off < 0) || (len < 0) || (len > array.length - off)) {
+                throw new IndexOutOfBoundsException();
+            } else if (len == 0) {
+                return 0;
+            }
+            if (position >= length) {
+                return -1;
+            }
+            final int count = (int) Math.min(len, length - position);
+            copy(mapped, position, array, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public long skip(final long n) {
+            if (n <= 0) {
+                return 0;
+            }
+            final long skipped = Math.min(n, length - position);
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, length - position);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(final int readlimit) {
+            mark = position;
+        }
+
+        @Override
+        public synchronized void reset() {
+            position = mark;
+        }
+    }
+
+}
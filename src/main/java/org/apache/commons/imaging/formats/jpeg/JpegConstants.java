@@ -26,6 +26,103 @@ import org.apache.commons.imaging.common.BinaryFunctions;
 public final class JpegConstants {
     public static final int MAX_SEGMENT_SIZE = 0xffff;
 
+    /**
+     * Parameter key. Used in read operations to make the JPEG decoder use
+     * a fixed-point inverse DCT instead of the floating point one. The
+     * fixed-point transform is faster; the samples it produces differ from
+     * the floating point ones by at most a few levels.
+     * <p>
+     * Valid values: Boolean.TRUE or Boolean.FALSE (the default). Only
+     * applies to images with 8-bit samples.
+     */
+    public static final String PARAM_KEY_JPEG_INTEGER_IDCT = "JPEG_INTEGER_IDCT";
+
+    /**
+     * Parameter key. Used in read operations to make the JPEG decoder
+     * produce an image scaled down by the given factor. Each 8x8 block is
+     * inverse transformed straight into a 4x4, 2x2 or 1x1 block, which is
+     * much cheaper than decoding at full size and scaling afterwards.
+     * <p>
+     * Valid values: Integer 1 (the default), 2, 4 or 8. The scaled width
+     * and height are rounded up.
+     */
+    public static final String PARAM_KEY_JPEG_SCALE_DENOMINATOR = "JPEG_SCALE_DENOMINATOR";
+
+    /**
+     * Parameter key. Used in read operations to control whether the JPEG
+     * decoder decodes the restart intervals of a sequential image in
+     * parallel. Each interval starts with fresh predictions, so intervals
+     * can be decoded independently; images without restart markers are
+     * always decoded by the calling thread.
+     * <p>
+     * The intervals are decoded on the fork-join pool the decode is called
+     * from, or else on the common pool. Applications that already decode
+     * several images at once usually do better without this.
+     * <p>
+     * Valid values: Boolean.TRUE or Boolean.FALSE (the default).
+     */
+    public static final String PARAM_KEY_JPEG_PARALLEL_DECODE = "JPEG_PARALLEL_DECODE";
+
+    /**
+     * Parameter key. Used in read operations to decode only a region of a
+     * JPEG image. The image returned has the size of the region. MCUs
+     * outside the region are only entropy decoded, as far as needed to
+     * track the DC predictions, and are never transformed or converted.
+     * <p>
+     * Valid values: a java.awt.Rectangle within the bounds of the decoded
+     * image; when combined with {@link #PARAM_KEY_JPEG_SCALE_DENOMINATOR},
+     * the region is in the coordinates of the scaled image.
+     */
+    public static final String PARAM_KEY_JPEG_REGION = "JPEG_REGION";
+
+    /**
+     * Parameter key. Used in write operations to set the quality of the
+     * JPEG encoder. The standard quantization tables of Annex K of T.81 are
+     * scaled the same way as by the IJG software, so a given quality gives
+     * the same tables as libjpeg.
+     * <p>
+     * Valid values: Integer 1 to 100; the default is 75.
+     */
+    public static final String PARAM_KEY_JPEG_QUALITY = "JPEG_QUALITY";
+
+    /**
+     * Parameter key. Used in write operations to set the chroma subsampling
+     * of the JPEG encoder. Grayscale images are written with a single
+     * component and ignore this parameter.
+     * <p>
+     * Valid values: {@link #JPEG_CHROMA_SUBSAMPLING_444},
+     * {@link #JPEG_CHROMA_SUBSAMPLING_422} or
+     * {@link #JPEG_CHROMA_SUBSAMPLING_420} (the default).
+     */
+    public static final String PARAM_KEY_JPEG_CHROMA_SUBSAMPLING = "JPEG_CHROMA_SUBSAMPLING";
+    public static final int JPEG_CHROMA_SUBSAMPLING_444 = 444;
+    public static final int JPEG_CHROMA_SUBSAMPLING_422 = 422;
+    public static final int JPEG_CHROMA_SUBSAMPLING_420 = 420;
+
+    /**
+     * Parameter key. Used in write operations to make the JPEG encoder
+     * compute Huffman tables from the symbol statistics of the image
+     * instead of using the typical tables of Annex K of T.81. The files
+     * are usually a few percent smaller, but all quantized coefficients
+     * have to be kept in memory until the tables are known.
+     * <p>
+     * Valid values: Boolean.TRUE or Boolean.FALSE (the default).
+     */
+    public static final String PARAM_KEY_JPEG_OPTIMIZE_HUFFMAN = "JPEG_OPTIMIZE_HUFFMAN";
+
+    /**
+     * Parameter key. Used by the lossless transformations of the JPEG
+     * transcoder to make the EXIF metadata describe the transformed image:
+     * the orientation is set to 1 (upright), and the ExifImageWidth and
+     * ExifImageLength (PixelXDimension and PixelYDimension) are swapped when
+     * the rows of the image become columns. This is what is wanted after
+     * applying the transformation for the image's own orientation; the
+     * thumbnail is not transformed.
+     * <p>
+     * Valid values: Boolean.TRUE or Boolean.FALSE (the default).
+     */
+    public static final String PARAM_KEY_JPEG_RESET_EXIF_ORIENTATION = "JPEG_RESET_EXIF_ORIENTATION";
+
     public static final BinaryConstant JFIF0_SIGNATURE = new BinaryConstant(
             new byte[] { 0x4a, // J
                     0x46, // F
@@ -23,7 +23,9 @@ import static org.apache.commons.imaging.common.BinaryFunctions.startsWith;
 import java.awt.Dimension;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.text.NumberFormat;
@@ -41,10 +43,14 @@ import org.apache.commons.imaging.ImageFormats;
 import org.apache.commons.imaging.ImageInfo;
 import org.apache.commons.imaging.ImageParser;
 import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.ImageWriteException;
+import org.apache.commons.imaging.common.ByteConversions;
 import org.apache.commons.imaging.common.ImageMetadata;
 import org.apache.commons.imaging.common.XmpEmbeddable;
 import org.apache.commons.imaging.common.bytesource.ByteSource;
+import org.apache.commons.imaging.common.bytesource.ByteSourceInputStream;
 import org.apache.commons.imaging.formats.jpeg.decoder.JpegDecoder;
+import org.apache.commons.imaging.formats.jpeg.encoder.JpegEncoder;
 import org.apache.commons.imaging.formats.jpeg.iptc.IptcParser;
 import org.apache.commons.imaging.formats.jpeg.iptc.PhotoshopApp13Data;
 import org.apache.commons.imaging.formats.jpeg.segments.App13Segment;
@@ -62,6 +68,7 @@ import org.apache.commons.imaging.formats.tiff.TiffField;
 import org.apache.commons.imaging.formats.tiff.TiffImageMetadata;
 import org.apache.commons.imaging.formats.tiff.TiffImageParser;
 import org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants;
+import org.apache.commons.imaging.formats.tiff.fieldtypes.FieldType;
 import org.apache.commons.imaging.internal.Debug;
 
 public class JpegImageParser extends ImageParser implements XmpEmbeddable {
@@ -100,8 +107,26 @@ public class JpegImageParser extends ImageParser implements XmpEmbeddable {
     @Override
     public final BufferedImage getBufferedImage(final ByteSource byteSource,
             final Map<String, Object> params) throws ImageReadException, IOException {
-        final JpegDecoder jpegDecoder = new JpegDecoder();
-        return jpegDecoder.decode(byteSource);
+        final JpegDecoder jpegDecoder = new JpegDecoder(params);
+        if (!(byteSource instanceof ByteSourceInputStream)) {
+            return jpegDecoder.decode(byteSource);
+        }
+        // decoding reads the stream once, front to back; the caller's
+        // setting is restored afterwards
+        final ByteSourceInputStream streamSource = (ByteSourceInputStream) byteSource;
+        final boolean forwardOnly = streamSource.isForwardOnly();
+        streamSource.setForwardOnly(true);
+        try {
+            return jpegDecoder.decode(byteSource);
+        } finally {
+            streamSource.setForwardOnly(forwardOnly);
+        }
+    }
+
+    @Override
+    public void writeImage(final BufferedImage src, final OutputStream os, final Map<String, Object> params)
+            throws ImageWriteException, IOException {
+        new JpegEncoder(params).encode(src, os);
     }
 
     private boolean keepMarker(final int marker, final int[] markers) {
@@ -406,6 +431,100 @@ public class JpegImageParser extends ImageParser implements XmpEmbeddable {
         return remainingBytes("trimmed exif bytes", bytes, 6);
     }
 
+    /**
+     * Locates the JPEG thumbnail of the EXIF metadata without parsing the
+     * metadata. Only the segment headers up to the EXIF segment, the header
+     * and next directory offset of IFD0 and the entries of IFD1 are read.
+     * <p>
+     * For sources held in memory or mapped from a file, the returned buffer
+     * shares their memory; wrap it in a
+     * {@link org.apache.commons.imaging.common.bytesource.ByteSourceByteBuffer}
+     * to read the thumbnail with {@link JpegImageParser} or
+     * {@link org.apache.commons.imaging.Imaging}.
+     *
+     * @param byteSource the JPEG image
+     * @return a read-only buffer holding the thumbnail, or null if the image
+     *         has no EXIF JPEG thumbnail
+     * @throws ImageReadException if the image is not a valid JPEG image
+     * @throws IOException if the image cannot be read
+     */
+    public ByteBuffer getExifThumbnailData(final ByteSource byteSource)
+            throws ImageReadException, IOException {
+        final long exifStart = new JpegUtils().findExifSegment(byteSource, JpegConstants.SOI.size());
+        if (exifStart < 0) {
+            return null;
+        }
+        final int segmentLength = ByteConversions.toUInt16(byteSource.getBlock(exifStart + 2, 2), getByteOrder());
+        // "Exif", two zero bytes and the TIFF header
+        if (segmentLength < 2 + 6 + 8) {
+            return null;
+        }
+        return getExifThumbnailData(byteSource, exifStart + 4 + 6, segmentLength - 2 - 6);
+    }
+
+    /**
+     * Reads IFD1 of the TIFF data at the given offset of the source.
+     */
+    private ByteBuffer getExifThumbnailData(final ByteSource byteSource, final long tiffStart,
+            final int tiffLength) throws IOException {
+        final byte[] tiffHeader = byteSource.getBlock(tiffStart, 8);
+        final ByteOrder byteOrder;
+        if (tiffHeader[0] == 'I' && tiffHeader[1] == 'I') {
+            byteOrder = ByteOrder.LITTLE_ENDIAN;
+        } else if (tiffHeader[0] == 'M' && tiffHeader[1] == 'M') {
+            byteOrder = ByteOrder.BIG_ENDIAN;
+        } else {
+            return null;
+        }
+        final long ifd0 = 0xffffFFFFL & ByteConversions.toInt(tiffHeader, 4, byteOrder);
+        if (ifd0 + 2 > tiffLength) {
+            return null;
+        }
+        final int ifd0Entries = ByteConversions.toUInt16(byteSource.getBlock(tiffStart + ifd0, 2), byteOrder);
+        final long nextOffset = ifd0 + 2 + 12L * ifd0Entries;
+        if (nextOffset + 4 > tiffLength) {
+            return null;
+        }
+        final long ifd1 = 0xffffFFFFL & ByteConversions.toInt(byteSource.getBlock(tiffStart + nextOffset, 4),
+                byteOrder);
+        if (ifd1 == 0 || ifd1 + 2 > tiffLength) {
+            return null;
+        }
+        final int ifd1Entries = ByteConversions.toUInt16(byteSource.getBlock(tiffStart + ifd1, 2), byteOrder);
+        if (ifd1 + 2 + 12L * ifd1Entries > tiffLength) {
+            return null;
+        }
+        final byte[] entries = byteSource.getBlock(tiffStart + ifd1 + 2, 12 * ifd1Entries);
+        long offset = -1;
+        long thumbnailLength = -1;
+        for (int i = 0; i < ifd1Entries; i++) {
+            final int tag = ByteConversions.toUInt16(entries, 12 * i, byteOrder);
+            if (tag != TiffTagConstants.TIFF_TAG_JPEG_INTERCHANGE_FORMAT.tag
+                    && tag != TiffTagConstants.TIFF_TAG_JPEG_INTERCHANGE_FORMAT_LENGTH.tag) {
+                continue;
+            }
+            // the values are LONGs, some writers use SHORTs
+            final int type = ByteConversions.toUInt16(entries, 12 * i + 2, byteOrder);
+            final long value;
+            if (type == FieldType.LONG.getType()) {
+                value = 0xffffFFFFL & ByteConversions.toInt(entries, 12 * i + 8, byteOrder);
+            } else if (type == FieldType.SHORT.getType()) {
+                value = ByteConversions.toUInt16(entries, 12 * i + 8, byteOrder);
+            } else {
+                continue;
+            }
+            if (tag == TiffTagConstants.TIFF_TAG_JPEG_INTERCHANGE_FORMAT.tag) {
+                offset = value;
+            } else {
+                thumbnailLength = value;
+            }
+        }
+        if (offset < 0 || thumbnailLength <= 0 || offset + thumbnailLength > tiffLength) {
+            return null;
+        }
+        return byteSource.getBlockBuffer(tiffStart + offset, (int) thumbnailLength);
+    }
+
     public boolean hasExifSegment(final ByteSource byteSource)
             throws ImageReadException, IOException {
         final boolean[] result = { false, };
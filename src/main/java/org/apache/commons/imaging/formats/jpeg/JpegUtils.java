@@ -29,6 +29,7 @@ import org.apache.commons.imaging.ImageReadException;
 import org.apache.commons.imaging.common.BinaryFileParser;
 import org.apache.commons.imaging.common.ByteConversions;
 import org.apache.commons.imaging.common.bytesource.ByteSource;
+import org.apache.commons.imaging.common.bytesource.ByteSourceInputStream;
 import org.apache.commons.imaging.internal.Debug;
 
 public class JpegUtils extends BinaryFileParser {
@@ -40,6 +41,23 @@ public class JpegUtils extends BinaryFileParser {
         // return false to exit before reading image data.
         boolean beginSOS();
 
+        /**
+         * Called before the image data is read, with the offset in the
+         * source at which the data after the SOS (or EOI) marker starts.
+         * Visitors that copy the image data from the source themselves can
+         * return false to skip reading it into memory.
+         *
+         * @param marker the marker that starts the image data
+         * @param markerBytes the bytes of the marker
+         * @param imageDataStart the offset of the byte after the marker
+         * @return false to exit before reading image data; by default
+         *         the result of {@link #beginSOS()}
+         */
+        default boolean beginSOS(final int marker, final byte[] markerBytes,
+                final long imageDataStart) {
+            return beginSOS();
+        }
+
         void visitSOS(int marker, byte[] markerBytes, byte[] imageData);
 
         // return false to exit traversal.
@@ -56,6 +74,7 @@ public class JpegUtils extends BinaryFileParser {
             readAndVerifyBytes(is, JpegConstants.SOI,
                     "Not a Valid JPEG File: doesn't begin with 0xffd8");
 
+            long position = JpegConstants.SOI.size();
             int markerCount;
             for (markerCount = 0; true; markerCount++) {
                 final byte[] markerBytes = new byte[2];
@@ -63,17 +82,18 @@ public class JpegUtils extends BinaryFileParser {
                     markerBytes[0] = markerBytes[1];
                     markerBytes[1] = readByte("marker", is,
                             "Could not read marker");
+                    position++;
                 } while ((0xff & markerBytes[0]) != 0xff
                         || (0xff & markerBytes[1]) == 0xff);
                 final int marker = ((0xff & markerBytes[0]) << 8)
                         | (0xff & markerBytes[1]);
 
                 if (marker == JpegConstants.EOI_MARKER || marker == JpegConstants.SOS_MARKER) {
-                    if (!visitor.beginSOS()) {
+                    if (!visitor.beginSOS(marker, markerBytes, position)) {
                         return;
                     }
 
-                    final byte[] imageData = getStreamBytes(is);
+                    final byte[] imageData = readImageData(byteSource, is, position);
                     visitor.visitSOS(marker, markerBytes, imageData);
                     break;
                 }
@@ -88,6 +108,8 @@ public class JpegUtils extends BinaryFileParser {
                         is, segmentLength - 2,
                         "Invalid Segment: insufficient data");
 
+                position += segmentLength;
+
                 if (!visitor.visitSegment(marker, markerBytes, segmentLength, segmentLengthBytes, segmentData)) {
                     return;
                 }
@@ -97,6 +119,68 @@ public class JpegUtils extends BinaryFileParser {
         }
     }
 
+    /**
+     * Returns the offset of the first EXIF APP1 segment at or after the given
+     * offset, reading just the segment headers rather than the whole
+     * segments. Fill bytes and junk between segments are skipped like
+     * {@link #traverseJFIF(ByteSource, Visitor)} skips them.
+     *
+     * @param byteSource the JPEG image
+     * @param start the offset of a marker or of fill bytes in front of it,
+     *            2 to search from the start of the image
+     * @return the offset of the segment's marker, or -1 if there is no EXIF
+     *         segment before the image data
+     * @throws ImageReadException if the image is not a valid JPEG image
+     * @throws IOException if the image cannot be read
+     */
+    public long findExifSegment(final ByteSource byteSource, final long start)
+            throws ImageReadException, IOException {
+        final long length = byteSource.getLength();
+        if (length < 4 || !JpegConstants.SOI.equals(byteSource.getBlock(0L, 2))) {
+            throw new ImageReadException("Not a Valid JPEG File: doesn't begin with 0xffd8");
+        }
+        long position = start;
+        while (position + 4 <= length) {
+            final byte[] markerBytes = byteSource.getBlock(position, 4);
+            if ((0xff & markerBytes[0]) != 0xff || (0xff & markerBytes[1]) == 0xff) {
+                position++;
+                continue;
+            }
+            final int marker = 0xff00 | (0xff & markerBytes[1]);
+            if (marker == JpegConstants.SOS_MARKER || marker == JpegConstants.EOI_MARKER) {
+                return -1;
+            }
+            final int segmentLength = ByteConversions.toUInt16(markerBytes, 2, getByteOrder());
+            if (segmentLength < 2 || position + 2 + segmentLength > length) {
+                throw new ImageReadException("Invalid segment size");
+            }
+            // "Exif" and two zero bytes
+            if (marker == JpegConstants.JPEG_APP1_MARKER && segmentLength >= 2 + 6
+                    && JpegConstants.EXIF_IDENTIFIER_CODE.equals(byteSource.getBlock(position + 4, 4))) {
+                return position;
+            }
+            position += 2 + segmentLength;
+        }
+        return -1;
+    }
+
+    /**
+     * Reads everything from the start of the scan data to the end of the
+     * source. Random-access sources read it as one exactly sized block
+     * rather than growing a buffer while draining the stream.
+     */
+    private static byte[] readImageData(final ByteSource byteSource, final InputStream is,
+            final long position) throws ImageReadException, IOException {
+        if (byteSource instanceof ByteSourceInputStream) {
+            return getStreamBytes(is);
+        }
+        final long remaining = byteSource.getLength() - position;
+        if (remaining < 0 || remaining > Integer.MAX_VALUE) {
+            throw new ImageReadException("Invalid JPEG image data length: " + remaining);
+        }
+        return byteSource.getBlock(position, (int) remaining);
+    }
+
     public static String getMarkerName(final int marker) {
         switch (marker) {
         case JpegConstants.SOS_MARKER:
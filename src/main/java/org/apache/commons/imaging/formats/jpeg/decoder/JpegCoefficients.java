@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.imaging.formats.jpeg.decoder;
+
+import org.apache.commons.imaging.formats.jpeg.segments.DqtSegment;
+import org.apache.commons.imaging.formats.jpeg.segments.SofnSegment;
+
+/**
+ * The quantized DCT coefficients of a JPEG image, as decoded by
+ * {@link JpegDecoder#decodeCoefficients(org.apache.commons.imaging.common.bytesource.ByteSource)}.
+ * <p>
+ * The coefficients of each component are held in zig-zag order, 64 per
+ * block, in rows of blocks that cover whole MCUs; the blocks outside the
+ * image are padding. DC coefficients are values, not differences. The
+ * arrays are shared, not copied.
+ */
+public final class JpegCoefficients {
+    public final int width;
+    public final int height;
+    public final int precision;
+    private final SofnSegment.Component[] components;
+    // indexed by destination identifier, null where undefined
+    private final DqtSegment.QuantizationTable[] quantizationTables;
+    private final short[][] coefficients;
+    private final int[] blocksPerLine;
+
+    JpegCoefficients(final SofnSegment sofnSegment, final SofnSegment.Component[] components,
+            final DqtSegment.QuantizationTable[] quantizationTables, final short[][] coefficients,
+            final int[] blocksPerLine) {
+        this.width = sofnSegment.width;
+        this.height = sofnSegment.height;
+        this.precision = sofnSegment.precision;
+        this.components = components;
+        this.quantizationTables = quantizationTables;
+        this.coefficients = coefficients;
+        this.blocksPerLine = blocksPerLine;
+    }
+
+    /**
+     * Creates zeroed coefficients for an image of the given size and
+     * components.
+     *
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param precision the sample precision
+     * @param components the components
+     * @param quantizationTables the quantization tables, indexed by
+     *        destination identifier
+     */
+    public JpegCoefficients(final int width, final int height, final int precision,
+            final SofnSegment.Component[] components,
+            final DqtSegment.QuantizationTable[] quantizationTables) {
+        this.width = width;
+        this.height = height;
+        this.precision = precision;
+        this.components = components.clone();
+        this.quantizationTables = quantizationTables.clone();
+        final int hMax = getMaxHorizontalSamplingFactor();
+        final int vMax = getMaxVerticalSamplingFactor();
+        final int xMCUs = (width + 8 * hMax - 1) / (8 * hMax);
+        final int yMCUs = (height + 8 * vMax - 1) / (8 * vMax);
+        coefficients = new short[components.length][];
+        blocksPerLine = new int[components.length];
+        for (int i = 0; i < components.length; i++) {
+            blocksPerLine[i] = xMCUs * components[i].horizontalSamplingFactor;
+            coefficients[i] = new short[64 * blocksPerLine[i] * yMCUs * components[i].verticalSamplingFactor];
+        }
+    }
+
+    public int getComponentCount() {
+        return components.length;
+    }
+
+    public SofnSegment.Component getComponent(final int index) {
+        return components[index];
+    }
+
+    /**
+     * Returns the quantization table with the given destination identifier.
+     *
+     * @param destinationIdentifier the identifier, 0 to 3
+     * @return the table, or null if it is not defined
+     */
+    public DqtSegment.QuantizationTable getQuantizationTable(final int destinationIdentifier) {
+        return quantizationTables[destinationIdentifier];
+    }
+
+    /**
+     * Returns the coefficients of a component.
+     *
+     * @param index the index of the component
+     * @return the coefficients, not a copy
+     */
+    public short[] getCoefficients(final int index) {
+        return coefficients[index];
+    }
+
+    public int getBlocksPerLine(final int index) {
+        return blocksPerLine[index];
+    }
+
+    public int getBlockRows(final int index) {
+        return coefficients[index].length / (64 * blocksPerLine[index]);
+    }
+
+    public int getMaxHorizontalSamplingFactor() {
+        int hMax = 0;
+        for (final SofnSegment.Component component : components) {
+            hMax = Math.max(hMax, component.horizontalSamplingFactor);
+        }
+        return hMax;
+    }
+
+    public int getMaxVerticalSamplingFactor() {
+        int vMax = 0;
+        for (final SofnSegment.Component component : components) {
+            vMax = Math.max(vMax, component.verticalSamplingFactor);
+        }
+        return vMax;
+    }
+}
@@ -18,9 +18,11 @@ package org.apache.commons.imaging.formats.jpeg.decoder;
 import static org.apache.commons.imaging.common.BinaryFunctions.read2Bytes;
 import static org.apache.commons.imaging.common.BinaryFunctions.readBytes;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
 import java.awt.image.DirectColorModel;
 import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
@@ -29,11 +31,16 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 import org.apache.commons.imaging.ImageReadException;
 import org.apache.commons.imaging.color.ColorConversions;
 import org.apache.commons.imaging.common.BinaryFileParser;
+import org.apache.commons.imaging.common.ByteConversions;
 import org.apache.commons.imaging.common.bytesource.ByteSource;
 import org.apache.commons.imaging.formats.jpeg.JpegConstants;
 import org.apache.commons.imaging.formats.jpeg.JpegUtils;
@@ -43,6 +50,8 @@ import org.apache.commons.imaging.formats.jpeg.segments.DqtSegment;
 import org.apache.commons.imaging.formats.jpeg.segments.DqtSegment.QuantizationTable;
 import org.apache.commons.imaging.formats.jpeg.segments.SofnSegment;
 import org.apache.commons.imaging.formats.jpeg.segments.SosSegment;
+import org.apache.commons.imaging.internal.Dct;
+import org.apache.commons.imaging.internal.ZigZag;
 
 public class JpegDecoder extends BinaryFileParser implements JpegUtils.Visitor {
     /*
@@ -54,18 +63,93 @@ public class JpegDecoder extends BinaryFileParser implements JpegUtils.Visitor {
      * positive numbers.
      */
 
+    /**
+     * Receives the rows of an image decoded by
+     * {@link JpegDecoder#decode(ByteSource, RowSink)}.
+     */
+    public interface RowSink {
+        /**
+         * Called once before any rows are passed.
+         *
+         * @param width the width of the decoded image
+         * @param height the height of the decoded image
+         * @throws ImageReadException to stop decoding
+         */
+        void begin(int width, int height) throws ImageReadException;
+
+        /**
+         * Receives decoded rows as 0xRRGGBB pixels, {@code width} pixels
+         * per row. The array is reused once this method returns.
+         *
+         * @param y the index of the first row
+         * @param count the number of rows
+         * @param rgb the pixels
+         * @param offset the index of the first pixel of the first row
+         * @throws ImageReadException to stop decoding
+         */
+        void rows(int y, int count, int[] rgb, int offset) throws ImageReadException;
+    }
+
     private final DqtSegment.QuantizationTable[] quantizationTables = new DqtSegment.QuantizationTable[4];
     private final DhtSegment.HuffmanTable[] huffmanDCTables = new DhtSegment.HuffmanTable[4];
     private final DhtSegment.HuffmanTable[] huffmanACTables = new DhtSegment.HuffmanTable[4];
     private SofnSegment sofnSegment;
+    private SofnSegment.Component[] frameComponents;
     private SosSegment sosSegment;
     private final float[][] scaledQuantizationTables = new float[4][];
+    private final int[][] dequantizationTables = new int[4][];
+    private final boolean integerIdct;
+    private final boolean parallel;
+    private final Object scale;
+    private final Object region;
+    // receives the rows instead of a raster, null when decoding to an image
+    private RowSink rowSink;
+    private int scaleDenominator;
+    // the width and height of a block in the output
+    private int blockSize;
+    private int outputWidth;
+    private int outputHeight;
+    // the part of the output that is decoded, the raster covers only this part
+    private Rectangle outputRegion;
     private BufferedImage image;
     private ImageReadException imageReadException;
     private IOException ioException;
-    private final int[] zz = new int[64];
-    private final int[] blockInt = new int[64];
-    private final float[] block = new float[64];
+    private int restartInterval;
+    private boolean progressive;
+    // quantized coefficients in zig-zag order, per frame component, for
+    // images coded in several scans
+    private short[][] coefficients;
+    private int[] blocksPerLine;
+    // remaining blocks of the current end-of-band run, G.1.2.2 of T.81
+    private int eobrun;
+    // block buffers of the calling thread
+    private final MCUDecoder mcuDecoder = new MCUDecoder();
+    // only the coefficients are decoded, see decodeCoefficients()
+    private boolean coefficientsOnly;
+    // the bottom of the region whose coefficients are needed
+    private int coefficientsBottom;
+
+    public JpegDecoder() {
+        this(null);
+    }
+
+    /**
+     * Creates a decoder with the given read parameters.
+     *
+     * @param params the parameters, may be null
+     * @see JpegConstants#PARAM_KEY_JPEG_INTEGER_IDCT
+     * @see JpegConstants#PARAM_KEY_JPEG_SCALE_DENOMINATOR
+     * @see JpegConstants#PARAM_KEY_JPEG_PARALLEL_DECODE
+     * @see JpegConstants#PARAM_KEY_JPEG_REGION
+     */
+    public JpegDecoder(final Map<String, Object> params) {
+        integerIdct = params != null
+                && Boolean.TRUE.equals(params.get(JpegConstants.PARAM_KEY_JPEG_INTEGER_IDCT));
+        scale = params == null ? null : params.get(JpegConstants.PARAM_KEY_JPEG_SCALE_DENOMINATOR);
+        region = params == null ? null : params.get(JpegConstants.PARAM_KEY_JPEG_REGION);
+        parallel = params != null
+                && Boolean.TRUE.equals(params.get(JpegConstants.PARAM_KEY_JPEG_PARALLEL_DECODE));
+    }
 
     @Override
     public boolean beginSOS() {
@@ -74,63 +158,35 @@ public class JpegDecoder extends BinaryFileParser implements JpegUtils.Visitor {
 
     @Override
     public void visitSOS(final int marker, final byte[] markerBytes, final byte[] imageData) {
-        final ByteArrayInputStream is = new ByteArrayInputStream(imageData);
         try {
-            // read the scan header
-            final int segmentLength = read2Bytes("segmentLength", is,"Not a Valid JPEG File", getByteOrder());
-            final byte[] sosSegmentBytes = readBytes("SosSegment", is, segmentLength - 2, "Not a Valid JPEG File");
-            sosSegment = new SosSegment(marker, sosSegmentBytes);
-            // read the payload of the scan, this is the remainder of image data after the header
-            // the payload contains the entropy-encoded segments (or ECS) divided by RST markers
-            // or only one ECS if the entropy-encoded data is not divided by RST markers
-            // length of payload = length of image data - length of data already read
-            final int[] scanPayload = new int[imageData.length - segmentLength];
-            int payloadReadCount = 0;
-            while (payloadReadCount < scanPayload.length) {
-                scanPayload[payloadReadCount] = is.read();
-                payloadReadCount++;
-            }
-
             int hMax = 0;
             int vMax = 0;
             for (int i = 0; i < sofnSegment.numberOfComponents; i++) {
                 hMax = Math.max(hMax,
-                        sofnSegment.getComponents(i).horizontalSamplingFactor);
+                        frameComponents[i].horizontalSamplingFactor);
                 vMax = Math.max(vMax,
-                        sofnSegment.getComponents(i).verticalSamplingFactor);
+                        frameComponents[i].verticalSamplingFactor);
             }
-            final int hSize = 8 * hMax;
-            final int vSize = 8 * vMax;
-
-            final int xMCUs = (sofnSegment.width + hSize - 1) / hSize;
-            final int yMCUs = (sofnSegment.height + vSize - 1) / vSize;
-            final Block[] mcu = allocateMCUMemory();
-            final Block[] scaledMCU = new Block[mcu.length];
-            for (int i = 0; i < scaledMCU.length; i++) {
-                scaledMCU[i] = new Block(hSize, vSize);
+            final int xMCUs = (sofnSegment.width + 8 * hMax - 1) / (8 * hMax);
+            final int yMCUs = (sofnSegment.height + 8 * vMax - 1) / (8 * vMax);
+            // the size of an MCU in the output
+            final int hSize = blockSize * hMax;
+            final int vSize = blockSize * vMax;
+            outputWidth = (sofnSegment.width + scaleDenominator - 1) / scaleDenominator;
+            outputHeight = (sofnSegment.height + scaleDenominator - 1) / scaleDenominator;
+            if (!coefficientsOnly) {
+                outputRegion = getOutputRegion();
             }
-            final int[] preds = new int[sofnSegment.numberOfComponents];
             ColorModel colorModel;
-            WritableRaster raster;
             switch (sofnSegment.numberOfComponents) {
             case 4:
-                colorModel = new DirectColorModel(24, 0x00ff0000, 0x0000ff00, 0x000000ff);
-                final int bandMasks[] = new int[] { 0x00ff0000, 0x0000ff00, 0x000000ff };
-                raster = Raster.createPackedRaster(DataBuffer.TYPE_INT, sofnSegment.width, sofnSegment.height, bandMasks, null);
-                break;
             case 3:
                 colorModel = new DirectColorModel(24, 0x00ff0000, 0x0000ff00,
                         0x000000ff);
-                raster = Raster.createPackedRaster(DataBuffer.TYPE_INT,
-                        sofnSegment.width, sofnSegment.height, new int[] {
-                                0x00ff0000, 0x0000ff00, 0x000000ff }, null);
                 break;
             case 1:
                 colorModel = new DirectColorModel(24, 0x00ff0000, 0x0000ff00,
                         0x000000ff);
-                raster = Raster.createPackedRaster(DataBuffer.TYPE_INT,
-                        sofnSegment.width, sofnSegment.height, new int[] {
-                                0x00ff0000, 0x0000ff00, 0x000000ff }, null);
                 // FIXME: why do images come out too bright with CS_GRAY?
                 // colorModel = new ComponentColorModel(
                 // ColorSpace.getInstance(ColorSpace.CS_GRAY), false, true,
@@ -142,77 +198,610 @@ public class JpegDecoder extends BinaryFileParser implements JpegUtils.Visitor {
                 throw new ImageReadException(sofnSegment.numberOfComponents
                         + " components are invalid or unsupported");
             }
-            final DataBuffer dataBuffer = raster.getDataBuffer();
+            final WritableRaster raster;
+            final int[] pixels;
+            if (coefficientsOnly) {
+                raster = null;
+                pixels = null;
+            } else if (rowSink == null) {
+                raster = Raster.createPackedRaster(DataBuffer.TYPE_INT,
+                        outputRegion.width, outputRegion.height, new int[] {
+                                0x00ff0000, 0x0000ff00, 0x000000ff }, null);
+                pixels = ((DataBufferInt) raster.getDataBuffer()).getData();
+            } else {
+                // only one MCU row is held at a time
+                raster = null;
+                pixels = new int[outputRegion.width * vSize];
+                rowSink.begin(outputRegion.width, outputRegion.height);
+            }
+
+            int pos = 0;
+            boolean moreScans = true;
+            while (moreScans) {
+                // read the scan header
+                final ByteArrayInputStream is = new ByteArrayInputStream(imageData,
+                        pos, imageData.length - pos);
+                final int segmentLength = read2Bytes("segmentLength", is,"Not a Valid JPEG File", getByteOrder());
+                final byte[] sosSegmentBytes = readBytes("SosSegment", is, segmentLength - 2, "Not a Valid JPEG File");
+                sosSegment = new SosSegment(JpegConstants.SOS_MARKER, sosSegmentBytes);
+                // read the payload of the scan, this is the image data after the header
+                // up to the next marker that is not a restart marker
+                // the payload contains the entropy-encoded segments (or ECS) divided by RST markers
+                // or only one ECS if the entropy-encoded data is not divided by RST markers
+                // the payload is read in place
+                final int scanStart = pos + segmentLength;
+                final int scanEnd = findScanEnd(imageData, scanStart);
+
+                if (coefficients == null && !progressive && !coefficientsOnly
+                        && sosSegment.numberOfComponents == sofnSegment.numberOfComponents) {
+                    // a sequential image coded in one scan is converted MCU by MCU
+                    decodeScan(imageData, scanStart, scanEnd, hSize, vSize, xMCUs, yMCUs, pixels);
+                    if (raster != null) {
+                        image = new BufferedImage(colorModel, raster,
+                                colorModel.isAlphaPremultiplied(), new Properties());
+                    }
+                    return;
+                }
+
+                if (coefficients == null) {
+                    coefficients = new short[frameComponents.length][];
+                    blocksPerLine = new int[frameComponents.length];
+                    for (int i = 0; i < frameComponents.length; i++) {
+                        // buffers cover whole MCUs
+                        blocksPerLine[i] = xMCUs * frameComponents[i].horizontalSamplingFactor;
+                        coefficients[i] = new short[64 * blocksPerLine[i]
+                                * yMCUs * frameComponents[i].verticalSamplingFactor];
+                    }
+                }
+                decodeScanCoefficients(imageData, scanStart, scanEnd, hMax, vMax, xMCUs, yMCUs);
+
+                // tables may be redefined between scans
+                moreScans = false;
+                pos = scanEnd;
+                while (pos + 1 < imageData.length) {
+                    final int nextMarker = ((0xff & imageData[pos]) << 8) | (0xff & imageData[pos + 1]);
+                    if ((nextMarker & 0xff00) != 0xff00 || nextMarker == 0xffff) {
+                        // fill bytes
+                        pos++;
+                        continue;
+                    }
+                    pos += 2;
+                    if (nextMarker == JpegConstants.SOS_MARKER) {
+                        moreScans = true;
+                        break;
+                    } else if (nextMarker == JpegConstants.EOI_MARKER || pos + 2 > imageData.length) {
+                        break;
+                    }
+                    final int length = ByteConversions.toUInt16(imageData, pos, getByteOrder());
+                    if (length < 2 || pos + length > imageData.length) {
+                        throw new ImageReadException("Invalid segment size");
+                    }
+                    visitSegment(nextMarker, Arrays.copyOfRange(imageData, pos - 2, pos), length,
+                            Arrays.copyOfRange(imageData, pos, pos + 2),
+                            Arrays.copyOfRange(imageData, pos + 2, pos + length));
+                    pos += length;
+                }
+            }
+
+            if (coefficientsOnly) {
+                return;
+            }
+            writeCoefficients(hSize, vSize, xMCUs, yMCUs, pixels);
+            if (raster != null) {
+                image = new BufferedImage(colorModel, raster,
+                        colorModel.isAlphaPremultiplied(), new Properties());
+            }
+        } catch (final ImageReadException imageReadEx) {
+            imageReadException = imageReadEx;
+        } catch (final IOException ioEx) {
+            ioException = ioEx;
+        } catch (final RuntimeException ex) {
+            // Corrupt images can throw NPE and IOOBE
+            imageReadException = new ImageReadException("Error parsing JPEG",ex);
+        }
+    }
 
-            final JpegInputStream[] bitInputStreams = splitByRstMarkers(scanPayload);
-            int bitInputStreamCount = 0;
-            JpegInputStream bitInputStream = bitInputStreams[0];
+    /**
+     * Decodes a scan holding all the components and converts the samples MCU
+     * by MCU.
+     */
+    private void decodeScan(final byte[] data, final int start, final int end,
+            final int hSize, final int vSize, final int xMCUs, final int yMCUs,
+            final int[] pixels) throws ImageReadException {
+        final JpegInputStream[] bitInputStreams = splitByRstMarkers(data, start, end);
+        if (restartInterval > 0 && bitInputStreams.length > 1
+                && (long) bitInputStreams.length * restartInterval >= (long) xMCUs * yMCUs) {
+            // every interval has its own stream
+            decodeIntervals(bitInputStreams, hSize, vSize, xMCUs, yMCUs, pixels);
+            return;
+        }
 
-            for (int y1 = 0; y1 < vSize * yMCUs; y1 += vSize) {
-                for (int x1 = 0; x1 < hSize * xMCUs; x1 += hSize) {
+        final Block[] mcu = allocateMCUMemory();
+        final Block[] scaledMCU = allocateScaledMCUMemory(hSize, vSize);
+        final int[] preds = new int[sofnSegment.numberOfComponents];
+        int bitInputStreamCount = 0;
+        JpegInputStream bitInputStream = bitInputStreams[0];
+        int mcuCount = 0;
+
+        // rows below the region are not needed
+        final int yEnd = Math.min(vSize * yMCUs, outputRegion.y + outputRegion.height);
+        for (int y1 = 0; y1 < yEnd; y1 += vSize) {
+            for (int x1 = 0; x1 < hSize * xMCUs; x1 += hSize) {
+                if (restartInterval > 0) {
+                    // each interval holds restartInterval MCUs and
+                    // starts with fresh DC predictions, F.2.1.3.1 of T.81
+                    if (mcuCount > 0 && mcuCount % restartInterval == 0) {
+                        bitInputStreamCount++;
+                        if (bitInputStreamCount < bitInputStreams.length) {
+                            bitInputStream = bitInputStreams[bitInputStreamCount];
+                        }
+                        Arrays.fill(preds, 0);
+                    }
+                    mcuCount++;
+                } else if (!bitInputStream.hasNext()) {
                     // Provide the next interval if an interval is read until it's end
                     // as long there are unread intervals available
-                    if (!bitInputStream.hasNext()) {
+                    bitInputStreamCount++;
+                    if (bitInputStreamCount < bitInputStreams.length) {
+                        bitInputStream = bitInputStreams[bitInputStreamCount];
+                    }
+                }
+
+                if (!intersectsRegion(x1, y1, hSize, vSize)) {
+                    // only the predictions are needed
+                    mcuDecoder.skipMCU(bitInputStream, preds);
+                    continue;
+                }
+                mcuDecoder.readMCU(bitInputStream, preds, mcu);
+                writeMCU(mcu, scaledMCU, hSize, vSize, x1, y1, pixels);
+            }
+        }
+    }
+
+    /**
+     * Decodes the restart intervals of a scan, in parallel when enabled, on
+     * the fork-join pool of the calling task or else on the common pool.
+     * Each task decodes a run of consecutive intervals with its own
+     * predictions and buffers; the MCUs of different tasks never overlap,
+     * so they write to distinct samples of the data buffer.
+     */
+    private void decodeIntervals(final JpegInputStream[] bitInputStreams,
+            final int hSize, final int vSize, final int xMCUs, final int yMCUs,
+            final int[] pixels) throws ImageReadException {
+        final int mcuCount = xMCUs * yMCUs;
+        final int intervalCount = (mcuCount + restartInterval - 1) / restartInterval;
+        final int parallelism = ForkJoinTask.inForkJoinPool()
+                ? ForkJoinTask.getPool().getParallelism()
+                : ForkJoinPool.getCommonPoolParallelism();
+        // a few tasks per thread balance intervals of uneven cost
+        // rows are passed to a sink in order, so streaming decodes are not split
+        final int taskCount = parallel && rowSink == null && parallelism > 1
+                ? Math.min(intervalCount, 4 * parallelism) : 1;
+        final IntervalTask[] tasks = new IntervalTask[taskCount];
+        for (int i = 0; i < taskCount; i++) {
+            tasks[i] = new IntervalTask(bitInputStreams, intervalCount * i / taskCount,
+                    intervalCount * (i + 1) / taskCount, hSize, vSize, xMCUs, mcuCount, pixels);
+        }
+        if (taskCount == 1) {
+            // runs in the calling thread
+            tasks[0].invoke();
+        } else {
+            RecursiveAction.invokeAll(tasks);
+        }
+        for (final IntervalTask task : tasks) {
+            if (task.exception != null) {
+                throw task.exception;
+            }
+        }
+    }
+
+    /**
+     * Decodes a scan into the coefficient buffers. Progressive scans refine
+     * the coefficients as described in section G.1.2 of T.81.
+     */
+    private void decodeScanCoefficients(final byte[] data, final int start, final int end,
+            final int hMax, final int vMax, final int xMCUs, final int yMCUs)
+            throws ImageReadException {
+        final int componentCount = sosSegment.numberOfComponents;
+        final int[] componentIndexes = new int[componentCount];
+        for (int i = 0; i < componentCount; i++) {
+            componentIndexes[i] = getFrameComponentIndex(sosSegment.getComponents(i));
+        }
+        int xUnits = xMCUs;
+        int yUnits = yMCUs;
+        if (componentCount == 1) {
+            // the MCU of a non-interleaved scan is one block, and only the
+            // blocks inside the component are coded, A.2.2 of T.81
+            final SofnSegment.Component frameComponent = frameComponents[componentIndexes[0]];
+            final int width = (sofnSegment.width * frameComponent.horizontalSamplingFactor + hMax - 1) / hMax;
+            final int height = (sofnSegment.height * frameComponent.verticalSamplingFactor + vMax - 1) / vMax;
+            xUnits = (width + 7) / 8;
+            yUnits = (height + 7) / 8;
+        }
+        if (coefficientsOnly && !progressive) {
+            // rows below the region are not needed, and the blocks of a
+            // sequential scan are complete once decoded
+            int vFactor = vMax;
+            if (componentCount == 1) {
+                vFactor = frameComponents[componentIndexes[0]].verticalSamplingFactor;
+            }
+            yUnits = (int) Math.min(yUnits, ((long) coefficientsBottom * vFactor + 8 * vMax - 1) / (8 * vMax));
+        }
+
+        final int[] preds = new int[componentCount];
+        eobrun = 0;
+        final JpegInputStream[] bitInputStreams = splitByRstMarkers(data, start, end);
+        int bitInputStreamCount = 0;
+        JpegInputStream bitInputStream = bitInputStreams[0];
+        int mcuCount = 0;
+
+        for (int y1 = 0; y1 < yUnits; y1++) {
+            for (int x1 = 0; x1 < xUnits; x1++) {
+                if (restartInterval > 0) {
+                    if (mcuCount > 0 && mcuCount % restartInterval == 0) {
                         bitInputStreamCount++;
                         if (bitInputStreamCount < bitInputStreams.length) {
                             bitInputStream = bitInputStreams[bitInputStreamCount];
                         }
+                        Arrays.fill(preds, 0);
+                        eobrun = 0;
                     }
+                    mcuCount++;
+                }
+                for (int i = 0; i < componentCount; i++) {
+                    final int c = componentIndexes[i];
+                    if (componentCount == 1) {
+                        decodeBlockCoefficients(bitInputStream, i, c, preds,
+                                64 * (y1 * blocksPerLine[c] + x1));
+                        continue;
+                    }
+                    final SofnSegment.Component frameComponent = frameComponents[c];
+                    for (int y = 0; y < frameComponent.verticalSamplingFactor; y++) {
+                        final int blockRow = y1 * frameComponent.verticalSamplingFactor + y;
+                        for (int x = 0; x < frameComponent.horizontalSamplingFactor; x++) {
+                            final int blockColumn = x1 * frameComponent.horizontalSamplingFactor + x;
+                            decodeBlockCoefficients(bitInputStream, i, c, preds,
+                                    64 * (blockRow * blocksPerLine[c] + blockColumn));
+                        }
+                    }
+                }
+            }
+        }
+    }
 
-                    readMCU(bitInputStream, preds, mcu);
-                    rescaleMCU(mcu, hSize, vSize, scaledMCU);
-                    int srcRowOffset = 0;
-                    int dstRowOffset = y1 * sofnSegment.width + x1;
-                    for (int y2 = 0; y2 < vSize && y1 + y2 < sofnSegment.height; y2++) {
-                        for (int x2 = 0; x2 < hSize
-                                && x1 + x2 < sofnSegment.width; x2++) {
-                            if (scaledMCU.length == 4) {
-                                final int C = scaledMCU[0].samples[srcRowOffset + x2];
-                                final int M = scaledMCU[1].samples[srcRowOffset + x2];
-                                final int Y = scaledMCU[2].samples[srcRowOffset + x2];
-                                final int K = scaledMCU[3].samples[srcRowOffset + x2];
-                                final int rgb = ColorConversions.convertCMYKtoRGB(C, M, Y, K);
-                                dataBuffer.setElem(dstRowOffset + x2, rgb);
-                            } else if (scaledMCU.length == 3) {
-                                final int Y = scaledMCU[0].samples[srcRowOffset + x2];
-                                final int Cb = scaledMCU[1].samples[srcRowOffset + x2];
-                                final int Cr = scaledMCU[2].samples[srcRowOffset + x2];
-                                final int rgb = YCbCrConverter.convertYCbCrToRGB(Y,
-                                        Cb, Cr);
-                                dataBuffer.setElem(dstRowOffset + x2, rgb);
-                            } else if (mcu.length == 1) {
-                                final int Y = scaledMCU[0].samples[srcRowOffset + x2];
-                                dataBuffer.setElem(dstRowOffset + x2, (Y << 16)
-                                        | (Y << 8) | Y);
-                            } else {
-                                throw new ImageReadException(
-                                        "Unsupported JPEG with " + mcu.length
-                                                + " components");
+    private void decodeBlockCoefficients(final JpegInputStream is, final int scanComponentIndex,
+            final int frameComponentIndex, final int[] preds, final int offset) throws ImageReadException {
+        final SosSegment.Component scanComponent = sosSegment.getComponents(scanComponentIndex);
+        final short[] coefficient = coefficients[frameComponentIndex];
+        final DhtSegment.HuffmanTable dcTable = huffmanDCTables[scanComponent.dcCodingTableSelector];
+        final DhtSegment.HuffmanTable acTable = huffmanACTables[scanComponent.acCodingTableSelector];
+        if (!progressive) {
+            mcuDecoder.decodeBlock(is, dcTable, acTable, preds, scanComponentIndex);
+            for (int k = 0; k < 64; k++) {
+                coefficient[offset + k] = (short) mcuDecoder.zz[k];
+            }
+            return;
+        }
+
+        final int ss = sosSegment.startOfSpectralSelection;
+        final int se = sosSegment.endOfSpectralSelection;
+        final int al = sosSegment.successiveApproximationBitLow;
+        if (ss == 0) {
+            if (sosSegment.successiveApproximationBitHigh == 0) {
+                // first DC scan, G.1.2.1
+                preds[scanComponentIndex] += decodeDCDifference(is, dcTable);
+                coefficient[offset] = (short) (preds[scanComponentIndex] << al);
+            } else if (is.nextBit() != 0) {
+                // DC refinement, G.1.2.1
+                coefficient[offset] |= 1 << al;
+            }
+        } else if (se > 63 || ss > se) {
+            throw new ImageReadException("Invalid spectral selection " + ss + " to " + se);
+        } else if (sosSegment.successiveApproximationBitHigh == 0) {
+            decodeACFirst(is, acTable, coefficient, offset, ss, se, al);
+        } else {
+            decodeACRefinement(is, acTable, coefficient, offset, ss, se, al);
+        }
+    }
+
+    /**
+     * Decodes the first scan of a band of AC coefficients, G.1.2.2 of T.81.
+     */
+    private void decodeACFirst(final JpegInputStream is, final DhtSegment.HuffmanTable acTable,
+            final short[] coefficient, final int offset, final int ss, final int se, final int al)
+            throws ImageReadException {
+        if (eobrun > 0) {
+            eobrun--;
+            return;
+        }
+        int k = ss;
+        while (k <= se) {
+            final int ac = acTable.getCoefficientLookup(is.peekBits(HuffmanTable.LOOKAHEAD_BITS));
+            if (ac != 0) {
+                is.skipBits(ac & 0xff);
+                k += (ac >> 8) & 0xff;
+                if (k > se) {
+                    throw new ImageReadException("Invalid AC coefficient index " + k);
+                }
+                coefficient[offset + k] = (short) ((ac >> 16) << al);
+                k++;
+                continue;
+            }
+            final int rs = decode(is, acTable);
+            final int ssss = rs & 0xf;
+            final int r = rs >> 4;
+            if (ssss == 0) {
+                if (r < 15) {
+                    // end of band, possibly for the following blocks too
+                    eobrun = (1 << r) - 1;
+                    if (r > 0) {
+                        eobrun += receive(r, is);
+                    }
+                    break;
+                }
+                k += 16;
+            } else {
+                k += r;
+                if (k > se) {
+                    throw new ImageReadException("Invalid AC coefficient index " + k);
+                }
+                coefficient[offset + k] = (short) (extend(receive(ssss, is), ssss) << al);
+                k++;
+            }
+        }
+    }
+
+    /**
+     * Decodes a refinement scan of a band of AC coefficients, G.1.2.3 of
+     * T.81: new coefficients of magnitude one are interleaved with
+     * correction bits for the coefficients that are already non-zero.
+     */
+    private void decodeACRefinement(final JpegInputStream is, final DhtSegment.HuffmanTable acTable,
+            final short[] coefficient, final int offset, final int ss, final int se, final int al)
+            throws ImageReadException {
+        final int p1 = 1 << al;
+        final int m1 = -1 << al;
+        int k = ss;
+        if (eobrun == 0) {
+            for (; k <= se; k++) {
+                final int rs = decode(is, acTable);
+                int r = rs >> 4;
+                int value = 0;
+                if ((rs & 0xf) != 0) {
+                    if ((rs & 0xf) != 1) {
+                        throw new ImageReadException("Invalid AC refinement size " + (rs & 0xf));
+                    }
+                    value = is.nextBit() != 0 ? p1 : m1;
+                } else if (r != 15) {
+                    eobrun = 1 << r;
+                    if (r > 0) {
+                        eobrun += receive(r, is);
+                    }
+                    break;
+                }
+                // skip r zero coefficients, correcting the non-zero ones on the way
+                do {
+                    final int current = coefficient[offset + k];
+                    if (current != 0) {
+                        refineCoefficient(is, coefficient, offset + k, p1, m1);
+                    } else if (--r < 0) {
+                        break;
+                    }
+                    k++;
+                } while (k <= se);
+                if (value != 0) {
+                    if (k > se) {
+                        throw new ImageReadException("Invalid AC coefficient index " + k);
+                    }
+                    coefficient[offset + k] = (short) value;
+                }
+            }
+        }
+        if (eobrun > 0) {
+            // the rest of the band only has correction bits
+            for (; k <= se; k++) {
+                if (coefficient[offset + k] != 0) {
+                    refineCoefficient(is, coefficient, offset + k, p1, m1);
+                }
+            }
+            eobrun--;
+        }
+    }
+
+    private static void refineCoefficient(final JpegInputStream is, final short[] coefficient,
+            final int index, final int p1, final int m1) throws ImageReadException {
+        final int current = coefficient[index];
+        if (is.nextBit() != 0 && (current & p1) == 0) {
+            coefficient[index] = (short) (current + (current >= 0 ? p1 : m1));
+        }
+    }
+
+    /**
+     * Converts the coefficient buffers into samples once all the scans have
+     * been read.
+     */
+    private void writeCoefficients(final int hSize, final int vSize, final int xMCUs,
+            final int yMCUs, final int[] pixels) throws ImageReadException {
+        final Block[] mcu = new Block[frameComponents.length];
+        final Block[] scaledMCU = new Block[mcu.length];
+        for (int i = 0; i < mcu.length; i++) {
+            mcu[i] = new Block(blockSize * frameComponents[i].horizontalSamplingFactor,
+                    blockSize * frameComponents[i].verticalSamplingFactor);
+            scaledMCU[i] = new Block(hSize, vSize);
+        }
+        for (int y1 = 0; y1 < yMCUs; y1++) {
+            for (int x1 = 0; x1 < xMCUs; x1++) {
+                if (!intersectsRegion(x1 * hSize, y1 * vSize, hSize, vSize)) {
+                    continue;
+                }
+                for (int i = 0; i < mcu.length; i++) {
+                    final SofnSegment.Component frameComponent = frameComponents[i];
+                    for (int y = 0; y < frameComponent.verticalSamplingFactor; y++) {
+                        final int blockRow = y1 * frameComponent.verticalSamplingFactor + y;
+                        for (int x = 0; x < frameComponent.horizontalSamplingFactor; x++) {
+                            final int blockColumn = x1 * frameComponent.horizontalSamplingFactor + x;
+                            final int offset = 64 * (blockRow * blocksPerLine[i] + blockColumn);
+                            for (int k = 0; k < 64; k++) {
+                                mcuDecoder.zz[k] = coefficients[i][offset + k];
                             }
+                            mcuDecoder.writeBlock(frameComponent, mcu[i], x, y);
                         }
-                        srcRowOffset += hSize;
-                        dstRowOffset += sofnSegment.width;
                     }
                 }
+                writeMCU(mcu, scaledMCU, hSize, vSize, x1 * hSize, y1 * vSize, pixels);
             }
-            image = new BufferedImage(colorModel, raster,
-                    colorModel.isAlphaPremultiplied(), new Properties());
-            // byte[] remainder = super.getStreamBytes(is);
-            // for (int i = 0; i < remainder.length; i++)
-            // {
-            // System.out.println("" + i + " = " +
-            // Integer.toHexString(remainder[i]));
-            // }
-        } catch (final ImageReadException imageReadEx) {
-            imageReadException = imageReadEx;
-        } catch (final IOException ioEx) {
-            ioException = ioEx;
-        } catch (final RuntimeException ex) {
-            // Corrupt images can throw NPE and IOOBE
-            imageReadException = new ImageReadException("Error parsing JPEG",ex);
         }
     }
 
+    /**
+     * Converts an MCU to RGB and stores the part inside the region. YCbCr
+     * MCUs whose chroma is subsampled by at most 2 are upsampled while they
+     * are converted; other MCUs are rescaled into {@code scaledMCU} first.
+     */
+    private void writeMCU(final Block[] mcu, final Block[] scaledMCU, final int hSize, final int vSize,
+            final int x1, final int y1, final int[] pixels) throws ImageReadException {
+        // the part of the MCU inside the region
+        final int xStart = Math.max(0, outputRegion.x - x1);
+        final int yStart = Math.max(0, outputRegion.y - y1);
+        final int xEnd = Math.min(hSize, outputRegion.x + outputRegion.width - x1);
+        final int yEnd = Math.min(vSize, outputRegion.y + outputRegion.height - y1);
+        final int count = xEnd - xStart;
+        int srcRowOffset = yStart * hSize + xStart;
+        // the row buffer of a streaming decode starts at the MCU row
+        final int dstY = rowSink == null ? y1 - outputRegion.y : 0;
+        int dstRowOffset = (dstY + yStart) * outputRegion.width + x1 - outputRegion.x + xStart;
+        if (mcu.length == 3 && isConvertedWithoutRescaling(mcu, hSize, vSize)) {
+            final int[] ys = mcu[0].samples;
+            final int[] cbs = mcu[1].samples;
+            final int[] crs = mcu[2].samples;
+            final int chromaWidth = mcu[1].width;
+            final int vShift = mcu[1].height == vSize ? 0 : 1;
+            for (int y2 = yStart; y2 < yEnd; y2++) {
+                final int chromaRowOffset = (y2 >> vShift) * chromaWidth;
+                if (chromaWidth == hSize) {
+                    // 4:4:4 and 4:4:0
+                    YCbCrConverter.convertRow(ys, srcRowOffset, cbs, crs, chromaRowOffset + xStart,
+                            count, pixels, dstRowOffset);
+                } else {
+                    // 4:2:2 and 4:2:0
+                    YCbCrConverter.convertRowHalfChroma(ys, srcRowOffset, cbs, crs, chromaRowOffset,
+                            xStart, count, pixels, dstRowOffset);
+                }
+                srcRowOffset += hSize;
+                dstRowOffset += outputRegion.width;
+            }
+        } else {
+            rescaleMCU(mcu, hSize, vSize, scaledMCU);
+            for (int y2 = yStart; y2 < yEnd; y2++) {
+                switch (scaledMCU.length) {
+                case 4:
+                    final int[] cs = scaledMCU[0].samples;
+                    final int[] ms = scaledMCU[1].samples;
+                    final int[] ys = scaledMCU[2].samples;
+                    final int[] ks = scaledMCU[3].samples;
+                    for (int i = 0; i < count; i++) {
+                        // the conversion sets the alpha bits, which are not part of the pixels
+                        pixels[dstRowOffset + i] = ColorConversions.convertCMYKtoRGB(cs[srcRowOffset + i],
+                                ms[srcRowOffset + i], ys[srcRowOffset + i], ks[srcRowOffset + i]) & 0xffffff;
+                    }
+                    break;
+                case 3:
+                    YCbCrConverter.convertRow(scaledMCU[0].samples, srcRowOffset, scaledMCU[1].samples,
+                            scaledMCU[2].samples, srcRowOffset, count, pixels, dstRowOffset);
+                    break;
+                case 1:
+                    final int[] samples = scaledMCU[0].samples;
+                    for (int i = 0; i < count; i++) {
+                        pixels[dstRowOffset + i] = 0x010101 * samples[srcRowOffset + i];
+                    }
+                    break;
+                default:
+                    throw new ImageReadException(
+                            "Unsupported JPEG with " + scaledMCU.length
+                                    + " components");
+                }
+                srcRowOffset += hSize;
+                dstRowOffset += outputRegion.width;
+            }
+        }
+        if (rowSink != null && xEnd == outputRegion.x + outputRegion.width - x1) {
+            // the last MCU of the row inside the region completes the rows
+            rowSink.rows(y1 + yStart - outputRegion.y, yEnd - yStart, pixels,
+                    yStart * outputRegion.width);
+        }
+    }
+
+    /**
+     * Returns whether the luma of a YCbCr MCU has the full resolution and
+     * the chroma half or full resolution in each direction.
+     */
+    private static boolean isConvertedWithoutRescaling(final Block[] mcu, final int hSize, final int vSize) {
+        final Block luma = mcu[0];
+        final Block cb = mcu[1];
+        final Block cr = mcu[2];
+        return luma.width == hSize && luma.height == vSize
+                && cb.width == cr.width && cb.height == cr.height
+                && (cb.width == hSize || 2 * cb.width == hSize)
+                && (cb.height == vSize || 2 * cb.height == vSize);
+    }
+
+    /**
+     * Returns whether the MCU at the given output position covers any part
+     * of the region.
+     */
+    private boolean intersectsRegion(final int x1, final int y1, final int hSize, final int vSize) {
+        return x1 < outputRegion.x + outputRegion.width && x1 + hSize > outputRegion.x
+                && y1 < outputRegion.y + outputRegion.height && y1 + vSize > outputRegion.y;
+    }
+
+    private Rectangle getOutputRegion() throws ImageReadException {
+        if (region == null) {
+            return new Rectangle(0, 0, outputWidth, outputHeight);
+        }
+        // the checks are consistent with BufferedImage.getSubimage()
+        final Rectangle r = (Rectangle) region;
+        if (r.width <= 0) {
+            throw new ImageReadException("negative or zero region width");
+        }
+        if (r.height <= 0) {
+            throw new ImageReadException("negative or zero region height");
+        }
+        if (r.x < 0 || r.x >= outputWidth) {
+            throw new ImageReadException("region x is outside raster");
+        }
+        if (r.x + r.width > outputWidth) {
+            throw new ImageReadException("region (x+width) is outside raster");
+        }
+        if (r.y < 0 || r.y >= outputHeight) {
+            throw new ImageReadException("region y is outside raster");
+        }
+        if (r.y + r.height > outputHeight) {
+            throw new ImageReadException("region (y+height) is outside raster");
+        }
+        return new Rectangle(r);
+    }
+
+    /**
+     * Returns the position of the first marker other than a restart marker,
+     * where the entropy-coded data of a scan ends.
+     */
+    static int findScanEnd(final byte[] data, final int start) {
+        int pos = start;
+        while (pos < data.length - 1) {
+            if (data[pos] != (byte) 0xff) {
+                pos++;
+                continue;
+            }
+            final int b2 = 0xff & data[pos + 1];
+            if (b2 != 0 && (b2 < (0xff & JpegConstants.RST0_MARKER)
+                    || b2 > (0xff & JpegConstants.RST7_MARKER))) {
+                return pos;
+            }
+            pos += 2;
+        }
+        return data.length;
+    }
+
     @Override
     public boolean visitSegment(final int marker, final byte[] markerBytes,
             final int segmentLength, final byte[] segmentLengthBytes, final byte[] segmentData)
@@ -234,11 +823,23 @@ public class JpegDecoder extends BinaryFileParser implements JpegUtils.Visitor {
         };
 
         if (Arrays.binarySearch(sofnSegments, marker) >= 0) {
-            if (marker != JpegConstants.SOF0_MARKER) {
-                throw new ImageReadException("Only sequential, baseline JPEGs "
+            if (marker != JpegConstants.SOF0_MARKER && marker != JpegConstants.SOF2_MARKER) {
+                throw new ImageReadException("Only sequential, baseline and progressive JPEGs "
                         + "are supported at the moment");
             }
+            progressive = marker == JpegConstants.SOF2_MARKER;
             sofnSegment = new SofnSegment(marker, segmentData);
+            frameComponents = new SofnSegment.Component[sofnSegment.numberOfComponents];
+            for (int i = 0; i < frameComponents.length; i++) {
+                SofnSegment.Component component = sofnSegment.getComponents(i);
+                if (frameComponents.length == 1) {
+                    // the MCU of a single component is one data unit whatever
+                    // its sampling factors, A.2.2 of T.81
+                    component = new SofnSegment.Component(component.componentIdentifier,
+                            1, 1, component.quantTabDestSelector);
+                }
+                frameComponents[i] = component;
+            }
         } else if (marker == JpegConstants.DQT_MARKER) {
             final DqtSegment dqtSegment = new DqtSegment(marker, segmentData);
             for (final QuantizationTable element : dqtSegment.quantizationTables) {
@@ -252,6 +853,7 @@ public class JpegDecoder extends BinaryFileParser implements JpegUtils.Visitor {
                 quantizationTables[table.destinationIdentifier] = table;
                 final int[] quantizationMatrixInt = new int[64];
                 ZigZag.zigZagToBlock(table.getElements(), quantizationMatrixInt);
+                dequantizationTables[table.destinationIdentifier] = quantizationMatrixInt;
                 final float[] quantizationMatrixFloat = new float[64];
                 for (int j = 0; j < 64; j++) {
                     quantizationMatrixFloat[j] = quantizationMatrixInt[j];
@@ -280,6 +882,11 @@ public class JpegDecoder extends BinaryFileParser implements JpegUtils.Visitor {
                 }
                 tables[table.destinationIdentifier] = table;
             }
+        } else if (marker == JpegConstants.DRI_MARKER) {
+            if (segmentData.length < 2) {
+                throw new ImageReadException("Invalid DRI segment");
+            }
+            restartInterval = ByteConversions.toUInt16(segmentData, getByteOrder());
         }
         return true;
     }
@@ -320,127 +927,58 @@ public class JpegDecoder extends BinaryFileParser implements JpegUtils.Visitor {
         }
     }
 
+    private int getFrameComponentIndex(final SosSegment.Component scanComponent)
+            throws ImageReadException {
+        for (int j = 0; j < sofnSegment.numberOfComponents; j++) {
+            if (frameComponents[j].componentIdentifier == scanComponent.scanComponentSelector) {
+                return j;
+            }
+        }
+        throw new ImageReadException("Invalid component");
+    }
+
+    private Block[] allocateScaledMCUMemory(final int hSize, final int vSize) {
+        final Block[] scaledMCU = new Block[sosSegment.numberOfComponents];
+        for (int i = 0; i < scaledMCU.length; i++) {
+            scaledMCU[i] = new Block(hSize, vSize);
+        }
+        return scaledMCU;
+    }
+
     private Block[] allocateMCUMemory() throws ImageReadException {
         final Block[] mcu = new Block[sosSegment.numberOfComponents];
         for (int i = 0; i < sosSegment.numberOfComponents; i++) {
-            final SosSegment.Component scanComponent = sosSegment.getComponents(i);
-            SofnSegment.Component frameComponent = null;
-            for (int j = 0; j < sofnSegment.numberOfComponents; j++) {
-                if (sofnSegment.getComponents(j).componentIdentifier == scanComponent.scanComponentSelector) {
-                    frameComponent = sofnSegment.getComponents(j);
-                    break;
-                }
-            }
-            if (frameComponent == null) {
-                throw new ImageReadException("Invalid component");
-            }
+            final SofnSegment.Component frameComponent =
+                    frameComponents[getFrameComponentIndex(sosSegment.getComponents(i))];
             final Block fullBlock = new Block(
-                    8 * frameComponent.horizontalSamplingFactor,
-                    8 * frameComponent.verticalSamplingFactor);
+                    blockSize * frameComponent.horizontalSamplingFactor,
+                    blockSize * frameComponent.verticalSamplingFactor);
             mcu[i] = fullBlock;
         }
         return mcu;
     }
 
-    private void readMCU(final JpegInputStream is, final int[] preds, final Block[] mcu)
+    private int decodeDCDifference(final JpegInputStream is, final DhtSegment.HuffmanTable dcTable)
             throws ImageReadException {
-        for (int i = 0; i < sosSegment.numberOfComponents; i++) {
-            final SosSegment.Component scanComponent = sosSegment.getComponents(i);
-            SofnSegment.Component frameComponent = null;
-            for (int j = 0; j < sofnSegment.numberOfComponents; j++) {
-                if (sofnSegment.getComponents(j).componentIdentifier == scanComponent.scanComponentSelector) {
-                    frameComponent = sofnSegment.getComponents(j);
-                    break;
-                }
-            }
-            if (frameComponent == null) {
-                throw new ImageReadException("Invalid component");
-            }
-            final Block fullBlock = mcu[i];
-            for (int y = 0; y < frameComponent.verticalSamplingFactor; y++) {
-                for (int x = 0; x < frameComponent.horizontalSamplingFactor; x++) {
-                    Arrays.fill(zz, 0);
-                    // page 104 of T.81
-                    final int t = decode(
-                            is,
-                            huffmanDCTables[scanComponent.dcCodingTableSelector]);
-                    int diff = receive(t, is);
-                    diff = extend(diff, t);
-                    zz[0] = preds[i] + diff;
-                    preds[i] = zz[0];
-
-                    // "Decode_AC_coefficients", figure F.13, page 106 of T.81
-                    int k = 1;
-                    while (true) {
-                        final int rs = decode(
-                                is,
-                                huffmanACTables[scanComponent.acCodingTableSelector]);
-                        final int ssss = rs & 0xf;
-                        final int rrrr = rs >> 4;
-                        final int r = rrrr;
-
-                        if (ssss == 0) {
-                            if (r == 15) {
-                                k += 16;
-                            } else {
-                                break;
-                            }
-                        } else {
-                            k += r;
-
-                            // "Decode_ZZ(k)", figure F.14, page 107 of T.81
-                            zz[k] = receive(ssss, is);
-                            zz[k] = extend(zz[k], ssss);
-
-                            if (k == 63) {
-                                break;
-                            }
-                            k++;
-                        }
-                    }
-
-                    final int shift = (1 << (sofnSegment.precision - 1));
-                    final int max = (1 << sofnSegment.precision) - 1;
-
-                    final float[] scaledQuantizationTable = scaledQuantizationTables[frameComponent.quantTabDestSelector];
-                    ZigZag.zigZagToBlock(zz, blockInt);
-                    for (int j = 0; j < 64; j++) {
-                        block[j] = blockInt[j] * scaledQuantizationTable[j];
-                    }
-                    Dct.inverseDCT8x8(block);
-
-                    int dstRowOffset = 8 * y * 8
-                            * frameComponent.horizontalSamplingFactor + 8 * x;
-                    int srcNext = 0;
-                    for (int yy = 0; yy < 8; yy++) {
-                        for (int xx = 0; xx < 8; xx++) {
-                            float sample = block[srcNext++];
-                            sample += shift;
-                            int result;
-                            if (sample < 0) {
-                                result = 0;
-                            } else if (sample > max) {
-                                result = max;
-                            } else {
-                                result = fastRound(sample);
-                            }
-                            fullBlock.samples[dstRowOffset + xx] = result;
-                        }
-                        dstRowOffset += 8 * frameComponent.horizontalSamplingFactor;
-                    }
-                }
-            }
+        final int dc = dcTable.getCoefficientLookup(is.peekBits(HuffmanTable.LOOKAHEAD_BITS));
+        if (dc != 0) {
+            is.skipBits(dc & 0xff);
+            return dc >> 16;
         }
+        final int t = decode(is, dcTable);
+        return extend(receive(t, is), t);
     }
 
     /**
      * Returns an array of JpegInputStream where each field contains the JpegInputStream
-     * for one interval.
-     * @param scanPayload array to read intervals from
+     * for one interval. The streams read the intervals in place.
+     * @param scanData array to read intervals from
+     * @param start offset of the scan payload in the array
+     * @param end offset after the end of the scan payload
      * @return JpegInputStreams for all intervals, at least one stream is always provided
      */
-    static JpegInputStream[] splitByRstMarkers(final int[] scanPayload) {
-        final List<Integer> intervalStarts = getIntervalStartPositions(scanPayload);
+    static JpegInputStream[] splitByRstMarkers(final byte[] scanData, final int start, final int end) {
+        final List<Integer> intervalStarts = getIntervalStartPositions(scanData, start, end);
         // get number of intervals in payload to init an array of appropriate length
         final int intervalCount = intervalStarts.size();
         final JpegInputStream[] streams = new JpegInputStream[intervalCount];
@@ -451,11 +989,10 @@ public class JpegDecoder extends BinaryFileParser implements JpegUtils.Visitor {
                 // because each restart marker needs two bytes the end of
                 // this interval is two bytes before the next interval starts
                 to = intervalStarts.get(i + 1) - 2;
-            } else { // the last interval ends with the array
-                to = scanPayload.length;
+            } else { // the last interval ends with the payload
+                to = end;
             }
-            final int[] interval = Arrays.copyOfRange(scanPayload, from, to);
-            streams[i] = new JpegInputStream(interval);
+            streams[i] = new JpegInputStream(scanData, from, to);
         }
         return streams;
     }
@@ -466,37 +1003,27 @@ public class JpegDecoder extends BinaryFileParser implements JpegUtils.Visitor {
      * found is equal to the number of start positions minus one (because restart markers
      * are between intervals).
      *
-     * @param scanPayload array to examine
+     * @param scanData array to examine
+     * @param start offset of the scan payload in the array
+     * @param end offset after the end of the scan payload
      * @return the start positions
      */
-    static List<Integer> getIntervalStartPositions(final int[] scanPayload) {
+    static List<Integer> getIntervalStartPositions(final byte[] scanData, final int start, final int end) {
         final List<Integer> intervalStarts = new ArrayList<>();
-        intervalStarts.add(0);
-        boolean foundFF = false;
-        boolean foundD0toD7 = false;
-        int pos = 0;
-        while (pos < scanPayload.length) {
-            if (foundFF) {
+        intervalStarts.add(start);
+        int pos = start;
+        while (pos < end - 1) {
+            if (scanData[pos] == (byte) 0xff) {
+                final int b2 = 0xff & scanData[pos + 1];
                 // found 0xFF D0 .. 0xFF D7 => RST marker
-                if (scanPayload[pos] >= (0xff & JpegConstants.RST0_MARKER) &&
-                    scanPayload[pos] <= (0xff & JpegConstants.RST7_MARKER)) {
-                    foundD0toD7 = true;
-                } else { // found 0xFF followed by something else => no RST marker
-                    foundFF = false;
+                if (b2 >= (0xff & JpegConstants.RST0_MARKER)
+                        && b2 <= (0xff & JpegConstants.RST7_MARKER)) {
+                    // the next interval starts after the marker
+                    intervalStarts.add(pos + 2);
+                    pos += 2;
+                    continue;
                 }
             }
-
-            if (scanPayload[pos] == 0xFF) {
-                foundFF = true;
-            }
-
-            // true if one of the RST markers was found
-            if (foundFF && foundD0toD7) {
-                // we need to add the position after the current position because
-                // we had already read 0xFF and are now at 0xDn
-                intervalStarts.add(pos + 1);
-                foundFF = foundD0toD7 = false;
-            }
             pos++;
         }
         return intervalStarts;
@@ -518,6 +1045,11 @@ public class JpegDecoder extends BinaryFileParser implements JpegUtils.Visitor {
 
     private int receive(final int ssss, final JpegInputStream is) throws ImageReadException {
         // "RECEIVE", section F.2.2.4, figure F.17, page 110 of T.81
+        if (ssss == 0) {
+            return 0;
+        } else if (ssss <= 16) {
+            return is.nextBits(ssss);
+        }
         int i = 0;
         int v = 0;
         while (i != ssss) {
@@ -529,6 +1061,11 @@ public class JpegDecoder extends BinaryFileParser implements JpegUtils.Visitor {
 
     private int decode(final JpegInputStream is, final DhtSegment.HuffmanTable huffmanTable)
             throws ImageReadException {
+        final int lookup = huffmanTable.getLookup(is.peekBits(HuffmanTable.LOOKAHEAD_BITS));
+        if (lookup != 0) {
+            is.skipBits(lookup >> 8);
+            return lookup & 0xff;
+        }
         // "DECODE", section F.2.2.3, figure F.16, page 109 of T.81
         int i = 1;
         int code = is.nextBit();
@@ -541,8 +1078,42 @@ public class JpegDecoder extends BinaryFileParser implements JpegUtils.Visitor {
         return huffmanTable.getHuffVal(j);
     }
 
+    /**
+     * Decodes the image, passing each completed MCU row to the given sink
+     * instead of building an image. Only one MCU row of samples is held in
+     * memory, besides the coefficients of progressive images.
+     *
+     * @param byteSource the JPEG data
+     * @param sink receives the decoded rows from top to bottom
+     * @throws IOException if the data cannot be read
+     * @throws ImageReadException if the data is not a supported JPEG image,
+     *      or if the sink fails
+     */
+    public void decode(final ByteSource byteSource, final RowSink sink) throws IOException,
+            ImageReadException {
+        rowSink = sink;
+        try {
+            decode(byteSource);
+        } finally {
+            rowSink = null;
+        }
+    }
+
     public BufferedImage decode(final ByteSource byteSource) throws IOException,
             ImageReadException {
+        scaleDenominator = 1;
+        if (scale != null) {
+            if (!(scale instanceof Integer) || Integer.bitCount((Integer) scale) != 1
+                    || (Integer) scale > 8) {
+                throw new ImageReadException("Invalid JPEG scale denominator: " + scale);
+            }
+            scaleDenominator = (Integer) scale;
+        }
+        blockSize = 8 / scaleDenominator;
+        if (region != null && !(region instanceof Rectangle)) {
+            throw new ImageReadException("Invalid JPEG region: " + region);
+        }
+        resetImageState();
         final JpegUtils jpegUtils = new JpegUtils();
         jpegUtils.traverseJFIF(byteSource, this);
         if (imageReadException != null) {
@@ -553,4 +1124,288 @@ public class JpegDecoder extends BinaryFileParser implements JpegUtils.Visitor {
         }
         return image;
     }
+
+    /**
+     * Forgets the previous image, so the decoder can be reused. The tables
+     * are kept, as an abbreviated image may rely on them.
+     */
+    private void resetImageState() {
+        sofnSegment = null;
+        frameComponents = null;
+        sosSegment = null;
+        image = null;
+        imageReadException = null;
+        ioException = null;
+        restartInterval = 0;
+        progressive = false;
+        coefficients = null;
+        blocksPerLine = null;
+        eobrun = 0;
+    }
+
+    /**
+     * Decodes the quantized DCT coefficients of the image without inverse
+     * transforming them, which is what lossless transformations of the
+     * image work on. Sequential and progressive images give the same
+     * coefficients; the read parameters are ignored.
+     *
+     * @param byteSource the JPEG data
+     * @return the coefficients
+     * @throws IOException if the data cannot be read
+     * @throws ImageReadException if the data is not a supported JPEG image
+     */
+    public JpegCoefficients decodeCoefficients(final ByteSource byteSource) throws IOException,
+            ImageReadException {
+        return decodeCoefficients(byteSource, null);
+    }
+
+    /**
+     * Decodes the quantized DCT coefficients of the image, as far as
+     * needed for a region of it. The coefficients of the MCUs below the
+     * region may be left zero: sequential scans are not decoded past the
+     * region, progressive ones are decoded whole.
+     *
+     * @param byteSource the JPEG data
+     * @param region the region, or null for the whole image
+     * @return the coefficients
+     * @throws IOException if the data cannot be read
+     * @throws ImageReadException if the data is not a supported JPEG image
+     */
+    public JpegCoefficients decodeCoefficients(final ByteSource byteSource, final Rectangle region)
+            throws IOException, ImageReadException {
+        scaleDenominator = 1;
+        blockSize = 8;
+        resetImageState();
+        coefficientsOnly = true;
+        coefficientsBottom = region == null ? Integer.MAX_VALUE : region.y + region.height;
+        try {
+            new JpegUtils().traverseJFIF(byteSource, this);
+        } finally {
+            coefficientsOnly = false;
+        }
+        if (imageReadException != null) {
+            throw imageReadException;
+        }
+        if (ioException != null) {
+            throw ioException;
+        }
+        if (coefficients == null) {
+            throw new ImageReadException("No image data found");
+        }
+        return new JpegCoefficients(sofnSegment, frameComponents, quantizationTables.clone(),
+                coefficients, blocksPerLine);
+    }
+
+    /**
+     * Decodes and inverse transforms the blocks of MCUs. Each thread decoding
+     * a scan needs its own instance.
+     */
+    private final class MCUDecoder {
+        final int[] zz = new int[64];
+        private final int[] blockInt = new int[64];
+        private final float[] block = new float[64];
+
+        void readMCU(final JpegInputStream is, final int[] preds, final Block[] mcu)
+                throws ImageReadException {
+            for (int i = 0; i < sosSegment.numberOfComponents; i++) {
+                final SosSegment.Component scanComponent = sosSegment.getComponents(i);
+                final SofnSegment.Component frameComponent =
+                        frameComponents[getFrameComponentIndex(scanComponent)];
+                final Block fullBlock = mcu[i];
+                final DhtSegment.HuffmanTable dcTable = huffmanDCTables[scanComponent.dcCodingTableSelector];
+                final DhtSegment.HuffmanTable acTable = huffmanACTables[scanComponent.acCodingTableSelector];
+                for (int y = 0; y < frameComponent.verticalSamplingFactor; y++) {
+                    for (int x = 0; x < frameComponent.horizontalSamplingFactor; x++) {
+                        decodeBlock(is, dcTable, acTable, preds, i);
+                        writeBlock(frameComponent, fullBlock, x, y);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Decodes an MCU that is not written, only to keep the predictions.
+         */
+        void skipMCU(final JpegInputStream is, final int[] preds) throws ImageReadException {
+            for (int i = 0; i < sosSegment.numberOfComponents; i++) {
+                final SosSegment.Component scanComponent = sosSegment.getComponents(i);
+                final SofnSegment.Component frameComponent =
+                        frameComponents[getFrameComponentIndex(scanComponent)];
+                final DhtSegment.HuffmanTable dcTable = huffmanDCTables[scanComponent.dcCodingTableSelector];
+                final DhtSegment.HuffmanTable acTable = huffmanACTables[scanComponent.acCodingTableSelector];
+                final int blocks = frameComponent.horizontalSamplingFactor * frameComponent.verticalSamplingFactor;
+                for (int b = 0; b < blocks; b++) {
+                    decodeBlock(is, dcTable, acTable, preds, i);
+                }
+            }
+        }
+
+        /**
+         * Decodes the coefficients of a sequential block into {@code zz}.
+         */
+        void decodeBlock(final JpegInputStream is, final DhtSegment.HuffmanTable dcTable,
+                final DhtSegment.HuffmanTable acTable, final int[] preds, final int i)
+                throws ImageReadException {
+            Arrays.fill(zz, 0);
+            // page 104 of T.81
+            zz[0] = preds[i] + decodeDCDifference(is, dcTable);
+            preds[i] = zz[0];
+
+            // "Decode_AC_coefficients", figure F.13, page 106 of T.81
+            int k = 1;
+            while (true) {
+                final int ac = acTable.getCoefficientLookup(is.peekBits(HuffmanTable.LOOKAHEAD_BITS));
+                if (ac != 0) {
+                    // run, size and value resolved in one step
+                    is.skipBits(ac & 0xff);
+                    k += (ac >> 8) & 0xff;
+                    zz[k] = ac >> 16;
+                    if (k == 63) {
+                        break;
+                    }
+                    k++;
+                    continue;
+                }
+                final int rs = decode(is, acTable);
+                final int ssss = rs & 0xf;
+                final int rrrr = rs >> 4;
+                final int r = rrrr;
+
+                if (ssss == 0) {
+                    if (r == 15) {
+                        k += 16;
+                    } else {
+                        break;
+                    }
+                } else {
+                    k += r;
+
+                    // "Decode_ZZ(k)", figure F.14, page 107 of T.81
+                    zz[k] = receive(ssss, is);
+                    zz[k] = extend(zz[k], ssss);
+
+                    if (k == 63) {
+                        break;
+                    }
+                    k++;
+                }
+            }
+        }
+
+        /**
+         * Dequantizes and inverse transforms the coefficients in {@code zz} into
+         * the block at the given position of a component's MCU.
+         */
+        void writeBlock(final SofnSegment.Component frameComponent, final Block fullBlock,
+                final int x, final int y) {
+            final int shift = (1 << (sofnSegment.precision - 1));
+            final int max = (1 << sofnSegment.precision) - 1;
+
+            ZigZag.zigZagToBlock(zz, blockInt);
+            if (blockSize != 8) {
+                // only the lowest frequencies contribute to the smaller block
+                final int stride = blockSize * frameComponent.horizontalSamplingFactor;
+                Dct.inverseDCTScaled(blockInt, dequantizationTables[frameComponent.quantTabDestSelector],
+                        blockSize, block, fullBlock.samples, blockSize * (y * stride + x), stride, shift, max);
+                return;
+            }
+
+            int dstRowOffset = 8 * y * 8
+                    * frameComponent.horizontalSamplingFactor + 8 * x;
+            if (integerIdct && sofnSegment.precision == 8) {
+                // dequantization, level shift and clamping are done by the transform
+                Dct.inverseDCT8x8(blockInt, dequantizationTables[frameComponent.quantTabDestSelector],
+                        fullBlock.samples, dstRowOffset,
+                        8 * frameComponent.horizontalSamplingFactor, shift, max);
+                return;
+            }
+
+            final float[] scaledQuantizationTable = scaledQuantizationTables[frameComponent.quantTabDestSelector];
+            for (int j = 0; j < 64; j++) {
+                block[j] = blockInt[j] * scaledQuantizationTable[j];
+            }
+            Dct.inverseDCT8x8(block);
+
+            int srcNext = 0;
+            for (int yy = 0; yy < 8; yy++) {
+                for (int xx = 0; xx < 8; xx++) {
+                    float sample = block[srcNext++];
+                    sample += shift;
+                    int result;
+                    if (sample < 0) {
+                        result = 0;
+                    } else if (sample > max) {
+                        result = max;
+                    } else {
+                        result = fastRound(sample);
+                    }
+                    fullBlock.samples[dstRowOffset + xx] = result;
+                }
+                dstRowOffset += 8 * frameComponent.horizontalSamplingFactor;
+            }
+        }
+    }
+
+    /**
+     * Decodes a run of restart intervals of a sequential scan.
+     */
+    private final class IntervalTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final JpegInputStream[] bitInputStreams;
+        private final int firstInterval;
+        private final int lastInterval;
+        private final int hSize;
+        private final int vSize;
+        private final int xMCUs;
+        private final int mcuCount;
+        private final int[] pixels;
+        private ImageReadException exception;
+
+        IntervalTask(final JpegInputStream[] bitInputStreams, final int firstInterval,
+                final int lastInterval, final int hSize, final int vSize, final int xMCUs,
+                final int mcuCount, final int[] pixels) {
+            this.bitInputStreams = bitInputStreams;
+            this.firstInterval = firstInterval;
+            this.lastInterval = lastInterval;
+            this.hSize = hSize;
+            this.vSize = vSize;
+            this.xMCUs = xMCUs;
+            this.mcuCount = mcuCount;
+            this.pixels = pixels;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                final MCUDecoder decoder = new MCUDecoder();
+                final Block[] mcu = allocateMCUMemory();
+                final Block[] scaledMCU = allocateScaledMCUMemory(hSize, vSize);
+                final int[] preds = new int[sofnSegment.numberOfComponents];
+                for (int interval = firstInterval; interval < lastInterval; interval++) {
+                    final int start = interval * restartInterval;
+                    int end = Math.min(mcuCount, start + restartInterval);
+                    // intervals start with fresh predictions, so the MCUs
+                    // after the last one inside the region are not needed
+                    while (end > start && !intersectsRegion(((end - 1) % xMCUs) * hSize,
+                            ((end - 1) / xMCUs) * vSize, hSize, vSize)) {
+                        end--;
+                    }
+                    final JpegInputStream bitInputStream = bitInputStreams[interval];
+                    Arrays.fill(preds, 0);
+                    for (int m = start; m < end; m++) {
+                        final int x1 = (m % xMCUs) * hSize;
+                        final int y1 = (m / xMCUs) * vSize;
+                        if (!intersectsRegion(x1, y1, hSize, vSize)) {
+                            decoder.skipMCU(bitInputStream, preds);
+                            continue;
+                        }
+                        decoder.readMCU(bitInputStream, preds, mcu);
+                        writeMCU(mcu, scaledMCU, hSize, vSize, x1, y1, pixels);
+                    }
+                }
+            } catch (final ImageReadException imageReadException) {
+                exception = imageReadException;
+            }
+        }
+    }
 }
@@ -15,22 +15,35 @@
 
 package org.apache.commons.imaging.formats.jpeg.decoder;
 
-import java.util.Arrays;
-
 import org.apache.commons.imaging.ImageReadException;
 import org.apache.commons.imaging.formats.jpeg.JpegConstants;
 
 class JpegInputStream {
     // Figure F.18, F.2.2.5, page 111 of ITU-T T.81
-    private final int[] interval;
+    private final byte[] data;
     // next position in the array to read
     private int nextPos;
-    private int cnt;
-    private int b;
+    // end of the interval, exclusive
+    private final int endPos;
+    // unread bits, left-aligned
+    private long bits;
+    private int bitCount;
+    // set once no more bytes can be moved into the bit buffer
+    private boolean end;
+    // why the end was reached, null if all the data was read
+    private String endMessage;
 
-    JpegInputStream(final int[] interval) {
-        this.interval = Arrays.copyOf(interval, interval.length);
-        this.nextPos = 0;
+    /**
+     * Reads the entropy-coded data of one interval in place.
+     *
+     * @param data the array holding the interval
+     * @param start the offset of the first byte of the interval
+     * @param end the offset after the last byte of the interval
+     */
+    JpegInputStream(final byte[] data, final int start, final int end) {
+        this.data = data;
+        this.nextPos = start;
+        this.endPos = end;
     }
 
     /**
@@ -38,48 +51,117 @@ class JpegInputStream {
      * @return
      */
     public boolean hasNext() {
-        return nextPos < this.interval.length;
+        return nextPos < endPos || bitCount >= 8;
     }
 
     public int nextBit() throws ImageReadException {
-        if (cnt == 0) {
-            b = this.read();
-            if (b < 0) {
-                throw new ImageReadException("Premature End of File");
+        if (bitCount == 0) {
+            fill();
+            if (bitCount == 0) {
+                throw endOfData();
+            }
+        }
+        final int bit = (int) (bits >>> 63);
+        bits <<= 1;
+        bitCount--;
+        return bit;
+    }
+
+    /**
+     * Returns the next bits without consuming them. Bits past the end of
+     * the entropy-coded data read as 0; consuming them with
+     * {@link #skipBits(int)} fails.
+     *
+     * @param count the number of bits, between 1 and 16
+     * @return the bits, most significant first
+     */
+    int peekBits(final int count) {
+        if (bitCount < count) {
+            fill();
+        }
+        return (int) (bits >>> (64 - count));
+    }
+
+    /**
+     * Consumes bits previously returned by {@link #peekBits(int)}.
+     *
+     * @param count the number of bits, at most 16
+     * @throws ImageReadException if fewer bits are left
+     */
+    void skipBits(final int count) throws ImageReadException {
+        if (count > bitCount) {
+            fill();
+            if (count > bitCount) {
+                throw endOfData();
             }
-            cnt = 8;
+        }
+        bits <<= count;
+        bitCount -= count;
+    }
+
+    /**
+     * Returns and consumes the next bits.
+     *
+     * @param count the number of bits, between 1 and 16
+     * @return the bits, most significant first
+     * @throws ImageReadException if fewer bits are left
+     */
+    int nextBits(final int count) throws ImageReadException {
+        final int result = peekBits(count);
+        skipBits(count);
+        return result;
+    }
+
+    /**
+     * Tops up the bit buffer with as many whole bytes as fit, removing the
+     * stuffed zero after each 0xFF byte.
+     */
+    private void fill() {
+        if (end) {
+            return;
+        }
+        final byte[] data = this.data;
+        int pos = nextPos;
+        long buffer = bits;
+        int count = bitCount;
+        while (count <= 56) {
+            if (pos >= endPos) {
+                end = true;
+                break;
+            }
+            final int b = 0xff & data[pos];
             if (b == 0xff) {
-                final int b2 = this.read();
-                if (b2 < 0) {
-                    throw new ImageReadException("Premature End of File");
+                if (pos + 1 >= endPos) {
+                    end = true;
+                    break;
                 }
+                final int b2 = 0xff & data[pos + 1];
                 if (b2 != 0) {
+                    end = true;
                     if (b2 == (0xff & JpegConstants.DNL_MARKER)) {
-                        throw new ImageReadException("DNL not yet supported");
+                        endMessage = "DNL not yet supported";
+                    } else {
+                        endMessage = "Invalid marker found "
+                            + "in entropy data: 0xFF " + Integer.toHexString(b2);
                     }
-                    throw new ImageReadException("Invalid marker found "
-                        + "in entropy data: 0xFF " + Integer.toHexString(b2));
+                    break;
                 }
+                pos += 2;
+            } else {
+                pos++;
             }
+            buffer |= (long) b << (56 - count);
+            count += 8;
         }
-        final int bit = (b >> 7) & 0x1;
-        cnt--;
-        b <<= 1;
-        return bit;
+        nextPos = pos;
+        bits = buffer;
+        bitCount = count;
     }
 
-    /**
-     * Returns the value from current field (as {@code InputStream.read()} would do)
-     * and set the position of the pointer to the next field to read.
-     * @return
-     * @throws IllegalStateException if the stream hasn't any other value.
-     */
-    int read() {
-        if (!this.hasNext()) {
+    private ImageReadException endOfData() {
+        if (endMessage == null) {
             throw new IllegalStateException("This stream hasn't any other value, all values were already read.");
         }
-        final int value = this.interval[nextPos];
-        this.nextPos++;
-        return value;
+        return new ImageReadException(endMessage);
     }
 }
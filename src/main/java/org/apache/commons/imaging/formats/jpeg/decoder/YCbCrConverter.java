@@ -16,41 +16,24 @@
 package org.apache.commons.imaging.formats.jpeg.decoder;
 
 final class YCbCrConverter {
-    private static final int[] REDS = new int[256 * 256];
-    private static final int[] BLUES = new int[256 * 256];
-    private static final int[] GREENS1 = new int[256 * 256];
-    private static final int[] GREENS2 = new int[256 * 512];
+    /*
+     * A pixel is converted by adding the contribution of its chroma to Y
+     * and clamping the sum with a lookup in a limit table, which also
+     * shifts the component into place. The contributions include the
+     * offset of the limit tables.
+     */
+    private static final int LIMIT_OFFSET = 256;
+    private static final int[] CR_REDS = new int[256];
+    private static final int[] CB_BLUES = new int[256];
+    private static final int[] GREENS = new int[256 * 256];
+    private static final int[] RED_LIMITS = new int[3 * 256];
+    private static final int[] GREEN_LIMITS = new int[3 * 256];
+    private static final int[] BLUE_LIMITS = new int[3 * 256];
 
     static {
-        /*
-         * Why use (Cr << 8) | Y and not (Y << 8) | Cr as the index? Y changes
-         * often, while Cb and Cr is usually subsampled less often and repeats
-         * itself between adjacent pixels, so using it as the high order byte
-         * gives higher locality of reference.
-         */
-        for (int Y = 0; Y < 256; Y++) {
-            for (int Cr = 0; Cr < 256; Cr++) {
-                int r = Y + fastRound(1.402f * (Cr - 128));
-                if (r < 0) {
-                    r = 0;
-                }
-                if (r > 255) {
-                    r = 255;
-                }
-                REDS[(Cr << 8) | Y] = r << 16;
-            }
-        }
-        for (int Y = 0; Y < 256; Y++) {
-            for (int Cb = 0; Cb < 256; Cb++) {
-                int b = Y + fastRound(1.772f * (Cb - 128));
-                if (b < 0) {
-                    b = 0;
-                }
-                if (b > 255) {
-                    b = 255;
-                }
-                BLUES[(Cb << 8) | Y] = b;
-            }
+        for (int C = 0; C < 256; C++) {
+            CR_REDS[C] = LIMIT_OFFSET + fastRound(1.402f * (C - 128));
+            CB_BLUES[C] = LIMIT_OFFSET + fastRound(1.772f * (C - 128));
         }
         // green is the hardest
         // Math.round((float) (Y - 0.34414*(Cb-128) - 0.71414*(Cr-128)))
@@ -66,36 +49,21 @@ final class YCbCrConverter {
         // -128 -128 -135.4
         // 127 -128 -47.7
         // -128 127 46.6
-        // Thus with -135 being the minimum and 134 the maximum,
-        // there is a range of 269 values,
-        // and 135 needs to be added to make it zero-based.
-
-        // As for Y - f(Cb, Cr)
-        // the range becomes:
-        // Y f(Cb, Cr)
-        // 255 -135
-        // 255 134
-        // 0 -135
-        // 0 134
-        // thus the range is [-134,390] and has 524 values
-        // but is clamped to [0, 255]
+        // Thus the rounded value is within [-135, 134], and Y - f(Cb, Cr)
+        // within [-134, 390] before it is clamped to [0, 255].
+        // The rounding of the sum keeps f from being split into a Cb and a
+        // Cr term.
         for (int Cb = 0; Cb < 256; Cb++) {
             for (int Cr = 0; Cr < 256; Cr++) {
-                final int value = fastRound(0.34414f * (Cb - 128) + 0.71414f
+                GREENS[(Cb << 8) | Cr] = LIMIT_OFFSET - fastRound(0.34414f * (Cb - 128) + 0.71414f
                         * (Cr - 128));
-                GREENS1[(Cb << 8) | Cr] = value + 135;
             }
         }
-        for (int Y = 0; Y < 256; Y++) {
-            for (int value = 0; value < 270; value++) {
-                int green = Y - (value - 135);
-                if (green < 0) {
-                    green = 0;
-                } else if (green > 255) {
-                    green = 255;
-                }
-                GREENS2[(value << 8) | Y] = green << 8;
-            }
+        for (int i = 0; i < BLUE_LIMITS.length; i++) {
+            final int value = Math.min(255, Math.max(0, i - LIMIT_OFFSET));
+            RED_LIMITS[i] = value << 16;
+            GREEN_LIMITS[i] = value << 8;
+            BLUE_LIMITS[i] = value;
         }
     }
 
@@ -108,10 +76,74 @@ final class YCbCrConverter {
     }
 
     public static int convertYCbCrToRGB(final int Y, final int Cb, final int Cr) {
-        final int r = REDS[(Cr << 8) | Y];
-        final int g1 = GREENS1[(Cb << 8) | Cr];
-        final int g = GREENS2[(g1 << 8) | Y];
-        final int b = BLUES[(Cb << 8) | Y];
-        return r | g | b;
+        return RED_LIMITS[Y + CR_REDS[Cr]] | GREEN_LIMITS[Y + GREENS[(Cb << 8) | Cr]]
+                | BLUE_LIMITS[Y + CB_BLUES[Cb]];
+    }
+
+    /**
+     * Converts a row of samples whose chroma has the full horizontal
+     * resolution.
+     *
+     * @param ys the luma samples
+     * @param yIndex the index of the first luma sample
+     * @param cbs the Cb samples
+     * @param crs the Cr samples
+     * @param cIndex the index of the first Cb and Cr samples
+     * @param count the number of pixels
+     * @param rgb receives the pixels
+     * @param rgbIndex the index of the first pixel
+     */
+    static void convertRow(final int[] ys, final int yIndex, final int[] cbs, final int[] crs,
+            final int cIndex, final int count, final int[] rgb, final int rgbIndex) {
+        for (int i = 0; i < count; i++) {
+            final int Cb = cbs[cIndex + i];
+            final int Cr = crs[cIndex + i];
+            final int y = ys[yIndex + i];
+            rgb[rgbIndex + i] = RED_LIMITS[y + CR_REDS[Cr]] | GREEN_LIMITS[y + GREENS[(Cb << 8) | Cr]]
+                    | BLUE_LIMITS[y + CB_BLUES[Cb]];
+        }
+    }
+
+    /**
+     * Converts a row of samples whose chroma has half the horizontal
+     * resolution, so each chroma sample covers the luma samples of two
+     * columns.
+     *
+     * @param ys the luma samples
+     * @param yIndex the index of the luma sample of column {@code x}
+     * @param cbs the Cb samples
+     * @param crs the Cr samples
+     * @param cRowIndex the index of the Cb and Cr samples of column 0
+     * @param x the column of the first pixel
+     * @param count the number of pixels
+     * @param rgb receives the pixels
+     * @param rgbIndex the index of the first pixel
+     */
+    static void convertRowHalfChroma(final int[] ys, final int yIndex, final int[] cbs,
+            final int[] crs, final int cRowIndex, final int x, final int count, final int[] rgb,
+            final int rgbIndex) {
+        int i = 0;
+        if ((x & 1) != 0 && count > 0) {
+            // starts with the second column of a pair
+            rgb[rgbIndex] = convertYCbCrToRGB(ys[yIndex], cbs[cRowIndex + (x >> 1)],
+                    crs[cRowIndex + (x >> 1)]);
+            i = 1;
+        }
+        // the contributions of each chroma sample are looked up once per pair
+        int c = cRowIndex + ((x + i) >> 1);
+        for (; i + 1 < count; i += 2, c++) {
+            final int Cb = cbs[c];
+            final int Cr = crs[c];
+            final int red = CR_REDS[Cr];
+            final int green = GREENS[(Cb << 8) | Cr];
+            final int blue = CB_BLUES[Cb];
+            final int y0 = ys[yIndex + i];
+            final int y1 = ys[yIndex + i + 1];
+            rgb[rgbIndex + i] = RED_LIMITS[y0 + red] | GREEN_LIMITS[y0 + green] | BLUE_LIMITS[y0 + blue];
+            rgb[rgbIndex + i + 1] = RED_LIMITS[y1 + red] | GREEN_LIMITS[y1 + green] | BLUE_LIMITS[y1 + blue];
+        }
+        if (i < count) {
+            rgb[rgbIndex + i] = convertYCbCrToRGB(ys[yIndex + i], cbs[c], crs[c]);
+        }
     }
 }
@@ -0,0 +1,257 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.imaging.formats.jpeg.encoder;
+
+/**
+ * A Huffman table as written to a DHT segment, together with the code and
+ * code length of each symbol (EHUFCO and EHUFSI of T.81).
+ */
+final class HuffmanEncodingTable {
+    // typical tables of Annex K.3 of T.81
+    static final HuffmanEncodingTable LUMINANCE_DC = new HuffmanEncodingTable(
+            new int[] { 0, 1, 5, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0 },
+            new int[] { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11 });
+    static final HuffmanEncodingTable CHROMINANCE_DC = new HuffmanEncodingTable(
+            new int[] { 0, 3, 1, 1, 1, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0 },
+            new int[] { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11 });
+    static final HuffmanEncodingTable LUMINANCE_AC = new HuffmanEncodingTable(
+            new int[] { 0, 2, 1, 3, 3, 2, 4, 3, 5, 5, 4, 4, 0, 0, 1, 0x7d },
+            new int[] {
+                0x01, 0x02, 0x03, 0x00, 0x04, 0x11, 0x05, 0x12,
+                0x21, 0x31, 0x41, 0x06, 0x13, 0x51, 0x61, 0x07,
+                0x22, 0x71, 0x14, 0x32, 0x81, 0x91, 0xa1, 0x08,
+                0x23, 0x42, 0xb1, 0xc1, 0x15, 0x52, 0xd1, 0xf0,
+                0x24, 0x33, 0x62, 0x72, 0x82, 0x09, 0x0a, 0x16,
+                0x17, 0x18, 0x19, 0x1a, 0x25, 0x26, 0x27, 0x28,
+                0x29, 0x2a, 0x34, 0x35, 0x36, 0x37, 0x38, 0x39,
+                0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48, 0x49,
+                0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59,
+                0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69,
+                0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79,
+                0x7a, 0x83, 0x84, 0x85, 0x86, 0x87, 0x88, 0x89,
+                0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98,
+                0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5, 0xa6, 0xa7,
+                0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6,
+                0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3, 0xc4, 0xc5,
+                0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4,
+                0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda, 0xe1, 0xe2,
+                0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea,
+                0xf1, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8,
+                0xf9, 0xfa });
+    static final HuffmanEncodingTable CHROMINANCE_AC = new HuffmanEncodingTable(
+            new int[] { 0, 2, 1, 2, 4, 4, 3, 4, 7, 5, 4, 4, 0, 1, 2, 0x77 },
+            new int[] {
+                0x00, 0x01, 0x02, 0x03, 0x11, 0x04, 0x05, 0x21,
+                0x31, 0x06, 0x12, 0x41, 0x51, 0x07, 0x61, 0x71,
+                0x13, 0x22, 0x32, 0x81, 0x08, 0x14, 0x42, 0x91,
+                0xa1, 0xb1, 0xc1, 0x09, 0x23, 0x33, 0x52, 0xf0,
+                0x15, 0x62, 0x72, 0xd1, 0x0a, 0x16, 0x24, 0x34,
+                0xe1, 0x25, 0xf1, 0x17, 0x18, 0x19, 0x1a, 0x26,
+                0x27, 0x28, 0x29, 0x2a, 0x35, 0x36, 0x37, 0x38,
+                0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48,
+                0x49, 0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58,
+                0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68,
+                0x69, 0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78,
+                0x79, 0x7a, 0x82, 0x83, 0x84, 0x85, 0x86, 0x87,
+                0x88, 0x89, 0x8a, 0x92, 0x93, 0x94, 0x95, 0x96,
+                0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5,
+                0xa6, 0xa7, 0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4,
+                0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3,
+                0xc4, 0xc5, 0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2,
+                0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda,
+                0xe2, 0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9,
+                0xea, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8,
+                0xf9, 0xfa });
+
+    private static final int MAX_CODE_LENGTH = 16;
+
+    // BITS: the number of codes of each length from 1 to 16
+    final int[] bits;
+    // HUFFVAL: the symbols in order of increasing code length
+    final int[] values;
+    final int[] codes = new int[256];
+    final int[] sizes = new int[256];
+
+    HuffmanEncodingTable(final int[] bits, final int[] values) {
+        this.bits = bits;
+        this.values = values;
+
+        // figures C.1, C.2 and C.3 of T.81
+        int k = 0;
+        int code = 0;
+        for (int length = 1; length <= MAX_CODE_LENGTH; length++) {
+            for (int i = 0; i < bits[length - 1]; i++) {
+                codes[values[k]] = code;
+                sizes[values[k]] = length;
+                k++;
+                code++;
+            }
+            code <<= 1;
+        }
+    }
+
+    /**
+     * Builds the optimal table for the given symbol frequencies, following
+     * Annex K.2 of T.81: a Huffman code is built, the code lengths are
+     * limited to 16 bits, and the all-ones code word is kept unused.
+     *
+     * @param frequencies the number of occurrences of each of the 256
+     * symbols.
+     * @return the table.
+     */
+    static HuffmanEncodingTable fromFrequencies(final long[] frequencies) {
+        final long[] freq = new long[257];
+        System.arraycopy(frequencies, 0, freq, 0, 256);
+        boolean used = false;
+        for (int i = 0; i < 256; i++) {
+            used |= freq[i] != 0;
+        }
+        if (!used) {
+            // an empty table can't be written, give symbol 0 a code
+            freq[0] = 1;
+        }
+        // reserves the code word of all ones (figure K.1)
+        freq[256] = 1;
+
+        final int[] codeSize = new int[257];
+        final int[] others = new int[257];
+        for (int i = 0; i < others.length; i++) {
+            others[i] = -1;
+        }
+
+        while (true) {
+            // the least frequent symbol, the larger one on ties, and the
+            // next least frequent one
+            int c1 = -1;
+            long v = Long.MAX_VALUE;
+            for (int i = 0; i < freq.length; i++) {
+                if (freq[i] != 0 && freq[i] <= v) {
+                    v = freq[i];
+                    c1 = i;
+                }
+            }
+            int c2 = -1;
+            v = Long.MAX_VALUE;
+            for (int i = 0; i < freq.length; i++) {
+                if (freq[i] != 0 && freq[i] <= v && i != c1) {
+                    v = freq[i];
+                    c2 = i;
+                }
+            }
+            if (c2 < 0) {
+                break;
+            }
+
+            freq[c1] += freq[c2];
+            freq[c2] = 0;
+            codeSize[c1]++;
+            while (others[c1] >= 0) {
+                c1 = others[c1];
+                codeSize[c1]++;
+            }
+            others[c1] = c2;
+            codeSize[c2]++;
+            while (others[c2] >= 0) {
+                c2 = others[c2];
+                codeSize[c2]++;
+            }
+        }
+
+        // figure K.2
+        final int[] count = new int[258];
+        for (int i = 0; i < codeSize.length; i++) {
+            if (codeSize[i] > 0) {
+                count[codeSize[i]]++;
+            }
+        }
+        // figure K.3: moves pairs of codes that are too long up, taking a
+        // prefix from a shorter code
+        for (int i = count.length - 1; i > MAX_CODE_LENGTH; i--) {
+            while (count[i] > 0) {
+                int j = i - 2;
+                while (count[j] == 0) {
+                    j--;
+                }
+                count[i] -= 2;
+                count[i - 1]++;
+                count[j + 1] += 2;
+                count[j]--;
+            }
+        }
+        // removes the reserved code word, which is one of the longest
+        int i = MAX_CODE_LENGTH;
+        while (count[i] == 0) {
+            i--;
+        }
+        count[i]--;
+
+        final int[] bits = new int[MAX_CODE_LENGTH];
+        int total = 0;
+        for (int length = 1; length <= MAX_CODE_LENGTH; length++) {
+            bits[length - 1] = count[length];
+            total += count[length];
+        }
+
+        // figure K.4
+        final int[] values = new int[total];
+        int k = 0;
+        for (int length = 1; length < codeSize.length && k < total; length++) {
+            for (int symbol = 0; symbol < 256; symbol++) {
+                if (codeSize[symbol] == length) {
+                    values[k++] = symbol;
+                }
+            }
+        }
+        return new HuffmanEncodingTable(bits, values);
+    }
+
+    /**
+     * Adds the symbols that encoding the block would produce to the given
+     * statistics.
+     */
+    static void countBlock(final short[] coefficients, final int offset,
+            final int dcDifference, final long[] dcFrequencies,
+            final long[] acFrequencies) {
+        dcFrequencies[bitLength(dcDifference)]++;
+
+        int run = 0;
+        for (int k = 1; k < 64; k++) {
+            final int coefficient = coefficients[offset + k];
+            if (coefficient == 0) {
+                run++;
+            } else {
+                while (run > 15) {
+                    acFrequencies[0xf0]++;
+                    run -= 16;
+                }
+                acFrequencies[(run << 4) | bitLength(coefficient)]++;
+                run = 0;
+            }
+        }
+        if (run > 0) {
+            acFrequencies[0x00]++;
+        }
+    }
+
+    /**
+     * Returns the magnitude category, SSSS in T.81, of a coefficient or DC
+     * difference.
+     */
+    static int bitLength(final int value) {
+        return 32 - Integer.numberOfLeadingZeros(value < 0 ? -value : value);
+    }
+}
@@ -0,0 +1,591 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.imaging.formats.jpeg.encoder;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.imaging.ImageWriteException;
+import org.apache.commons.imaging.ImagingConstants;
+import org.apache.commons.imaging.PixelDensity;
+import org.apache.commons.imaging.formats.jpeg.JpegConstants;
+import org.apache.commons.imaging.internal.Dct;
+import org.apache.commons.imaging.internal.ZigZag;
+
+/**
+ * Writes baseline sequential JFIF images: 8-bit samples, Huffman coding and
+ * a single interleaved scan. Grayscale images are written with one
+ * component, everything else is converted to YCbCr.
+ * <p>
+ * Images backed by a {@code DataBufferInt} holding RGB or ARGB pixels, as
+ * {@code BufferedImage.TYPE_INT_RGB} and {@code TYPE_INT_ARGB} are, are
+ * read straight from the data array; other images are read a row at a time
+ * with {@link BufferedImage#getRGB(int, int, int, int, int[], int, int)}.
+ * Transparency is dropped.
+ */
+public class JpegEncoder {
+    // Annex K.1 of T.81, in natural order
+    private static final int[] LUMINANCE_QUANTIZATION = {
+        16,  11,  10,  16,  24,  40,  51,  61,
+        12,  12,  14,  19,  26,  58,  60,  55,
+        14,  13,  16,  24,  40,  57,  69,  56,
+        14,  17,  22,  29,  51,  87,  80,  62,
+        18,  22,  37,  56,  68, 109, 103,  77,
+        24,  35,  55,  64,  81, 104, 113,  92,
+        49,  64,  78,  87, 103, 121, 120, 101,
+        72,  92,  95,  98, 112, 100, 103,  99
+    };
+    private static final int[] CHROMINANCE_QUANTIZATION = {
+        17,  18,  24,  47,  99,  99,  99,  99,
+        18,  21,  26,  66,  99,  99,  99,  99,
+        24,  26,  56,  99,  99,  99,  99,  99,
+        47,  66,  99,  99,  99,  99,  99,  99,
+        99,  99,  99,  99,  99,  99,  99,  99,
+        99,  99,  99,  99,  99,  99,  99,  99,
+        99,  99,  99,  99,  99,  99,  99,  99,
+        99,  99,  99,  99,  99,  99,  99,  99
+    };
+
+    private int quality = 75;
+    private int chromaSubsampling = JpegConstants.JPEG_CHROMA_SUBSAMPLING_420;
+    private boolean optimizeHuffman;
+    private PixelDensity pixelDensity;
+
+    public JpegEncoder(Map<String, Object> params) throws ImageWriteException {
+        // make copy of params; we'll clear keys as we consume them.
+        params = (params == null) ? new HashMap<>() : new HashMap<>(params);
+
+        // clear format key.
+        if (params.containsKey(ImagingConstants.PARAM_KEY_FORMAT)) {
+            params.remove(ImagingConstants.PARAM_KEY_FORMAT);
+        }
+
+        if (params.containsKey(JpegConstants.PARAM_KEY_JPEG_QUALITY)) {
+            final Object value = params.remove(JpegConstants.PARAM_KEY_JPEG_QUALITY);
+            if (value != null) {
+                if (!(value instanceof Number)
+                        || ((Number) value).intValue() < 1
+                        || ((Number) value).intValue() > 100) {
+                    throw new ImageWriteException(
+                            "Invalid quality parameter: " + value);
+                }
+                quality = ((Number) value).intValue();
+            }
+        }
+
+        if (params.containsKey(JpegConstants.PARAM_KEY_JPEG_CHROMA_SUBSAMPLING)) {
+            final Object value = params.remove(JpegConstants.PARAM_KEY_JPEG_CHROMA_SUBSAMPLING);
+            if (value != null) {
+                final int subsampling = value instanceof Number ? ((Number) value).intValue() : -1;
+                if (subsampling != JpegConstants.JPEG_CHROMA_SUBSAMPLING_444
+                        && subsampling != JpegConstants.JPEG_CHROMA_SUBSAMPLING_422
+                        && subsampling != JpegConstants.JPEG_CHROMA_SUBSAMPLING_420) {
+                    throw new ImageWriteException(
+                            "Invalid chroma subsampling parameter: " + value);
+                }
+                chromaSubsampling = subsampling;
+            }
+        }
+
+        if (params.containsKey(JpegConstants.PARAM_KEY_JPEG_OPTIMIZE_HUFFMAN)) {
+            final Object value = params.remove(JpegConstants.PARAM_KEY_JPEG_OPTIMIZE_HUFFMAN);
+            if (value != null) {
+                if (!(value instanceof Boolean)) {
+                    throw new ImageWriteException(
+                            "Invalid optimize Huffman parameter: " + value);
+                }
+                optimizeHuffman = (Boolean) value;
+            }
+        }
+
+        if (params.containsKey(ImagingConstants.PARAM_KEY_PIXEL_DENSITY)) {
+            final Object value = params.remove(ImagingConstants.PARAM_KEY_PIXEL_DENSITY);
+            if (value != null) {
+                if (!(value instanceof PixelDensity)) {
+                    throw new ImageWriteException(
+                            "Invalid pixel density parameter");
+                }
+                pixelDensity = (PixelDensity) value;
+            }
+        }
+
+        if (!params.isEmpty()) {
+            final Object firstKey = params.keySet().iterator().next();
+            throw new ImageWriteException("Unknown parameter: " + firstKey);
+        }
+    }
+
+    public void encode(final BufferedImage src, final OutputStream os)
+            throws ImageWriteException, IOException {
+        final int width = src.getWidth();
+        final int height = src.getHeight();
+        if (width > 0xffff || height > 0xffff) {
+            throw new ImageWriteException("Image too large for JPEG: "
+                    + width + "x" + height);
+        }
+
+        final boolean gray = src.getType() == BufferedImage.TYPE_BYTE_GRAY;
+        final int componentCount = gray ? 1 : 3;
+        final int hMax = gray || chromaSubsampling == JpegConstants.JPEG_CHROMA_SUBSAMPLING_444 ? 1 : 2;
+        final int vMax = gray || chromaSubsampling != JpegConstants.JPEG_CHROMA_SUBSAMPLING_420 ? 1 : 2;
+        final int mcuWidth = 8 * hMax;
+        final int mcuHeight = 8 * vMax;
+        final int xMCUs = (width + mcuWidth - 1) / mcuWidth;
+        final int yMCUs = (height + mcuHeight - 1) / mcuHeight;
+
+        final Component[] components = new Component[componentCount];
+        for (int i = 0; i < componentCount; i++) {
+            final int h = i == 0 ? hMax : 1;
+            final int v = i == 0 ? vMax : 1;
+            // all the coefficients are kept when the Huffman tables are
+            // computed from them, else a single row of MCUs
+            components[i] = new Component(i + 1, h, v, hMax / h, vMax / v,
+                    i == 0 ? 0 : 1, xMCUs * h, optimizeHuffman ? yMCUs : 1,
+                    xMCUs * mcuWidth * mcuHeight);
+        }
+
+        final int[][] quantizationTables = new int[componentCount == 1 ? 1 : 2][];
+        final float[][] quantizationMatrices = new float[quantizationTables.length][];
+        for (int i = 0; i < quantizationTables.length; i++) {
+            quantizationTables[i] = scaleQuantizationTable(i == 0
+                    ? LUMINANCE_QUANTIZATION : CHROMINANCE_QUANTIZATION, quality);
+            final float[] matrix = new float[64];
+            for (int j = 0; j < 64; j++) {
+                matrix[j] = 1.0f / quantizationTables[i][j];
+            }
+            Dct.scaleQuantizationMatrix(matrix);
+            quantizationMatrices[i] = matrix;
+        }
+
+        final JpegOutputStream jos = new JpegOutputStream(os);
+        jos.write(JpegConstants.SOI.toByteArray());
+        writeJfifSegment(jos);
+        writeQuantizationTables(jos, quantizationTables);
+        writeFrameHeader(jos, width, height, components);
+
+        final PixelReader pixelReader = new PixelReader(src, gray);
+        final int[] predictions = new int[componentCount];
+        if (optimizeHuffman) {
+            for (int mcuRow = 0; mcuRow < yMCUs; mcuRow++) {
+                readMCURow(pixelReader, mcuRow * mcuHeight, mcuHeight, width, height, components);
+                transformMCURow(components, mcuRow, quantizationMatrices);
+            }
+            final long[][] dcFrequencies = new long[quantizationTables.length][256];
+            final long[][] acFrequencies = new long[quantizationTables.length][256];
+            for (int mcuRow = 0; mcuRow < yMCUs; mcuRow++) {
+                for (int mcuX = 0; mcuX < xMCUs; mcuX++) {
+                    for (final Component component : components) {
+                        component.countMCU(mcuRow, mcuX, predictions,
+                                dcFrequencies[component.tableIndex],
+                                acFrequencies[component.tableIndex]);
+                    }
+                }
+            }
+            for (int i = 0; i < dcFrequencies.length; i++) {
+                final HuffmanEncodingTable dcTable = HuffmanEncodingTable.fromFrequencies(dcFrequencies[i]);
+                final HuffmanEncodingTable acTable = HuffmanEncodingTable.fromFrequencies(acFrequencies[i]);
+                for (final Component component : components) {
+                    if (component.tableIndex == i) {
+                        component.dcTable = dcTable;
+                        component.acTable = acTable;
+                    }
+                }
+            }
+            writeHuffmanTables(jos, components);
+            writeScanHeader(jos, components);
+            for (int i = 0; i < predictions.length; i++) {
+                predictions[i] = 0;
+            }
+            for (int mcuRow = 0; mcuRow < yMCUs; mcuRow++) {
+                for (int mcuX = 0; mcuX < xMCUs; mcuX++) {
+                    for (final Component component : components) {
+                        component.writeMCU(jos, mcuRow, mcuX, predictions);
+                    }
+                }
+            }
+        } else {
+            for (final Component component : components) {
+                component.dcTable = component.tableIndex == 0
+                        ? HuffmanEncodingTable.LUMINANCE_DC : HuffmanEncodingTable.CHROMINANCE_DC;
+                component.acTable = component.tableIndex == 0
+                        ? HuffmanEncodingTable.LUMINANCE_AC : HuffmanEncodingTable.CHROMINANCE_AC;
+            }
+            writeHuffmanTables(jos, components);
+            writeScanHeader(jos, components);
+            for (int mcuRow = 0; mcuRow < yMCUs; mcuRow++) {
+                readMCURow(pixelReader, mcuRow * mcuHeight, mcuHeight, width, height, components);
+                transformMCURow(components, 0, quantizationMatrices);
+                for (int mcuX = 0; mcuX < xMCUs; mcuX++) {
+                    for (final Component component : components) {
+                        component.writeMCU(jos, 0, mcuX, predictions);
+                    }
+                }
+            }
+        }
+        jos.flushBits();
+        jos.write2Bytes(JpegConstants.EOI_MARKER);
+        jos.flush();
+    }
+
+    /**
+     * Scales a quantization table the way the IJG software does for the
+     * given quality.
+     */
+    private static int[] scaleQuantizationTable(final int[] table, final int quality) {
+        final int scale = quality < 50 ? 5000 / quality : 200 - 2 * quality;
+        final int[] result = new int[64];
+        for (int i = 0; i < 64; i++) {
+            // baseline tables have 8-bit entries
+            result[i] = Math.max(1, Math.min(255, (table[i] * scale + 50) / 100));
+        }
+        return result;
+    }
+
+    /**
+     * Converts the pixels of a row of MCUs to level shifted Y, Cb and Cr
+     * samples at full resolution, replicating the last column and row
+     * of the image into the padding.
+     */
+    private static void readMCURow(final PixelReader pixelReader, final int y0,
+            final int mcuHeight, final int width, final int height,
+            final Component[] components) {
+        final int stride = components[0].samples.length / mcuHeight;
+        for (int row = 0; row < mcuHeight; row++) {
+            final int start = row * stride;
+            pixelReader.readRow(Math.min(y0 + row, height - 1), components, start);
+            for (final Component component : components) {
+                final float[] samples = component.samples;
+                final float last = samples[start + width - 1];
+                for (int x = width; x < stride; x++) {
+                    samples[start + x] = last;
+                }
+            }
+        }
+    }
+
+    private static void transformMCURow(final Component[] components,
+            final int mcuRow, final float[][] quantizationMatrices) {
+        final float[] block = new float[64];
+        final int[] quantized = new int[64];
+        final int[] zz = new int[64];
+        for (final Component component : components) {
+            final float[] quantizationMatrix = quantizationMatrices[component.tableIndex];
+            for (int blockY = 0; blockY < component.v; blockY++) {
+                for (int blockX = 0; blockX < component.blocksPerLine; blockX++) {
+                    component.fetchBlock(blockX, blockY, block);
+                    Dct.forwardDCT8x8(block);
+                    for (int i = 0; i < 64; i++) {
+                        // truncation of a positive number rounds it
+                        quantized[i] = (int) (block[i] * quantizationMatrix[i] + 16384.5f) - 16384;
+                    }
+                    ZigZag.blockToZigZag(quantized, zz);
+                    final int offset = component.blockOffset(mcuRow * component.v + blockY, blockX);
+                    for (int i = 0; i < 64; i++) {
+                        component.coefficients[offset + i] = (short) zz[i];
+                    }
+                }
+            }
+        }
+    }
+
+    private void writeJfifSegment(final JpegOutputStream jos) throws IOException {
+        // the JFIF default when there is no physical size
+        int units = 0;
+        double xDensity = 1;
+        double yDensity = 1;
+        if (pixelDensity != null) {
+            if (pixelDensity.isUnitless()) {
+                xDensity = pixelDensity.getRawHorizontalDensity();
+                yDensity = pixelDensity.getRawVerticalDensity();
+            } else if (pixelDensity.isInInches()) {
+                units = 1;
+                xDensity = pixelDensity.horizontalDensityInches();
+                yDensity = pixelDensity.verticalDensityInches();
+            } else {
+                units = 2;
+                xDensity = pixelDensity.horizontalDensityCentimetres();
+                yDensity = pixelDensity.verticalDensityCentimetres();
+            }
+        }
+
+        jos.write2Bytes(JpegConstants.JFIF_MARKER);
+        jos.write2Bytes(16);
+        jos.write(JpegConstants.JFIF0_SIGNATURE.toByteArray());
+        // version 1.02
+        jos.write(1);
+        jos.write(2);
+        jos.write(units);
+        jos.write2Bytes(clampDensity(xDensity));
+        jos.write2Bytes(clampDensity(yDensity));
+        // no thumbnail
+        jos.write(0);
+        jos.write(0);
+    }
+
+    private static int clampDensity(final double density) {
+        return (int) Math.max(1, Math.min(0xffff, Math.round(density)));
+    }
+
+    private static void writeQuantizationTables(final JpegOutputStream jos,
+            final int[][] quantizationTables) throws IOException {
+        jos.write2Bytes(JpegConstants.DQT_MARKER);
+        jos.write2Bytes(2 + 65 * quantizationTables.length);
+        final int[] zz = new int[64];
+        for (int i = 0; i < quantizationTables.length; i++) {
+            // 8-bit precision
+            jos.write(i);
+            ZigZag.blockToZigZag(quantizationTables[i], zz);
+            for (int j = 0; j < 64; j++) {
+                jos.write(zz[j]);
+            }
+        }
+    }
+
+    private static void writeFrameHeader(final JpegOutputStream jos,
+            final int width, final int height, final Component[] components)
+            throws IOException {
+        jos.write2Bytes(JpegConstants.SOF0_MARKER);
+        jos.write2Bytes(8 + 3 * components.length);
+        jos.write(8);
+        jos.write2Bytes(height);
+        jos.write2Bytes(width);
+        jos.write(components.length);
+        for (final Component component : components) {
+            jos.write(component.id);
+            jos.write((component.h << 4) | component.v);
+            jos.write(component.tableIndex);
+        }
+    }
+
+    private static void writeHuffmanTables(final JpegOutputStream jos,
+            final Component[] components) throws IOException {
+        final int tableCount = components[components.length - 1].tableIndex + 1;
+        final HuffmanEncodingTable[] tables = new HuffmanEncodingTable[2 * tableCount];
+        for (final Component component : components) {
+            tables[2 * component.tableIndex] = component.dcTable;
+            tables[2 * component.tableIndex + 1] = component.acTable;
+        }
+        int length = 2;
+        for (final HuffmanEncodingTable table : tables) {
+            length += 17 + table.values.length;
+        }
+        jos.write2Bytes(JpegConstants.DHT_MARKER);
+        jos.write2Bytes(length);
+        for (int i = 0; i < tables.length; i++) {
+            // table class in the high nibble, identifier in the low one
+            jos.write(((i & 1) << 4) | (i >> 1));
+            for (final int count : tables[i].bits) {
+                jos.write(count);
+            }
+            for (final int value : tables[i].values) {
+                jos.write(value);
+            }
+        }
+    }
+
+    private static void writeScanHeader(final JpegOutputStream jos,
+            final Component[] components) throws IOException {
+        jos.write2Bytes(JpegConstants.SOS_MARKER);
+        jos.write2Bytes(6 + 2 * components.length);
+        jos.write(components.length);
+        for (final Component component : components) {
+            jos.write(component.id);
+            jos.write((component.tableIndex << 4) | component.tableIndex);
+        }
+        // spectral selection 0 to 63, no successive approximation
+        jos.write(0);
+        jos.write(63);
+        jos.write(0);
+    }
+
+    private static final class Component {
+        final int id;
+        final int h;
+        final int v;
+        // the number of samples averaged into one horizontally and vertically
+        final int hStep;
+        final int vStep;
+        final int tableIndex;
+        final int blocksPerLine;
+        // level shifted samples of a row of MCUs, at full resolution
+        final float[] samples;
+        // quantized coefficients in zig-zag order
+        final short[] coefficients;
+        HuffmanEncodingTable dcTable;
+        HuffmanEncodingTable acTable;
+
+        Component(final int id, final int h, final int v, final int hStep,
+                final int vStep, final int tableIndex, final int blocksPerLine,
+                final int mcuRows, final int samplesPerMCURow) {
+            this.id = id;
+            this.h = h;
+            this.v = v;
+            this.hStep = hStep;
+            this.vStep = vStep;
+            this.tableIndex = tableIndex;
+            this.blocksPerLine = blocksPerLine;
+            this.samples = new float[samplesPerMCURow];
+            this.coefficients = new short[64 * blocksPerLine * v * mcuRows];
+        }
+
+        int blockOffset(final int blockRow, final int blockX) {
+            return 64 * (blockRow * blocksPerLine + blockX);
+        }
+
+        void fetchBlock(final int blockX, final int blockY, final float[] block) {
+            final int stride = samples.length / (8 * v * vStep);
+            if (hStep == 1 && vStep == 1) {
+                int index = 8 * blockY * stride + 8 * blockX;
+                for (int y = 0; y < 8; y++) {
+                    System.arraycopy(samples, index, block, 8 * y, 8);
+                    index += stride;
+                }
+                return;
+            }
+            final float scale = 1.0f / (hStep * vStep);
+            for (int y = 0; y < 8; y++) {
+                final int row = (8 * blockY + y) * vStep * stride + 8 * blockX * hStep;
+                for (int x = 0; x < 8; x++) {
+                    float sum = 0;
+                    for (int j = 0; j < vStep; j++) {
+                        final int index = row + j * stride + x * hStep;
+                        for (int i = 0; i < hStep; i++) {
+                            sum += samples[index + i];
+                        }
+                    }
+                    block[8 * y + x] = sum * scale;
+                }
+            }
+        }
+
+        void countMCU(final int mcuRow, final int mcuX, final int[] predictions,
+                final long[] dcFrequencies, final long[] acFrequencies) {
+            for (int blockY = 0; blockY < v; blockY++) {
+                for (int blockX = 0; blockX < h; blockX++) {
+                    final int offset = blockOffset(mcuRow * v + blockY, mcuX * h + blockX);
+                    final int dc = coefficients[offset];
+                    HuffmanEncodingTable.countBlock(coefficients, offset,
+                            dc - predictions[id - 1], dcFrequencies, acFrequencies);
+                    predictions[id - 1] = dc;
+                }
+            }
+        }
+
+        void writeMCU(final JpegOutputStream jos, final int mcuRow, final int mcuX,
+                final int[] predictions) throws IOException {
+            for (int blockY = 0; blockY < v; blockY++) {
+                for (int blockX = 0; blockX < h; blockX++) {
+                    final int offset = blockOffset(mcuRow * v + blockY, mcuX * h + blockX);
+                    final int dc = coefficients[offset];
+                    jos.writeBlock(coefficients, offset, dc - predictions[id - 1],
+                            dcTable, acTable);
+                    predictions[id - 1] = dc;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads rows of pixels into the samples of the components.
+     */
+    private static final class PixelReader {
+        private final BufferedImage src;
+        private final boolean gray;
+        private final int width;
+        private final int[] row;
+        // the pixels of images backed by packed RGB ints, else null
+        private final int[] data;
+        private final int dataOffset;
+        private final int scanlineStride;
+
+        PixelReader(final BufferedImage src, final boolean gray) {
+            this.src = src;
+            this.gray = gray;
+            this.width = src.getWidth();
+            final Raster raster = src.getRaster();
+            final DataBuffer dataBuffer = raster.getDataBuffer();
+            final ColorModel colorModel = src.getColorModel();
+            if (!gray && dataBuffer instanceof DataBufferInt
+                    && dataBuffer.getNumBanks() == 1
+                    && raster.getSampleModel() instanceof SinglePixelPackedSampleModel
+                    && colorModel instanceof DirectColorModel
+                    && colorModel.getColorSpace().isCS_sRGB()
+                    && !colorModel.isAlphaPremultiplied()
+                    && ((DirectColorModel) colorModel).getRedMask() == 0xff0000
+                    && ((DirectColorModel) colorModel).getGreenMask() == 0xff00
+                    && ((DirectColorModel) colorModel).getBlueMask() == 0xff) {
+                final SinglePixelPackedSampleModel sampleModel =
+                        (SinglePixelPackedSampleModel) raster.getSampleModel();
+                data = ((DataBufferInt) dataBuffer).getData();
+                dataOffset = dataBuffer.getOffset() + sampleModel.getOffset(
+                        raster.getMinX() - raster.getSampleModelTranslateX(),
+                        raster.getMinY() - raster.getSampleModelTranslateY());
+                scanlineStride = sampleModel.getScanlineStride();
+                row = null;
+            } else {
+                data = null;
+                dataOffset = 0;
+                scanlineStride = 0;
+                row = new int[width];
+            }
+        }
+
+        void readRow(final int y, final Component[] components, final int start) {
+            final float[] ys = components[0].samples;
+            if (gray) {
+                final Raster raster = src.getRaster();
+                raster.getSamples(raster.getMinX(), raster.getMinY() + y, width, 1, 0, row);
+                for (int x = 0; x < width; x++) {
+                    ys[start + x] = row[x] - 128;
+                }
+                return;
+            }
+
+            final int[] pixels;
+            int index;
+            if (data != null) {
+                pixels = data;
+                index = dataOffset + y * scanlineStride;
+            } else {
+                pixels = row;
+                index = 0;
+                src.getRGB(0, y, width, 1, row, 0, width);
+            }
+            final float[] cbs = components[1].samples;
+            final float[] crs = components[2].samples;
+            for (int x = start; x < start + width; x++) {
+                final int pixel = pixels[index++];
+                final int r = (pixel >> 16) & 0xff;
+                final int g = (pixel >> 8) & 0xff;
+                final int b = pixel & 0xff;
+                // JFIF conversion, level shifted by 128
+                ys[x] = 0.299f * r + 0.587f * g + 0.114f * b - 128;
+                cbs[x] = -0.168736f * r - 0.331264f * g + 0.5f * b;
+                crs[x] = 0.5f * r - 0.418688f * g - 0.081312f * b;
+            }
+        }
+    }
+}
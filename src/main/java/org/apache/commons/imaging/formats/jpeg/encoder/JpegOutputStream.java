@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.imaging.formats.jpeg.encoder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+class JpegOutputStream {
+    private final OutputStream os;
+    private final byte[] buffer = new byte[8192];
+    private int count;
+    // pending bits, right-aligned
+    private long bits;
+    private int bitCount;
+
+    JpegOutputStream(final OutputStream os) {
+        this.os = os;
+    }
+
+    void write(final int b) throws IOException {
+        if (count == buffer.length) {
+            os.write(buffer, 0, count);
+            count = 0;
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    void write2Bytes(final int value) throws IOException {
+        write(value >> 8);
+        write(value);
+    }
+
+    void write(final byte[] bytes) throws IOException {
+        for (final byte b : bytes) {
+            write(b);
+        }
+    }
+
+    /**
+     * Writes bits of entropy-coded data, stuffing a zero byte after each
+     * 0xFF byte (F.1.2.3 of T.81).
+     *
+     * @param value the bits, right-aligned
+     * @param size the number of bits, at most 32
+     */
+    void writeBits(final int value, final int size) throws IOException {
+        bits = (bits << size) | (value & (0xffffffffL >>> (32 - size)));
+        bitCount += size;
+        while (bitCount >= 8) {
+            bitCount -= 8;
+            final int b = (int) (bits >>> bitCount) & 0xff;
+            write(b);
+            if (b == 0xff) {
+                write(0);
+            }
+        }
+    }
+
+    /**
+     * Huffman codes a block of quantized coefficients in zig-zag order, as
+     * in F.1.2.1 and F.1.2.2 of T.81.
+     */
+    void writeBlock(final short[] coefficients, final int offset,
+            final int dcDifference, final HuffmanEncodingTable dcTable,
+            final HuffmanEncodingTable acTable) throws IOException {
+        int size = HuffmanEncodingTable.bitLength(dcDifference);
+        writeBits(dcTable.codes[size], dcTable.sizes[size]);
+        if (size > 0) {
+            writeBits(dcDifference < 0 ? dcDifference - 1 : dcDifference, size);
+        }
+
+        int run = 0;
+        for (int k = 1; k < 64; k++) {
+            final int coefficient = coefficients[offset + k];
+            if (coefficient == 0) {
+                run++;
+            } else {
+                while (run > 15) {
+                    writeBits(acTable.codes[0xf0], acTable.sizes[0xf0]);
+                    run -= 16;
+                }
+                size = HuffmanEncodingTable.bitLength(coefficient);
+                final int symbol = (run << 4) | size;
+                // the code and the additional bits fit in one write
+                writeBits((acTable.codes[symbol] << size)
+                        | ((coefficient < 0 ? coefficient - 1 : coefficient)
+                        & ((1 << size) - 1)), acTable.sizes[symbol] + size);
+                run = 0;
+            }
+        }
+        if (run > 0) {
+            writeBits(acTable.codes[0x00], acTable.sizes[0x00]);
+        }
+    }
+
+    /**
+     * Pads the entropy-coded data to a byte boundary with 1 bits.
+     */
+    void flushBits() throws IOException {
+        if (bitCount > 0) {
+            writeBits(0x7f, 8 - bitCount);
+        }
+    }
+
+    void flush() throws IOException {
+        os.write(buffer, 0, count);
+        count = 0;
+        os.flush();
+    }
+}
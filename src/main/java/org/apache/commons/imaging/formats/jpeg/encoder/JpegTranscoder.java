@@ -0,0 +1,705 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.imaging.formats.jpeg.encoder;
+
+import static org.apache.commons.imaging.common.BinaryFunctions.startsWith;
+
+import java.awt.Rectangle;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.ImageWriteException;
+import org.apache.commons.imaging.ImagingConstants;
+import org.apache.commons.imaging.common.bytesource.ByteSource;
+import org.apache.commons.imaging.formats.jpeg.JpegConstants;
+import org.apache.commons.imaging.formats.jpeg.JpegUtils;
+import org.apache.commons.imaging.formats.jpeg.decoder.JpegCoefficients;
+import org.apache.commons.imaging.formats.jpeg.decoder.JpegDecoder;
+import org.apache.commons.imaging.formats.jpeg.segments.DqtSegment;
+import org.apache.commons.imaging.formats.jpeg.segments.SofnSegment;
+import org.apache.commons.imaging.formats.tiff.TiffField;
+import org.apache.commons.imaging.formats.tiff.TiffImageMetadata;
+import org.apache.commons.imaging.formats.tiff.TiffImageParser;
+import org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants;
+import org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants;
+import org.apache.commons.imaging.formats.tiff.write.TiffImageWriterLossless;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputDirectory;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputField;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
+import org.apache.commons.imaging.internal.ZigZag;
+
+/**
+ * Rewrites JPEG images from their quantized DCT coefficients, like the IJG
+ * jpegtran program: the image is never inverse transformed, so nothing is
+ * lost and little work is done. The result is a baseline sequential image
+ * in a single interleaved scan, whether the source was sequential or
+ * progressive.
+ * <p>
+ * The APPn and COM segments of the source are copied unchanged; in
+ * particular the EXIF orientation, dimensions and thumbnail are not
+ * updated, unless
+ * {@link JpegConstants#PARAM_KEY_JPEG_RESET_EXIF_ORIENTATION} is set for
+ * a transformation.
+ */
+public class JpegTranscoder {
+    /**
+     * The lossless transformations of an image.
+     * <p>
+     * Blocks can only be moved whole, so the partial MCUs at the right
+     * or bottom edge of the source are dropped where a transformation
+     * would move them to the left or top, like jpegtran -trim does.
+     */
+    public enum Transform {
+        FLIP_HORIZONTAL(false, true, false),
+        FLIP_VERTICAL(false, false, true),
+        /** Mirrors the image across its top left to bottom right diagonal. */
+        TRANSPOSE(true, false, false),
+        /** Mirrors the image across its top right to bottom left diagonal. */
+        TRANSVERSE(true, true, true),
+        /** Rotates the image clockwise. */
+        ROTATE_90(true, false, true),
+        ROTATE_180(false, true, true),
+        /** Rotates the image counterclockwise. */
+        ROTATE_270(true, true, false);
+
+        // whether the rows of the source become columns, and which axes
+        // of the source are reversed
+        final boolean transpose;
+        final boolean flipX;
+        final boolean flipY;
+
+        Transform(final boolean transpose, final boolean flipX, final boolean flipY) {
+            this.transpose = transpose;
+            this.flipX = flipX;
+            this.flipY = flipY;
+        }
+
+        /**
+         * Returns the transformation that displays an image with the given
+         * EXIF orientation upright.
+         *
+         * @param orientation the value of the EXIF orientation tag
+         * @return the transformation, or null for orientation 1 and
+         *         invalid values
+         */
+        public static Transform forExifOrientation(final int orientation) {
+            switch (orientation) {
+            case 2:
+                return FLIP_HORIZONTAL;
+            case 3:
+                return ROTATE_180;
+            case 4:
+                return FLIP_VERTICAL;
+            case 5:
+                return TRANSPOSE;
+            case 6:
+                return ROTATE_90;
+            case 7:
+                return TRANSVERSE;
+            case 8:
+                return ROTATE_270;
+            default:
+                return null;
+            }
+        }
+    }
+
+    private boolean optimizeHuffman;
+    private boolean resetExifOrientation;
+
+    /**
+     * Creates a transcoder with the given write parameters.
+     *
+     * @param params the parameters, may be null
+     * @throws ImageWriteException if a parameter is invalid or unknown
+     * @see JpegConstants#PARAM_KEY_JPEG_OPTIMIZE_HUFFMAN
+     * @see JpegConstants#PARAM_KEY_JPEG_RESET_EXIF_ORIENTATION
+     */
+    public JpegTranscoder(Map<String, Object> params) throws ImageWriteException {
+        // make copy of params; we'll clear keys as we consume them.
+        params = (params == null) ? new HashMap<>() : new HashMap<>(params);
+
+        // clear format key.
+        if (params.containsKey(ImagingConstants.PARAM_KEY_FORMAT)) {
+            params.remove(ImagingConstants.PARAM_KEY_FORMAT);
+        }
+
+        if (params.containsKey(JpegConstants.PARAM_KEY_JPEG_OPTIMIZE_HUFFMAN)) {
+            final Object value = params.remove(JpegConstants.PARAM_KEY_JPEG_OPTIMIZE_HUFFMAN);
+            if (value != null) {
+                if (!(value instanceof Boolean)) {
+                    throw new ImageWriteException(
+                            "Invalid optimize Huffman parameter: " + value);
+                }
+                optimizeHuffman = (Boolean) value;
+            }
+        }
+
+        if (params.containsKey(JpegConstants.PARAM_KEY_JPEG_RESET_EXIF_ORIENTATION)) {
+            final Object value = params.remove(JpegConstants.PARAM_KEY_JPEG_RESET_EXIF_ORIENTATION);
+            if (value != null) {
+                if (!(value instanceof Boolean)) {
+                    throw new ImageWriteException(
+                            "Invalid reset EXIF orientation parameter: " + value);
+                }
+                resetExifOrientation = (Boolean) value;
+            }
+        }
+
+        if (!params.isEmpty()) {
+            final Object firstKey = params.keySet().iterator().next();
+            throw new ImageWriteException("Unknown parameter: " + firstKey);
+        }
+    }
+
+    /**
+     * Applies a lossless transformation to an image. To display an image
+     * upright, apply {@link Transform#forExifOrientation(int)} of its
+     * orientation with
+     * {@link JpegConstants#PARAM_KEY_JPEG_RESET_EXIF_ORIENTATION} set, so
+     * viewers do not rotate it again.
+     *
+     * @param byteSource the JPEG image
+     * @param os the stream to write the transformed image to
+     * @param transform the transformation
+     * @throws ImageReadException if the source is not a supported JPEG image
+     * @throws ImageWriteException if the image is too small to transform
+     * @throws IOException if the image cannot be read or written
+     */
+    public void transform(final ByteSource byteSource, final OutputStream os,
+            final Transform transform) throws ImageReadException, ImageWriteException, IOException {
+        final JpegCoefficients source = new JpegDecoder().decodeCoefficients(byteSource);
+        write(byteSource, transform(source, transform), os, optimizeHuffman,
+                resetExifOrientation ? transform : null);
+    }
+
+    static JpegCoefficients transform(final JpegCoefficients source, final Transform transform)
+            throws ImageWriteException {
+        final int mcuWidth = 8 * source.getMaxHorizontalSamplingFactor();
+        final int mcuHeight = 8 * source.getMaxVerticalSamplingFactor();
+        final int width = transform.flipX ? source.width - source.width % mcuWidth : source.width;
+        final int height = transform.flipY ? source.height - source.height % mcuHeight : source.height;
+        if (width == 0 || height == 0) {
+            throw new ImageWriteException("Image too small to transform losslessly: "
+                    + source.width + "x" + source.height);
+        }
+
+        // for each coefficient of a transformed block in zig-zag order, the
+        // zig-zag index of the source coefficient and its sign: reversing
+        // an axis negates the odd frequencies along it
+        final int[] natural = new int[64];
+        for (int i = 0; i < 64; i++) {
+            natural[i] = i;
+        }
+        final int[] zigZagToNatural = new int[64];
+        ZigZag.blockToZigZag(natural, zigZagToNatural);
+        final int[] naturalToZigZag = new int[64];
+        for (int k = 0; k < 64; k++) {
+            naturalToZigZag[zigZagToNatural[k]] = k;
+        }
+        final boolean negateU = transform.transpose ? transform.flipY : transform.flipX;
+        final boolean negateV = transform.transpose ? transform.flipX : transform.flipY;
+        final int[] sourceIndexes = new int[64];
+        final int[] signs = new int[64];
+        for (int k = 0; k < 64; k++) {
+            final int u = zigZagToNatural[k] % 8;
+            final int v = zigZagToNatural[k] / 8;
+            sourceIndexes[k] = naturalToZigZag[transform.transpose ? 8 * u + v : 8 * v + u];
+            signs[k] = (negateU && (u & 1) != 0) != (negateV && (v & 1) != 0) ? -1 : 1;
+        }
+
+        final SofnSegment.Component[] components = new SofnSegment.Component[source.getComponentCount()];
+        final DqtSegment.QuantizationTable[] quantizationTables = new DqtSegment.QuantizationTable[4];
+        for (int i = 0; i < components.length; i++) {
+            final SofnSegment.Component component = source.getComponent(i);
+            components[i] = transform.transpose
+                    ? new SofnSegment.Component(component.componentIdentifier,
+                            component.verticalSamplingFactor, component.horizontalSamplingFactor,
+                            component.quantTabDestSelector)
+                    : component;
+            final int destination = component.quantTabDestSelector;
+            if (quantizationTables[destination] == null) {
+                quantizationTables[destination] = source.getQuantizationTable(destination);
+                if (transform.transpose) {
+                    // the coefficients move, and their quantizers with them
+                    final int[] elements = quantizationTables[destination].getElements();
+                    final int[] transposed = new int[64];
+                    for (int k = 0; k < 64; k++) {
+                        transposed[k] = elements[sourceIndexes[k]];
+                    }
+                    quantizationTables[destination] = new DqtSegment.QuantizationTable(
+                            quantizationTables[destination].precision, destination, transposed);
+                }
+            }
+        }
+        final JpegCoefficients result = transform.transpose
+                ? new JpegCoefficients(height, width, source.precision, components, quantizationTables)
+                : new JpegCoefficients(width, height, source.precision, components, quantizationTables);
+
+        for (int i = 0; i < components.length; i++) {
+            final SofnSegment.Component component = source.getComponent(i);
+            // the blocks of the source inside the kept part of the image
+            final int columns = width / mcuWidth * component.horizontalSamplingFactor;
+            final int rows = height / mcuHeight * component.verticalSamplingFactor;
+            final short[] src = source.getCoefficients(i);
+            final int srcBlocksPerLine = source.getBlocksPerLine(i);
+            final int srcBlockRows = source.getBlockRows(i);
+            final short[] dst = result.getCoefficients(i);
+            final int dstBlocksPerLine = result.getBlocksPerLine(i);
+            final int dstBlockRows = result.getBlockRows(i);
+            for (int y = 0; y < dstBlockRows; y++) {
+                for (int x = 0; x < dstBlocksPerLine; x++) {
+                    int srcX = transform.transpose ? y : x;
+                    int srcY = transform.transpose ? x : y;
+                    if (transform.flipX) {
+                        srcX = columns - 1 - srcX;
+                    }
+                    if (transform.flipY) {
+                        srcY = rows - 1 - srcY;
+                    }
+                    if (srcX < 0 || srcX >= srcBlocksPerLine || srcY < 0 || srcY >= srcBlockRows) {
+                        // padding
+                        continue;
+                    }
+                    final int srcOffset = 64 * (srcY * srcBlocksPerLine + srcX);
+                    final int dstOffset = 64 * (y * dstBlocksPerLine + x);
+                    for (int k = 0; k < 64; k++) {
+                        dst[dstOffset + k] = (short) (signs[k] * src[srcOffset + sourceIndexes[k]]);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Crops an image. The top left corner of the region is moved up and
+     * left to the nearest MCU boundary, and its size grown by as much, so
+     * the image written covers the region; its right and bottom edges are
+     * where the region's are.
+     *
+     * @param byteSource the JPEG image
+     * @param os the stream to write the cropped image to
+     * @param region the region to keep, within the bounds of the image
+     * @throws ImageReadException if the source is not a supported JPEG image
+     * @throws ImageWriteException if the region is empty or outside the image
+     * @throws IOException if the image cannot be read or written
+     */
+    public void crop(final ByteSource byteSource, final OutputStream os, final Rectangle region)
+            throws ImageReadException, ImageWriteException, IOException {
+        final JpegCoefficients source = new JpegDecoder().decodeCoefficients(byteSource, region);
+        write(byteSource, crop(source, region), os, optimizeHuffman, null);
+    }
+
+    /**
+     * Rewrites an image with Huffman tables built for its coefficients,
+     * whatever the parameters. Images coded with the typical tables of
+     * Annex K of T.81, as most cameras write them, usually shrink by 5 to
+     * 10 percent. Progressive images are written as sequential ones, and
+     * would often grow: when the rewritten image is not smaller, the source
+     * is copied unchanged instead, so the image written is never larger.
+     *
+     * @param byteSource the JPEG image
+     * @param os the stream to write the optimized image to
+     * @throws ImageReadException if the source is not a supported JPEG image
+     * @throws ImageWriteException if the image cannot be written as a
+     *         baseline or extended sequential image
+     * @throws IOException if the image cannot be read or written
+     */
+    public void optimize(final ByteSource byteSource, final OutputStream os)
+            throws ImageReadException, ImageWriteException, IOException {
+        final ByteArrayOutputStream optimized = new ByteArrayOutputStream();
+        write(byteSource, new JpegDecoder().decodeCoefficients(byteSource), optimized, true, null);
+        if (optimized.size() < byteSource.getLength()) {
+            optimized.writeTo(os);
+        } else {
+            byteSource.writeTo(0, os);
+        }
+    }
+
+    static JpegCoefficients crop(final JpegCoefficients source, final Rectangle region)
+            throws ImageWriteException {
+        // the checks are consistent with BufferedImage.getSubimage()
+        if (region.width <= 0) {
+            throw new ImageWriteException("negative or zero region width");
+        }
+        if (region.height <= 0) {
+            throw new ImageWriteException("negative or zero region height");
+        }
+        if (region.x < 0 || region.x >= source.width) {
+            throw new ImageWriteException("region x is outside raster");
+        }
+        if (region.x + region.width > source.width) {
+            throw new ImageWriteException("region (x+width) is outside raster");
+        }
+        if (region.y < 0 || region.y >= source.height) {
+            throw new ImageWriteException("region y is outside raster");
+        }
+        if (region.y + region.height > source.height) {
+            throw new ImageWriteException("region (y+height) is outside raster");
+        }
+
+        final int mcuWidth = 8 * source.getMaxHorizontalSamplingFactor();
+        final int mcuHeight = 8 * source.getMaxVerticalSamplingFactor();
+        final int mcuX = region.x / mcuWidth;
+        final int mcuY = region.y / mcuHeight;
+        final int width = region.x + region.width - mcuX * mcuWidth;
+        final int height = region.y + region.height - mcuY * mcuHeight;
+
+        final SofnSegment.Component[] components = new SofnSegment.Component[source.getComponentCount()];
+        final DqtSegment.QuantizationTable[] quantizationTables = new DqtSegment.QuantizationTable[4];
+        for (int i = 0; i < components.length; i++) {
+            components[i] = source.getComponent(i);
+            quantizationTables[components[i].quantTabDestSelector] =
+                    source.getQuantizationTable(components[i].quantTabDestSelector);
+        }
+        final JpegCoefficients result = new JpegCoefficients(width, height, source.precision,
+                components, quantizationTables);
+
+        // the region's MCUs are within the source's, so the rows of blocks
+        // can be copied whole; the DC differences are computed again when
+        // the blocks are written
+        for (int i = 0; i < components.length; i++) {
+            final short[] src = source.getCoefficients(i);
+            final int srcBlocksPerLine = source.getBlocksPerLine(i);
+            final short[] dst = result.getCoefficients(i);
+            final int dstBlocksPerLine = result.getBlocksPerLine(i);
+            final int x = mcuX * components[i].horizontalSamplingFactor;
+            final int y = mcuY * components[i].verticalSamplingFactor;
+            for (int row = 0; row < result.getBlockRows(i); row++) {
+                System.arraycopy(src, 64 * ((y + row) * srcBlocksPerLine + x),
+                        dst, 64 * row * dstBlocksPerLine, 64 * dstBlocksPerLine);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes the coefficients as a baseline image, with the APPn and COM
+     * segments of the source. The EXIF orientation is reset after the
+     * given transformation, if any.
+     */
+    private static void write(final ByteSource byteSource, final JpegCoefficients coefficients,
+            final OutputStream os, final boolean optimizeHuffman, final Transform exifTransform)
+            throws ImageReadException, ImageWriteException, IOException {
+        if (coefficients.precision != 8) {
+            throw new ImageWriteException("Only 8-bit JPEG images can be transcoded, not "
+                    + coefficients.precision + "-bit");
+        }
+        if (coefficients.width > 0xffff || coefficients.height > 0xffff) {
+            throw new ImageWriteException("Image too large for JPEG: "
+                    + coefficients.width + "x" + coefficients.height);
+        }
+
+        final List<byte[]> segments = new ArrayList<>();
+        // only the first EXIF segment is read, as by ExifRewriter
+        final int[] exifIndex = { -1 };
+        new JpegUtils().traverseJFIF(byteSource, new JpegUtils.Visitor() {
+            @Override
+            public boolean beginSOS() {
+                return false;
+            }
+
+            @Override
+            public void visitSOS(final int marker, final byte[] markerBytes, final byte[] imageData) {
+                // not reached
+            }
+
+            @Override
+            public boolean visitSegment(final int marker, final byte[] markerBytes,
+                    final int segmentLength, final byte[] segmentLengthBytes,
+                    final byte[] segmentData) {
+                if ((marker >= JpegConstants.JPEG_APP0_MARKER && marker <= JpegConstants.JPEG_APP15_MARKER)
+                        || marker == JpegConstants.COM_MARKER) {
+                    final byte[] segment = new byte[4 + segmentData.length];
+                    System.arraycopy(markerBytes, 0, segment, 0, 2);
+                    System.arraycopy(segmentLengthBytes, 0, segment, 2, 2);
+                    System.arraycopy(segmentData, 0, segment, 4, segmentData.length);
+                    if (marker == JpegConstants.JPEG_APP1_MARKER && exifIndex[0] < 0
+                            && startsWith(segmentData, JpegConstants.EXIF_IDENTIFIER_CODE)) {
+                        exifIndex[0] = segments.size();
+                    }
+                    segments.add(segment);
+                }
+                return true;
+            }
+        });
+        if (exifTransform != null && exifIndex[0] >= 0) {
+            segments.set(exifIndex[0], resetExifOrientation(segments.get(exifIndex[0]),
+                    exifTransform.transpose));
+        }
+
+        // the first component uses the first pair of Huffman tables, the
+        // others the second: baseline images may have only two, so the
+        // symbols of the chrominance components are counted together
+        final int componentCount = coefficients.getComponentCount();
+        final int[] tableIndexes = new int[componentCount];
+        for (int i = 1; i < componentCount; i++) {
+            tableIndexes[i] = 1;
+        }
+        final int tableCount = componentCount == 1 ? 1 : 2;
+        final HuffmanEncodingTable[] dcTables = new HuffmanEncodingTable[tableCount];
+        final HuffmanEncodingTable[] acTables = new HuffmanEncodingTable[tableCount];
+        dcTables[0] = HuffmanEncodingTable.LUMINANCE_DC;
+        acTables[0] = HuffmanEncodingTable.LUMINANCE_AC;
+        if (tableCount > 1) {
+            dcTables[1] = HuffmanEncodingTable.CHROMINANCE_DC;
+            acTables[1] = HuffmanEncodingTable.CHROMINANCE_AC;
+        }
+        // the typical tables have codes for all the values of 8-bit
+        // images, so the symbols only need counting to optimize the tables,
+        // or to code values out of that range
+        if (optimizeHuffman || !isInTypicalRange(coefficients)) {
+            final long[][] dcFrequencies = new long[tableCount][256];
+            final long[][] acFrequencies = new long[tableCount][256];
+            encodeScan(coefficients, tableIndexes, null, null, null, dcFrequencies, acFrequencies);
+            for (int i = 0; i < tableCount; i++) {
+                if (optimizeHuffman || !hasCodes(dcTables[i], dcFrequencies[i])) {
+                    dcTables[i] = HuffmanEncodingTable.fromFrequencies(dcFrequencies[i]);
+                }
+                if (optimizeHuffman || !hasCodes(acTables[i], acFrequencies[i])) {
+                    acTables[i] = HuffmanEncodingTable.fromFrequencies(acFrequencies[i]);
+                }
+            }
+        }
+
+        final JpegOutputStream jos = new JpegOutputStream(os);
+        jos.write(JpegConstants.SOI.toByteArray());
+        for (final byte[] segment : segments) {
+            jos.write(segment);
+        }
+        final boolean extended = writeQuantizationTables(jos, coefficients);
+        writeFrameHeader(jos, coefficients, extended);
+        writeHuffmanTables(jos, dcTables, acTables);
+        writeScanHeader(jos, coefficients, tableIndexes);
+        encodeScan(coefficients, tableIndexes, jos, dcTables, acTables, null, null);
+        jos.flushBits();
+        jos.write2Bytes(JpegConstants.EOI_MARKER);
+        jos.flush();
+    }
+
+    /**
+     * Returns the EXIF segment with the orientation, if any, set to 1, and
+     * the width and height swapped if the image was transposed. The fields
+     * keep their sizes, so the other values are left where they are.
+     */
+    private static byte[] resetExifOrientation(final byte[] segment, final boolean transposed)
+            throws ImageReadException, ImageWriteException, IOException {
+        final byte[] exifBytes = Arrays.copyOfRange(segment, 4 + 6, segment.length);
+        final Map<String, Object> params = new HashMap<>();
+        params.put(ImagingConstants.PARAM_KEY_READ_THUMBNAILS, Boolean.TRUE);
+        final TiffImageMetadata metadata = (TiffImageMetadata) new TiffImageParser().getMetadata(
+                exifBytes, params);
+        final TiffOutputSet outputSet = metadata.getOutputSet();
+
+        final TiffOutputDirectory root = outputSet.getRootDirectory();
+        if (root != null && root.findField(TiffTagConstants.TIFF_TAG_ORIENTATION) != null) {
+            root.removeField(TiffTagConstants.TIFF_TAG_ORIENTATION);
+            root.add(TiffTagConstants.TIFF_TAG_ORIENTATION,
+                    (short) TiffTagConstants.ORIENTATION_VALUE_HORIZONTAL_NORMAL);
+        }
+        final TiffOutputDirectory exif = outputSet.getExifDirectory();
+        if (transposed && exif != null) {
+            // either may be a SHORT or a LONG
+            final TiffField width = metadata.findField(ExifTagConstants.EXIF_TAG_EXIF_IMAGE_WIDTH, true);
+            final TiffField height = metadata.findField(ExifTagConstants.EXIF_TAG_EXIF_IMAGE_LENGTH, true);
+            exif.removeField(ExifTagConstants.EXIF_TAG_EXIF_IMAGE_WIDTH);
+            exif.removeField(ExifTagConstants.EXIF_TAG_EXIF_IMAGE_LENGTH);
+            if (height != null) {
+                exif.add(new TiffOutputField(ExifTagConstants.EXIF_TAG_EXIF_IMAGE_WIDTH,
+                        height.getFieldType(), (int) height.getCount(), height.getByteArrayValue()));
+            }
+            if (width != null) {
+                exif.add(new TiffOutputField(ExifTagConstants.EXIF_TAG_EXIF_IMAGE_LENGTH,
+                        width.getFieldType(), (int) width.getCount(), width.getByteArrayValue()));
+            }
+        }
+
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        os.write(segment, 0, 4 + 6);
+        new TiffImageWriterLossless(outputSet.byteOrder, exifBytes).write(os, outputSet);
+        final byte[] result = os.toByteArray();
+        if (result.length - 2 > 0xffff) {
+            throw new ImageWriteException("APP1 Segment is too long: " + (result.length - 2));
+        }
+        result[2] = (byte) ((result.length - 2) >> 8);
+        result[3] = (byte) (result.length - 2);
+        return result;
+    }
+
+    /**
+     * Returns whether all the coefficients are within the range of 8-bit
+     * images: 10-bit AC values, and DC values whose differences need at
+     * most 11 bits.
+     */
+    private static boolean isInTypicalRange(final JpegCoefficients coefficients) {
+        for (int i = 0; i < coefficients.getComponentCount(); i++) {
+            for (final short coefficient : coefficients.getCoefficients(i)) {
+                if (coefficient < -1023 || coefficient > 1023) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasCodes(final HuffmanEncodingTable table, final long[] frequencies) {
+        for (int i = 0; i < frequencies.length; i++) {
+            if (frequencies[i] != 0 && table.sizes[i] == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Huffman codes the blocks of an interleaved scan in MCU order, or, when
+     * {@code jos} is null, counts the symbols that coding them produces.
+     */
+    private static void encodeScan(final JpegCoefficients coefficients, final int[] tableIndexes,
+            final JpegOutputStream jos, final HuffmanEncodingTable[] dcTables,
+            final HuffmanEncodingTable[] acTables, final long[][] dcFrequencies,
+            final long[][] acFrequencies) throws IOException {
+        final int componentCount = coefficients.getComponentCount();
+        final int xMCUs = coefficients.getBlocksPerLine(0) / coefficients.getComponent(0).horizontalSamplingFactor;
+        final int yMCUs = coefficients.getBlockRows(0) / coefficients.getComponent(0).verticalSamplingFactor;
+        final int[] predictions = new int[componentCount];
+        for (int mcuY = 0; mcuY < yMCUs; mcuY++) {
+            for (int mcuX = 0; mcuX < xMCUs; mcuX++) {
+                for (int i = 0; i < componentCount; i++) {
+                    final SofnSegment.Component component = coefficients.getComponent(i);
+                    final short[] blocks = coefficients.getCoefficients(i);
+                    final int blocksPerLine = coefficients.getBlocksPerLine(i);
+                    final int table = tableIndexes[i];
+                    for (int y = 0; y < component.verticalSamplingFactor; y++) {
+                        for (int x = 0; x < component.horizontalSamplingFactor; x++) {
+                            final int offset = 64 * ((mcuY * component.verticalSamplingFactor + y)
+                                    * blocksPerLine + mcuX * component.horizontalSamplingFactor + x);
+                            final int dc = blocks[offset];
+                            if (jos == null) {
+                                HuffmanEncodingTable.countBlock(blocks, offset, dc - predictions[i],
+                                        dcFrequencies[table], acFrequencies[table]);
+                            } else {
+                                jos.writeBlock(blocks, offset, dc - predictions[i],
+                                        dcTables[table], acTables[table]);
+                            }
+                            predictions[i] = dc;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the quantization tables the components use, and returns
+     * whether any has 16-bit entries, which baseline images can't have.
+     */
+    private static boolean writeQuantizationTables(final JpegOutputStream jos,
+            final JpegCoefficients coefficients) throws IOException {
+        final List<DqtSegment.QuantizationTable> tables = new ArrayList<>();
+        int length = 2;
+        for (int i = 0; i < coefficients.getComponentCount(); i++) {
+            final DqtSegment.QuantizationTable table =
+                    coefficients.getQuantizationTable(coefficients.getComponent(i).quantTabDestSelector);
+            if (!tables.contains(table)) {
+                tables.add(table);
+                length += 1 + 64 * (table.precision + 1);
+            }
+        }
+        boolean extended = false;
+        jos.write2Bytes(JpegConstants.DQT_MARKER);
+        jos.write2Bytes(length);
+        for (final DqtSegment.QuantizationTable table : tables) {
+            jos.write((table.precision << 4) | table.destinationIdentifier);
+            // the elements are in zig-zag order
+            for (final int element : table.getElements()) {
+                if (table.precision == 0) {
+                    jos.write(element);
+                } else {
+                    jos.write2Bytes(element);
+                }
+            }
+            extended |= table.precision != 0;
+        }
+        return extended;
+    }
+
+    private static void writeFrameHeader(final JpegOutputStream jos,
+            final JpegCoefficients coefficients, final boolean extended) throws IOException {
+        final int componentCount = coefficients.getComponentCount();
+        jos.write2Bytes(extended ? JpegConstants.SOF1_MARKER : JpegConstants.SOF0_MARKER);
+        jos.write2Bytes(8 + 3 * componentCount);
+        jos.write(coefficients.precision);
+        jos.write2Bytes(coefficients.height);
+        jos.write2Bytes(coefficients.width);
+        jos.write(componentCount);
+        for (int i = 0; i < componentCount; i++) {
+            final SofnSegment.Component component = coefficients.getComponent(i);
+            jos.write(component.componentIdentifier);
+            jos.write((component.horizontalSamplingFactor << 4) | component.verticalSamplingFactor);
+            jos.write(component.quantTabDestSelector);
+        }
+    }
+
+    private static void writeHuffmanTables(final JpegOutputStream jos,
+            final HuffmanEncodingTable[] dcTables, final HuffmanEncodingTable[] acTables)
+            throws IOException {
+        int length = 2;
+        for (int i = 0; i < dcTables.length; i++) {
+            length += 17 + dcTables[i].values.length + 17 + acTables[i].values.length;
+        }
+        jos.write2Bytes(JpegConstants.DHT_MARKER);
+        jos.write2Bytes(length);
+        for (int i = 0; i < dcTables.length; i++) {
+            for (int tableClass = 0; tableClass < 2; tableClass++) {
+                final HuffmanEncodingTable table = tableClass == 0 ? dcTables[i] : acTables[i];
+                // table class in the high nibble, identifier in the low one
+                jos.write((tableClass << 4) | i);
+                for (final int count : table.bits) {
+                    jos.write(count);
+                }
+                for (final int value : table.values) {
+                    jos.write(value);
+                }
+            }
+        }
+    }
+
+    private static void writeScanHeader(final JpegOutputStream jos,
+            final JpegCoefficients coefficients, final int[] tableIndexes) throws IOException {
+        final int componentCount = coefficients.getComponentCount();
+        jos.write2Bytes(JpegConstants.SOS_MARKER);
+        jos.write2Bytes(6 + 2 * componentCount);
+        jos.write(componentCount);
+        for (int i = 0; i < componentCount; i++) {
+            jos.write(coefficients.getComponent(i).componentIdentifier);
+            jos.write((tableIndexes[i] << 4) | tableIndexes[i]);
+        }
+        // spectral selection 0 to 63, no successive approximation
+        jos.write(0);
+        jos.write(63);
+        jos.write(0);
+    }
+}
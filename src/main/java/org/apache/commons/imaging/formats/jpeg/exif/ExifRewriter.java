@@ -20,19 +20,26 @@ import static org.apache.commons.imaging.common.BinaryFunctions.remainingBytes;
 import static org.apache.commons.imaging.common.BinaryFunctions.startsWith;
 
 import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.commons.imaging.ImageReadException;
 import org.apache.commons.imaging.ImageWriteException;
 import org.apache.commons.imaging.common.BinaryFileParser;
 import org.apache.commons.imaging.common.ByteConversions;
+import org.apache.commons.imaging.common.bytesource.BlockCache;
 import org.apache.commons.imaging.common.bytesource.ByteSource;
 import org.apache.commons.imaging.common.bytesource.ByteSourceArray;
 import org.apache.commons.imaging.common.bytesource.ByteSourceFile;
@@ -47,12 +54,24 @@ import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
 /**
  * Interface for Exif write/update/remove functionality for Jpeg/JFIF images.
  *
+ * <p>Only the segments in front of the image data are read into memory. The
+ * image data is copied straight from the source to the output; from a file to
+ * a {@code FileOutputStream}, the operating system copies it.</p>
+ *
+ * <p>{@link #updateExifMetadataInPlace(File, TiffOutputSet, int)} overwrites
+ * only the EXIF segment of a file when the new metadata fits in it.</p>
+ *
  * <p>See the source of the ExifMetadataUpdateExample class for example usage.</p>
  *
  * @see <a
  *      href="https://svn.apache.org/repos/asf/commons/proper/imaging/trunk/src/test/java/org/apache/commons/imaging/examples/WriteExifMetadataExample.java">org.apache.commons.imaging.examples.WriteExifMetadataExample</a>
  */
 public class ExifRewriter extends BinaryFileParser {
+    // input streams are read once, front to back, so only a little of
+    // them needs to stay cached
+    private static final long STREAM_MEMORY_LIMIT = 1024 * 1024;
+    private static final int FILL_BYTE = 0xff;
+
     /**
      * Constructor. to guess whether a file contains an image based on its file
      * extension.
@@ -120,17 +139,43 @@ public class ExifRewriter extends BinaryFileParser {
 
     private static class JFIFPieceImageData extends JFIFPiece {
         public final byte[] markerBytes;
-        public final byte[] imageData;
+        private final ByteSource byteSource;
+        private final long imageDataStart;
 
-        JFIFPieceImageData(final byte[] markerBytes, final byte[] imageData) {
+        JFIFPieceImageData(final byte[] markerBytes, final ByteSource byteSource,
+                final long imageDataStart) {
             this.markerBytes = markerBytes;
-            this.imageData = imageData;
+            this.byteSource = byteSource;
+            this.imageDataStart = imageDataStart;
         }
 
         @Override
         protected void write(final OutputStream os) throws IOException {
             os.write(markerBytes);
-            os.write(imageData);
+            // everything after the marker, up to the end of the source
+            byteSource.writeTo(imageDataStart, os);
+        }
+    }
+
+    private static ByteSource createStreamByteSource(final InputStream src) {
+        final ByteSourceInputStream byteSource = new ByteSourceInputStream(src, null,
+                STREAM_MEMORY_LIMIT);
+        byteSource.setForwardOnly(true);
+        return byteSource;
+    }
+
+    private static void invalidateCachedBlocks(final File file) {
+        final BlockCache blockCache = BlockCache.getShared();
+        if (blockCache != null) {
+            blockCache.invalidate(file);
+        }
+    }
+
+    private static void checkDistinctFiles(final File src, final File dst)
+            throws ImageWriteException, IOException {
+        // opening the destination would truncate the source
+        if (src.getCanonicalFile().equals(dst.getCanonicalFile())) {
+            throw new ImageWriteException("Source and destination are the same file: " + src);
         }
     }
 
@@ -142,12 +187,20 @@ public class ExifRewriter extends BinaryFileParser {
             // return false to exit before reading image data.
             @Override
             public boolean beginSOS() {
-                return true;
+                return false;
+            }
+
+            @Override
+            public boolean beginSOS(final int marker, final byte[] markerBytes,
+                    final long imageDataStart) {
+                // the image data is copied from the source when written
+                pieces.add(new JFIFPieceImageData(markerBytes, byteSource, imageDataStart));
+                return false;
             }
 
             @Override
             public void visitSOS(final int marker, final byte[] markerBytes, final byte[] imageData) {
-                pieces.add(new JFIFPieceImageData(markerBytes, imageData));
+                // not reached, the image data is never read
             }
 
             // return false to exit traversal.
@@ -210,8 +263,31 @@ public class ExifRewriter extends BinaryFileParser {
      */
     public void removeExifMetadata(final File src, final OutputStream os)
             throws ImageReadException, IOException, ImageWriteException {
-        final ByteSource byteSource = new ByteSourceFile(src);
-        removeExifMetadata(byteSource, os);
+        try (ByteSourceFile byteSource = new ByteSourceFile(src)) {
+            removeExifMetadata(byteSource, os);
+        }
+    }
+
+    /**
+     * Reads a Jpeg image, removes all EXIF metadata (by removing the APP1
+     * segment), and writes the result to another file. The image data is
+     * copied from file to file by the operating system.
+     *
+     * @param src
+     *            Image file.
+     * @param dst
+     *            File to write the image to; must not be the source file.
+     * @throws ImageReadException if it fails to read the JFIF segments
+     * @throws IOException if it fails to read the image data
+     * @throws ImageWriteException if it fails to write the updated data
+     */
+    public void removeExifMetadata(final File src, final File dst)
+            throws ImageReadException, IOException, ImageWriteException {
+        checkDistinctFiles(src, dst);
+        try (ByteSourceFile byteSource = new ByteSourceFile(src);
+                FileOutputStream os = new FileOutputStream(dst)) {
+            removeExifMetadata(byteSource, os);
+        }
     }
 
     /**
@@ -246,7 +322,7 @@ public class ExifRewriter extends BinaryFileParser {
      */
     public void removeExifMetadata(final InputStream src, final OutputStream os)
             throws ImageReadException, IOException, ImageWriteException {
-        final ByteSource byteSource = new ByteSourceInputStream(src, null);
+        final ByteSource byteSource = createStreamByteSource(src);
         removeExifMetadata(byteSource, os);
     }
 
@@ -273,7 +349,7 @@ public class ExifRewriter extends BinaryFileParser {
 
         // Debug.debug("pieces", pieces);
 
-        writeSegmentsReplacingExif(os, pieces, null);
+        writeSegmentsReplacingExif(os, pieces, null, 0);
     }
 
     /**
@@ -300,8 +376,37 @@ public class ExifRewriter extends BinaryFileParser {
     public void updateExifMetadataLossless(final File src, final OutputStream os,
             final TiffOutputSet outputSet) throws ImageReadException, IOException,
             ImageWriteException {
-        final ByteSource byteSource = new ByteSourceFile(src);
-        updateExifMetadataLossless(byteSource, os, outputSet);
+        try (ByteSourceFile byteSource = new ByteSourceFile(src)) {
+            updateExifMetadataLossless(byteSource, os, outputSet);
+        }
+    }
+
+    /**
+     * Reads a Jpeg image, replaces the EXIF metadata and writes the result to
+     * another file. The image data is copied from file to file by the
+     * operating system.
+     *
+     * <p>Note that this uses the "Lossless" approach, see
+     * {@link #updateExifMetadataLossless(File, OutputStream, TiffOutputSet)}.</p>
+     *
+     * @param src
+     *            Image file.
+     * @param dst
+     *            File to write the image to; must not be the source file.
+     * @param outputSet
+     *            TiffOutputSet containing the EXIF data to write.
+     * @throws ImageReadException if it fails to read the JFIF segments
+     * @throws IOException if it fails to read the image data
+     * @throws ImageWriteException if it fails to write the updated data
+     */
+    public void updateExifMetadataLossless(final File src, final File dst,
+            final TiffOutputSet outputSet) throws ImageReadException, IOException,
+            ImageWriteException {
+        checkDistinctFiles(src, dst);
+        try (ByteSourceFile byteSource = new ByteSourceFile(src);
+                FileOutputStream os = new FileOutputStream(dst)) {
+            updateExifMetadataLossless(byteSource, os, outputSet);
+        }
     }
 
     /**
@@ -356,7 +461,7 @@ public class ExifRewriter extends BinaryFileParser {
     public void updateExifMetadataLossless(final InputStream src, final OutputStream os,
             final TiffOutputSet outputSet) throws ImageReadException, IOException,
             ImageWriteException {
-        final ByteSource byteSource = new ByteSourceInputStream(src, null);
+        final ByteSource byteSource = createStreamByteSource(src);
         updateExifMetadataLossless(byteSource, os, outputSet);
     }
 
@@ -384,6 +489,12 @@ public class ExifRewriter extends BinaryFileParser {
     public void updateExifMetadataLossless(final ByteSource byteSource,
             final OutputStream os, final TiffOutputSet outputSet)
             throws ImageReadException, IOException, ImageWriteException {
+        updateExifMetadataLossless(byteSource, os, outputSet, 0);
+    }
+
+    private void updateExifMetadataLossless(final ByteSource byteSource,
+            final OutputStream os, final TiffOutputSet outputSet, final int padding)
+            throws ImageReadException, IOException, ImageWriteException {
         // List outputDirectories = outputSet.getDirectories();
         final JFIFPieces jfifPieces = analyzeJFIF(byteSource);
         final List<JFIFPiece> pieces = jfifPieces.pieces;
@@ -406,7 +517,7 @@ public class ExifRewriter extends BinaryFileParser {
         final boolean includeEXIFPrefix = true;
         final byte[] newBytes = writeExifSegment(writer, outputSet, includeEXIFPrefix);
 
-        writeSegmentsReplacingExif(os, pieces, newBytes);
+        writeSegmentsReplacingExif(os, pieces, newBytes, padding);
     }
 
     /**
@@ -455,7 +566,7 @@ public class ExifRewriter extends BinaryFileParser {
     public void updateExifMetadataLossy(final InputStream src, final OutputStream os,
             final TiffOutputSet outputSet) throws ImageReadException, IOException,
             ImageWriteException {
-        final ByteSource byteSource = new ByteSourceInputStream(src, null);
+        final ByteSource byteSource = createStreamByteSource(src);
         updateExifMetadataLossy(byteSource, os, outputSet);
     }
 
@@ -480,8 +591,37 @@ public class ExifRewriter extends BinaryFileParser {
     public void updateExifMetadataLossy(final File src, final OutputStream os,
             final TiffOutputSet outputSet) throws ImageReadException, IOException,
             ImageWriteException {
-        final ByteSource byteSource = new ByteSourceFile(src);
-        updateExifMetadataLossy(byteSource, os, outputSet);
+        try (ByteSourceFile byteSource = new ByteSourceFile(src)) {
+            updateExifMetadataLossy(byteSource, os, outputSet);
+        }
+    }
+
+    /**
+     * Reads a Jpeg image, replaces the EXIF metadata and writes the result to
+     * another file. The image data is copied from file to file by the
+     * operating system.
+     *
+     * <p>Note that this uses the "Lossy" approach, see
+     * {@link #updateExifMetadataLossy(File, OutputStream, TiffOutputSet)}.</p>
+     *
+     * @param src
+     *            Image file.
+     * @param dst
+     *            File to write the image to; must not be the source file.
+     * @param outputSet
+     *            TiffOutputSet containing the EXIF data to write.
+     * @throws ImageReadException if it fails to read the JFIF segments
+     * @throws IOException if it fails to read the image data
+     * @throws ImageWriteException if it fails to write the updated data
+     */
+    public void updateExifMetadataLossy(final File src, final File dst,
+            final TiffOutputSet outputSet) throws ImageReadException, IOException,
+            ImageWriteException {
+        checkDistinctFiles(src, dst);
+        try (ByteSourceFile byteSource = new ByteSourceFile(src);
+                FileOutputStream os = new FileOutputStream(dst)) {
+            updateExifMetadataLossy(byteSource, os, outputSet);
+        }
     }
 
     /**
@@ -514,14 +654,156 @@ public class ExifRewriter extends BinaryFileParser {
         final boolean includeEXIFPrefix = true;
         final byte[] newBytes = writeExifSegment(writer, outputSet, includeEXIFPrefix);
 
-        writeSegmentsReplacingExif(os, pieces, newBytes);
+        writeSegmentsReplacingExif(os, pieces, newBytes, 0);
+    }
+
+    /**
+     * Replaces the EXIF metadata of a Jpeg file. When the new EXIF segment
+     * fits in the space of the old one, only that space is overwritten and
+     * the rest of the file is left untouched; otherwise the file is rewritten
+     * to a temporary file which then replaces it.
+     *
+     * <p>The space of the old segment includes the fill bytes (0xFF, which
+     * Jpeg decoders skip) that follow it. A shorter segment leaves the rest
+     * of its space as fill bytes, and a rewrite reserves the given number of
+     * fill bytes, so later updates that grow the metadata a little can still
+     * be done in place.</p>
+     *
+     * <p>Note that this uses the "Lossless" approach, see
+     * {@link #updateExifMetadataLossless(File, OutputStream, TiffOutputSet)}.
+     * An interrupted in place update can leave a corrupt EXIF segment.</p>
+     *
+     * <p>The file is read without the block cache, and its blocks are
+     * discarded from the shared {@link BlockCache} afterwards, because an
+     * in place update need not change the length or the modification time
+     * of the file.</p>
+     *
+     * @param file
+     *            Image file to update.
+     * @param outputSet
+     *            TiffOutputSet containing the EXIF data to write.
+     * @param padding
+     *            the number of fill bytes to reserve after the EXIF segment
+     *            if the file has to be rewritten.
+     * @return true if the EXIF segment was updated in place, false if the
+     *         file was rewritten.
+     * @throws ImageReadException if it fails to read the JFIF segments
+     * @throws IOException if it fails to read or write the file
+     * @throws ImageWriteException if it fails to write the updated data
+     */
+    public boolean updateExifMetadataInPlace(final File file,
+            final TiffOutputSet outputSet, final int padding)
+            throws ImageReadException, IOException, ImageWriteException {
+        if (padding < 0) {
+            throw new ImageWriteException("Invalid padding: " + padding);
+        }
+
+        long exifStart = -1;
+        int exifSpace = 0;
+        byte[] exifBytes = null;
+        // the source is closed before the file is written
+        try (ByteSourceFile byteSource = new ByteSourceFile(file, null)) {
+            exifStart = findExifSegment(byteSource);
+            if (exifStart >= 0) {
+                final byte[] markerBytes = byteSource.getBlock(exifStart, 4);
+                final int segmentLength = ByteConversions.toUInt16(markerBytes, 2, getByteOrder());
+                exifSpace = 2 + segmentLength + countFillBytes(byteSource, exifStart + 2 + segmentLength);
+                exifBytes = byteSource.getBlock(exifStart + 4 + 6, segmentLength - 2 - 6);
+            }
+        }
+
+        if (exifBytes != null) {
+            final TiffImageWriterBase writer = new TiffImageWriterLossless(outputSet.byteOrder, exifBytes);
+            final byte[] newBytes = writeExifSegment(writer, outputSet, true);
+            final int markerLength = newBytes.length + 2;
+            if (markerLength <= 0xffff && 2 + markerLength <= exifSpace) {
+                final byte[] space = new byte[exifSpace];
+                System.arraycopy(ByteConversions.toBytes((short) JpegConstants.JPEG_APP1_MARKER, getByteOrder()),
+                        0, space, 0, 2);
+                System.arraycopy(ByteConversions.toBytes((short) markerLength, getByteOrder()), 0, space, 2, 2);
+                System.arraycopy(newBytes, 0, space, 4, newBytes.length);
+                Arrays.fill(space, 2 + markerLength, exifSpace, (byte) FILL_BYTE);
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    raf.seek(exifStart);
+                    raf.write(space);
+                } finally {
+                    invalidateCachedBlocks(file);
+                }
+                return true;
+            }
+        }
+
+        // opening the file for the output would truncate it
+        final Path path = file.toPath();
+        final File tempFile = File.createTempFile("exif", ".tmp", file.getAbsoluteFile().getParentFile());
+        try {
+            try (ByteSourceFile byteSource = new ByteSourceFile(file, null);
+                    FileOutputStream os = new FileOutputStream(tempFile)) {
+                updateExifMetadataLossless(byteSource, os, outputSet, padding);
+            }
+            final PosixFileAttributeView view = Files.getFileAttributeView(path, PosixFileAttributeView.class);
+            if (view != null) {
+                Files.setPosixFilePermissions(tempFile.toPath(), view.readAttributes().permissions());
+            }
+            Files.move(tempFile.toPath(), path, StandardCopyOption.REPLACE_EXISTING);
+            invalidateCachedBlocks(file);
+        } finally {
+            if (tempFile.exists() && !tempFile.delete()) {
+                tempFile.deleteOnExit();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the offset of the only EXIF segment of the source, or -1 if it
+     * has none or more than one, reading just the segment headers.
+     */
+    private long findExifSegment(final ByteSource byteSource) throws ImageReadException, IOException {
+        final JpegUtils jpegUtils = new JpegUtils();
+        final long exifStart = jpegUtils.findExifSegment(byteSource, JpegConstants.SOI.size());
+        if (exifStart < 0) {
+            return -1;
+        }
+        final int segmentLength = ByteConversions.toUInt16(byteSource.getBlock(exifStart + 2, 2), getByteOrder());
+        if (jpegUtils.findExifSegment(byteSource, exifStart + 2 + segmentLength) >= 0) {
+            // a rewrite keeps only the first one
+            return -1;
+        }
+        return exifStart;
+    }
+
+    /**
+     * Counts the fill bytes in front of the marker at or after the given
+     * offset.
+     */
+    private static int countFillBytes(final ByteSource byteSource, final long start) throws IOException {
+        final long length = byteSource.getLength();
+        int count = 0;
+        while (true) {
+            final int blockLength = (int) Math.min(4096, length - start - count);
+            if (blockLength < 2) {
+                return count;
+            }
+            final byte[] block = byteSource.getBlock(start + count, blockLength);
+            // the last 0xFF belongs to the marker
+            int i = 0;
+            while (i + 1 < blockLength && (0xff & block[i]) == FILL_BYTE
+                    && (0xff & block[i + 1]) == FILL_BYTE) {
+                i++;
+            }
+            count += i;
+            if (i + 1 < blockLength) {
+                return count;
+            }
+        }
     }
 
     private void writeSegmentsReplacingExif(final OutputStream outputStream,
-            final List<JFIFPiece> segments, final byte[] newBytes)
+            final List<JFIFPiece> segments, final byte[] newBytes, final int padding)
             throws ImageWriteException, IOException {
 
-        try (DataOutputStream os = new DataOutputStream(outputStream)) {
+        try (OutputStream os = outputStream) {
             JpegConstants.SOI.writeTo(os);
 
             boolean hasExif = false;
@@ -576,6 +858,12 @@ public class ExifRewriter extends BinaryFileParser {
                     os.write(markerBytes);
                     os.write(markerLengthBytes);
                     os.write(newBytes);
+                    if (padding > 0) {
+                        // one write, the stream may be unbuffered
+                        final byte[] fill = new byte[padding];
+                        Arrays.fill(fill, (byte) FILL_BYTE);
+                        os.write(fill);
+                    }
                 } else {
                     piece.write(os);
                 }
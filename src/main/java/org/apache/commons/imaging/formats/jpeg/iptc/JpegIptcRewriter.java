@@ -88,8 +88,9 @@ public class JpegIptcRewriter extends JpegRewriter {
      */
     public void removeIPTC(final File src, final OutputStream os, final boolean removeSegment)
             throws ImageReadException, IOException, ImageWriteException {
-        final ByteSource byteSource = new ByteSourceFile(src);
-        removeIPTC(byteSource, os, removeSegment);
+        try (ByteSourceFile byteSource = new ByteSourceFile(src)) {
+            removeIPTC(byteSource, os, removeSegment);
+        }
     }
 
     /**
@@ -315,8 +316,9 @@ public class JpegIptcRewriter extends JpegRewriter {
      */
     public void writeIPTC(final File src, final OutputStream os, final PhotoshopApp13Data newData)
             throws ImageReadException, IOException, ImageWriteException {
-        final ByteSource byteSource = new ByteSourceFile(src);
-        writeIPTC(byteSource, os, newData);
+        try (ByteSourceFile byteSource = new ByteSourceFile(src)) {
+            writeIPTC(byteSource, os, newData);
+        }
     }
 
     /**
@@ -28,6 +28,11 @@ public class DhtSegment extends Segment {
     public final List<HuffmanTable> huffmanTables;
 
     public static class HuffmanTable {
+        /**
+         * The number of bits resolved by the lookup tables.
+         */
+        public static final int LOOKAHEAD_BITS = 9;
+
         // some arrays are better off one-based
         // to avoid subtractions by one later when indexing them
         public final int tableClass;
@@ -40,6 +45,9 @@ public class DhtSegment extends Segment {
         private final int[] minCode = new int[1 + 16]; // 1-based
         private final int[] maxCode = new int[1 + 16]; // 1-based
         private final int[] valPtr = new int[1 + 16]; // 1-based
+        // indexed by the next LOOKAHEAD_BITS bits of the entropy-coded data:
+        private final int[] lookup = new int[1 << LOOKAHEAD_BITS];
+        private final int[] coefficientLookup = new int[1 << LOOKAHEAD_BITS];
 
         HuffmanTable(final int tableClass, final int destinationIdentifier,
                 final int[] bits, final int[] huffVal) {
@@ -115,6 +123,58 @@ public class DhtSegment extends Segment {
                 }
             }
 
+            for (k = 0; k < huffCode.length; k++) {
+                final int size = huffSize[k];
+                // codes that overflow their length only occur in corrupt tables
+                if (size > LOOKAHEAD_BITS || (huffCode[k] >> size) != 0) {
+                    continue;
+                }
+                final int symbol = huffVal[k];
+                final int ssss = symbol & 0xf;
+                final int first = huffCode[k] << (LOOKAHEAD_BITS - size);
+                final int count = 1 << (LOOKAHEAD_BITS - size);
+                for (int n = 0; n < count; n++) {
+                    lookup[first + n] = (size << 8) | symbol;
+                    if (ssss != 0 && size + ssss <= LOOKAHEAD_BITS) {
+                        // the extra bits follow the code within the lookahead
+                        final int extraBits = (n >> (LOOKAHEAD_BITS - size - ssss)) & ((1 << ssss) - 1);
+                        int value = extraBits;
+                        // "EXTEND", section F.2.2.1, figure F.12, page 105 of T.81
+                        if (value < (1 << (ssss - 1))) {
+                            value += (-1 << ssss) + 1;
+                        }
+                        coefficientLookup[first + n] = (value << 16)
+                                | ((symbol >> 4) << 8) | (size + ssss);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Looks up the code starting with the given bits.
+         *
+         * @param bits the next {@link #LOOKAHEAD_BITS} bits of entropy-coded
+         * data, most significant first
+         * @return {@code (codeLength << 8) | symbol}, or 0 if the code is
+         * longer than {@link #LOOKAHEAD_BITS}
+         */
+        public int getLookup(final int bits) {
+            return lookup[bits];
+        }
+
+        /**
+         * Looks up the code starting with the given bits together with the
+         * additional bits of the coefficient value that follow it.
+         *
+         * @param bits the next {@link #LOOKAHEAD_BITS} bits of entropy-coded
+         * data, most significant first
+         * @return {@code (value << 16) | (run << 8) | totalLength}, where the
+         * value is the sign-extended coefficient, or 0 if the code has no
+         * additional bits or the code and its additional bits are longer
+         * than {@link #LOOKAHEAD_BITS}
+         */
+        public int getCoefficientLookup(final int bits) {
+            return coefficientLookup[bits];
         }
 
         public int getHuffVal(final int i) {
@@ -55,8 +55,9 @@ public class JpegXmpRewriter extends JpegRewriter {
      */
     public void removeXmpXml(final File src, final OutputStream os)
             throws ImageReadException, IOException {
-        final ByteSource byteSource = new ByteSourceFile(src);
-        removeXmpXml(byteSource, os);
+        try (ByteSourceFile byteSource = new ByteSourceFile(src)) {
+            removeXmpXml(byteSource, os);
+        }
     }
 
     /**
@@ -171,8 +172,9 @@ public class JpegXmpRewriter extends JpegRewriter {
      */
     public void updateXmpXml(final File src, final OutputStream os, final String xmpXml)
             throws ImageReadException, IOException, ImageWriteException {
-        final ByteSource byteSource = new ByteSourceFile(src);
-        updateXmpXml(byteSource, os, xmpXml);
+        try (ByteSourceFile byteSource = new ByteSourceFile(src)) {
+            updateXmpXml(byteSource, os, xmpXml);
+        }
     }
 
     /**
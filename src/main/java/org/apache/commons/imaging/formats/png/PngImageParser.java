@@ -28,13 +28,14 @@ import java.awt.color.ICC_ColorSpace;
 import java.awt.color.ICC_Profile;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -52,7 +53,9 @@ import org.apache.commons.imaging.ImageWriteException;
 import org.apache.commons.imaging.common.GenericImageMetadata;
 import org.apache.commons.imaging.common.ImageMetadata;
 import org.apache.commons.imaging.common.XmpEmbeddable;
+import org.apache.commons.imaging.common.bytesource.ByteBufferInputStream;
 import org.apache.commons.imaging.common.bytesource.ByteSource;
+import org.apache.commons.imaging.common.bytesource.ByteSourceInputStream;
 import org.apache.commons.imaging.formats.png.chunks.PngChunk;
 import org.apache.commons.imaging.formats.png.chunks.PngChunkGama;
 import org.apache.commons.imaging.formats.png.chunks.PngChunkIccp;
@@ -151,7 +154,21 @@ public class PngImageParser extends ImageParser  implements XmpEmbeddable {
 
     private List<PngChunk> readChunks(final InputStream is, final ChunkType[] chunkTypes,
             final boolean returnAfterFirst) throws ImageReadException, IOException {
+        return readChunks(is, chunkTypes, returnAfterFirst, null, null);
+    }
+
+    /**
+     * Reads chunks from a stream positioned just after the signature. When
+     * {@code imageData} is not null, the data of IDAT chunks is added to it
+     * instead of being returned as chunk objects; if {@code imageDataSource}
+     * is also given, the data is taken as block views on that source rather
+     * than copied out of the stream.
+     */
+    private List<PngChunk> readChunks(final InputStream is, final ChunkType[] chunkTypes,
+            final boolean returnAfterFirst, final ByteSource imageDataSource,
+            final List<ByteBuffer> imageData) throws ImageReadException, IOException {
         final List<PngChunk> result = new ArrayList<>();
+        long position = PngConstants.PNG_SIGNATURE.size();
 
         while (true) {
             final int length = read4Bytes("Length", is, "Not a Valid PNG File", getByteOrder());
@@ -165,6 +182,20 @@ public class PngImageParser extends ImageParser  implements XmpEmbeddable {
                 debugNumber("Length", length, 4);
             }
             final boolean keep = keepChunk(chunkType, chunkTypes);
+            final long dataOffset = position + 8;
+            position = dataOffset + length + 4;
+
+            if (keep && imageData != null && chunkType == ChunkType.IDAT.value) {
+                if (imageDataSource != null) {
+                    skipBytes(is, length, "Not a Valid PNG File");
+                    imageData.add(imageDataSource.getBlockBuffer(dataOffset, length));
+                } else {
+                    imageData.add(ByteBuffer.wrap(readBytes("Chunk Data", is, length,
+                            "Not a Valid PNG File: Couldn't read Chunk Data.")));
+                }
+                read4Bytes("CRC", is, "Not a Valid PNG File", getByteOrder());
+                continue;
+            }
 
             byte[] bytes = null;
             if (keep) {
@@ -484,6 +515,16 @@ public class PngImageParser extends ImageParser  implements XmpEmbeddable {
                 physicalScale);
     }
 
+    private List<PngChunk> readChunks(final ByteSource byteSource, final ChunkType[] chunkTypes,
+            final List<ByteBuffer> imageData) throws ImageReadException, IOException {
+        // stream sources are read sequentially; a block view would rescan the cache
+        final ByteSource imageDataSource = byteSource instanceof ByteSourceInputStream ? null : byteSource;
+        try (InputStream is = byteSource.getInputStream()) {
+            readSignature(is);
+            return readChunks(is, chunkTypes, false, imageDataSource, imageData);
+        }
+    }
+
     @Override
     public BufferedImage getBufferedImage(final ByteSource byteSource, Map<String, Object> params)
             throws ImageReadException, IOException {
@@ -494,15 +535,32 @@ public class PngImageParser extends ImageParser  implements XmpEmbeddable {
         // throw new ImageWriteException("Unknown parameter: " + firstKey);
         // }
 
-        final List<PngChunk> chunks = readChunks(byteSource, new ChunkType[] {
-                ChunkType.IHDR,
-                ChunkType.PLTE,
-                ChunkType.IDAT,
-                ChunkType.tRNS,
-                ChunkType.iCCP,
-                ChunkType.gAMA,
-                ChunkType.sRGB,
-            }, false);
+        // the chunks are read once, front to back; the caller's setting
+        // is restored afterwards
+        ByteSourceInputStream streamSource = null;
+        boolean forwardOnly = false;
+        if (byteSource instanceof ByteSourceInputStream) {
+            streamSource = (ByteSourceInputStream) byteSource;
+            forwardOnly = streamSource.isForwardOnly();
+            streamSource.setForwardOnly(true);
+        }
+        final List<ByteBuffer> imageData = new ArrayList<>();
+        final List<PngChunk> chunks;
+        try {
+            chunks = readChunks(byteSource, new ChunkType[] {
+                    ChunkType.IHDR,
+                    ChunkType.PLTE,
+                    ChunkType.IDAT,
+                    ChunkType.tRNS,
+                    ChunkType.iCCP,
+                    ChunkType.gAMA,
+                    ChunkType.sRGB,
+                }, imageData);
+        } finally {
+            if (streamSource != null) {
+                streamSource.setForwardOnly(forwardOnly);
+            }
+        }
 
         if ((chunks == null) || (chunks.isEmpty())) {
             throw new ImageReadException("PNG: no chunks");
@@ -527,23 +585,15 @@ public class PngImageParser extends ImageParser  implements XmpEmbeddable {
 
         // -----
 
-        final List<PngChunk> IDATs = filterChunks(chunks, ChunkType.IDAT);
-        if (IDATs.isEmpty()) {
+        if (imageData.isEmpty()) {
             throw new ImageReadException("PNG missing image data");
         }
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        for (final PngChunk IDAT : IDATs) {
-            final PngChunkIdat pngChunkIDAT = (PngChunkIdat) IDAT;
-            final byte[] bytes = pngChunkIDAT.getBytes();
-            // System.out.println(i + ": bytes: " + bytes.length);
-            baos.write(bytes);
+        final List<InputStream> compressed = new ArrayList<>(imageData.size());
+        for (final ByteBuffer buffer : imageData) {
+            compressed.add(new ByteBufferInputStream(buffer));
         }
 
-        final byte[] compressed = baos.toByteArray();
-
-        baos = null;
-
         TransparencyFilter transparencyFilter = null;
 
         final List<PngChunk> tRNSs = filterChunks(chunks, ChunkType.tRNS);
@@ -624,8 +674,8 @@ public class PngImageParser extends ImageParser  implements XmpEmbeddable {
                 result = getBufferedImageFactory(params).getColorBufferedImage(width, height, hasAlpha);
             }
 
-            final ByteArrayInputStream bais = new ByteArrayInputStream(compressed);
-            final InflaterInputStream iis = new InflaterInputStream(bais);
+            final InflaterInputStream iis = new InflaterInputStream(
+                    new SequenceInputStream(Collections.enumeration(compressed)));
 
             ScanExpediter scanExpediter;
 
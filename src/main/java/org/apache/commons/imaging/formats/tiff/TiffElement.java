@@ -16,6 +16,7 @@
  */
 package org.apache.commons.imaging.formats.tiff;
 
+import java.nio.ByteBuffer;
 import java.util.Comparator;
 
 public abstract class TiffElement {
@@ -51,6 +52,17 @@ public abstract class TiffElement {
             return data.clone();
         }
 
+        /**
+         * Gets a read-only view of the element data. Unlike
+         * {@link #getData()}, this does not copy the data when it is
+         * already held in memory.
+         *
+         * @return a read-only buffer holding the element data
+         */
+        public ByteBuffer getDataBuffer() {
+            return ByteBuffer.wrap(data).asReadOnlyBuffer();
+        }
+
         public int getDataLength() {
             return data.length;
         }
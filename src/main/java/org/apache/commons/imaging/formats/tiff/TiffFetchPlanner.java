@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.imaging.formats.tiff;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.imaging.common.bytesource.ByteSource;
+
+/**
+ * Plans the reads of strip and tile data for a TIFF image.
+ * <p>
+ * The data readers ask for the strips or tiles that intersect the region
+ * being decoded. Elements whose byte ranges are adjacent, or separated by
+ * no more than the gap threshold, are fetched from the byte source with
+ * a single read. This reduces the number of requests on slow or remote
+ * file systems at the cost of also reading the bytes in the gaps.
+ * <p>
+ * An instance may be supplied to the TIFF parser with
+ * {@link org.apache.commons.imaging.formats.tiff.constants.TiffConstants#PARAM_KEY_FETCH_PLANNER}
+ * to change the thresholds and to inspect the counters after decoding.
+ * The counters are thread-safe, so one instance may be shared by
+ * concurrent reads.
+ */
+public class TiffFetchPlanner {
+    public static final int DEFAULT_GAP_THRESHOLD = 8 * 1024;
+    public static final int DEFAULT_MAX_READ_SIZE = 4 * 1024 * 1024;
+
+    private final int gapThreshold;
+    private final int maxReadSize;
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesUsed = new AtomicLong();
+    private final AtomicLong readCount = new AtomicLong();
+
+    public TiffFetchPlanner() {
+        this(DEFAULT_GAP_THRESHOLD, DEFAULT_MAX_READ_SIZE);
+    }
+
+    /**
+     * Constructs a planner.
+     *
+     * @param gapThreshold the largest number of unused bytes between two
+     *            elements that are still fetched with one read; zero merges
+     *            only adjacent elements, a negative value disables merging
+     * @param maxReadSize the largest merged read, in bytes; a single
+     *            element larger than this is still read whole
+     */
+    public TiffFetchPlanner(final int gapThreshold, final int maxReadSize) {
+        this.gapThreshold = gapThreshold;
+        this.maxReadSize = maxReadSize;
+    }
+
+    public int getGapThreshold() {
+        return gapThreshold;
+    }
+
+    public int getMaxReadSize() {
+        return maxReadSize;
+    }
+
+    /**
+     * Gets the number of bytes read from byte sources, including gaps.
+     *
+     * @return the number of bytes read
+     */
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    /**
+     * Gets the number of strip and tile bytes handed to the decoders.
+     *
+     * @return the number of bytes used
+     */
+    public long getBytesUsed() {
+        return bytesUsed.get();
+    }
+
+    /**
+     * Gets the number of reads issued to byte sources.
+     *
+     * @return the number of reads
+     */
+    public long getReadCount() {
+        return readCount.get();
+    }
+
+    public void resetCounters() {
+        bytesRead.set(0);
+        bytesUsed.set(0);
+        readCount.set(0);
+    }
+
+    /**
+     * Plans the reads for a set of elements.
+     *
+     * @param elements all strip or tile elements of the image
+     * @param needed the indices of the elements that will be decoded
+     * @return a fetch that serves the data of the needed elements
+     */
+    public Fetch plan(final TiffElement.DataElement[] elements, final int[] needed) {
+        return new Fetch(elements, needed);
+    }
+
+    /**
+     * The reads planned for one decoding pass. Merged ranges are read when
+     * the first of their elements is requested and released once all of
+     * their elements have been handed out.
+     */
+    public final class Fetch {
+        private final TiffElement.DataElement[] elements;
+        private final int[] rangeOfElement;
+        private final long[] rangeStart;
+        private final int[] rangeLength;
+        private final int[] rangePending;
+        private final ByteBuffer[] rangeData;
+
+        Fetch(final TiffElement.DataElement[] elements, final int[] needed) {
+            this.elements = elements;
+            rangeOfElement = new int[elements.length];
+            Arrays.fill(rangeOfElement, -1);
+
+            // order the deferred elements by file offset
+            final int[] sorted = Arrays.stream(needed).distinct()
+                    .filter(i -> elements[i] instanceof TiffImageData.ByteSourceData)
+                    .boxed()
+                    .sorted((a, b) -> Long.compare(elements[a].offset, elements[b].offset))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+
+            final long[] starts = new long[sorted.length];
+            final int[] lengths = new int[sorted.length];
+            final int[] pending = new int[sorted.length];
+            int nRanges = 0;
+            ByteSource source = null;
+            long end = 0;
+            for (final int index : sorted) {
+                final TiffImageData.ByteSourceData element = (TiffImageData.ByteSourceData) elements[index];
+                final long elementEnd = element.offset + element.length;
+                final boolean merge = nRanges > 0
+                        && gapThreshold >= 0
+                        && element.byteSource == source
+                        && element.offset - end <= gapThreshold
+                        && Math.max(end, elementEnd) - starts[nRanges - 1] <= maxReadSize;
+                if (merge) {
+                    end = Math.max(end, elementEnd);
+                    lengths[nRanges - 1] = (int) (end - starts[nRanges - 1]);
+                } else {
+                    source = element.byteSource;
+                    starts[nRanges] = element.offset;
+                    lengths[nRanges] = element.length;
+                    end = elementEnd;
+                    nRanges++;
+                }
+                rangeOfElement[index] = nRanges - 1;
+                pending[nRanges - 1]++;
+            }
+            rangeStart = Arrays.copyOf(starts, nRanges);
+            rangeLength = Arrays.copyOf(lengths, nRanges);
+            rangePending = Arrays.copyOf(pending, nRanges);
+            rangeData = new ByteBuffer[nRanges];
+        }
+
+        /**
+         * Gets the number of reads this fetch will issue.
+         *
+         * @return the number of merged ranges
+         */
+        public int getRangeCount() {
+            return rangeStart.length;
+        }
+
+        /**
+         * Gets the data of an element.
+         *
+         * @param index the index of the element
+         * @return the element data
+         * @throws IOException if the data cannot be read
+         */
+        public byte[] getData(final int index) throws IOException {
+            final ByteBuffer buffer = getDataBuffer(index);
+            final byte[] data = new byte[buffer.remaining()];
+            buffer.get(data);
+            return data;
+        }
+
+        /**
+         * Gets a read-only view of the data of an element. Ranges are read
+         * with {@link ByteSource#getBlockBuffer(long, int)}, so sources that
+         * hold their data in memory are not copied.
+         *
+         * @param index the index of the element
+         * @return a read-only buffer holding the element data
+         * @throws IOException if the data cannot be read
+         */
+        public ByteBuffer getDataBuffer(final int index) throws IOException {
+            final TiffElement.DataElement element = elements[index];
+            final int range = rangeOfElement[index];
+            if (range < 0) {
+                // not planned, or already held in memory
+                if (element instanceof TiffImageData.ByteSourceData) {
+                    bytesRead.addAndGet(element.length);
+                    readCount.incrementAndGet();
+                }
+                bytesUsed.addAndGet(element.length);
+                return element.getDataBuffer();
+            }
+
+            ByteBuffer data = rangeData[range];
+            if (data == null) {
+                final ByteSource source = ((TiffImageData.ByteSourceData) element).byteSource;
+                data = source.getBlockBuffer(rangeStart[range], rangeLength[range]);
+                bytesRead.addAndGet(data.remaining());
+                readCount.incrementAndGet();
+                rangeData[range] = data;
+            }
+            // a released range that is asked for again is simply re-read
+            if (rangePending[range] <= 1) {
+                rangePending[range] = 0;
+                rangeData[range] = null;
+            } else {
+                rangePending[range]--;
+            }
+
+            bytesUsed.addAndGet(element.length);
+            final int start = (int) (element.offset - rangeStart[range]);
+            final ByteBuffer view = data.duplicate();
+            view.position(start);
+            view.limit(start + element.length);
+            return view.slice();
+        }
+    }
+
+}
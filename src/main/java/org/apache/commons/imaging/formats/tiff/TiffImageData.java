@@ -17,11 +17,12 @@
 package org.apache.commons.imaging.formats.tiff;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
 import org.apache.commons.imaging.ImageReadException;
 import org.apache.commons.imaging.ImagingConstants;
-import org.apache.commons.imaging.common.bytesource.ByteSourceFile;
+import org.apache.commons.imaging.common.bytesource.ByteSource;
 import org.apache.commons.imaging.formats.tiff.constants.TiffPlanarConfiguration;
 import org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants;
 import org.apache.commons.imaging.formats.tiff.datareaders.DataReaderStrips;
@@ -163,11 +164,11 @@ public abstract class TiffImageData {
     }
 
     public static class ByteSourceData extends Data {
-        ByteSourceFile byteSourceFile;
+        ByteSource byteSource;
 
-        public ByteSourceData(final long offset, final int length, final ByteSourceFile byteSource) {
+        public ByteSourceData(final long offset, final int length, final ByteSource byteSource) {
             super(offset, length, ImagingConstants.EMPTY_BYTE_ARRAY);
-            byteSourceFile = byteSource;
+            this.byteSource = byteSource;
         }
 
         @Override
@@ -178,11 +179,25 @@ public abstract class TiffImageData {
         @Override
         public byte[] getData() {
             try {
-                return byteSourceFile.getBlock(offset, length);
+                return byteSource.getBlock(offset, length);
             } catch (final IOException ioex) {
                 return ImagingConstants.EMPTY_BYTE_ARRAY;
             }
         }
+
+        @Override
+        public int getDataLength() {
+            return length;
+        }
+
+        @Override
+        public ByteBuffer getDataBuffer() {
+            try {
+                return byteSource.getBlockBuffer(offset, length);
+            } catch (final IOException ioex) {
+                return ByteBuffer.wrap(ImagingConstants.EMPTY_BYTE_ARRAY);
+            }
+        }
     }
 
     private static int extractSampleFormat(final TiffDirectory directory) throws ImageReadException {
@@ -685,11 +685,22 @@ public class TiffImageParser extends ImageParser implements XmpEmbeddable {
           samplesPerPixel, width, height, compression,
           planarConfiguration, byteOrder);
 
+        setFetchPlanner(dataReader, params);
+
         final ImageBuilder iBuilder = dataReader.readImageData(
             subImage, hasAlpha, isAlphaPremultiplied);
         return iBuilder.getBufferedImage();
     }
 
+    private void setFetchPlanner(final ImageDataReader dataReader, final Map<String, Object> params) {
+        final Object fetchPlanner = params == null
+            ? null
+            : params.get(TiffConstants.PARAM_KEY_FETCH_PLANNER);
+        if (fetchPlanner instanceof TiffFetchPlanner) {
+            dataReader.setFetchPlanner((TiffFetchPlanner) fetchPlanner);
+        }
+    }
+
     private PhotometricInterpreter getPhotometricInterpreter(
             final TiffDirectory directory, final int photometricInterpretation,
             final int bitsPerPixel, final int[] bitsPerSample, final int predictor,
@@ -923,6 +934,8 @@ public class TiffImageParser extends ImageParser implements XmpEmbeddable {
           samplesPerPixel, width, height, compression,
           TiffPlanarConfiguration.CHUNKY, byteOrder);
 
+        setFetchPlanner(dataReader, params);
+
         return dataReader.readRasterData(subImage);
     }
 
@@ -37,7 +37,7 @@ import org.apache.commons.imaging.ImagingConstants;
 import org.apache.commons.imaging.common.BinaryFileParser;
 import org.apache.commons.imaging.common.ByteConversions;
 import org.apache.commons.imaging.common.bytesource.ByteSource;
-import org.apache.commons.imaging.common.bytesource.ByteSourceFile;
+import org.apache.commons.imaging.common.bytesource.ByteSourceInputStream;
 import org.apache.commons.imaging.formats.jpeg.JpegConstants;
 import org.apache.commons.imaging.formats.tiff.TiffDirectory.ImageDataElement;
 import org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants;
@@ -424,12 +424,18 @@ public class TiffReader extends BinaryFileParser {
         final List<ImageDataElement> elements = directory.getTiffRawImageDataElements();
         final TiffImageData.Data[] data = new TiffImageData.Data[elements.size()];
 
-        if (byteSource instanceof ByteSourceFile) {
-            final ByteSourceFile bsf = (ByteSourceFile) byteSource;
+        // Sources with cheap random access load strips and tiles on demand;
+        // stream sources are read up front while their cache is warm.
+        if (!(byteSource instanceof ByteSourceInputStream)) {
             for (int i = 0; i < elements.size(); i++) {
                 final TiffDirectory.ImageDataElement element = elements.get(i);
+                if (element.offset + element.length > byteSource.getLength()) {
+                    throw new IOException("Could not read block (block start: "
+                            + element.offset + ", block length: " + element.length
+                            + ", data length: " + byteSource.getLength() + ").");
+                }
                 data[i] = new TiffImageData.ByteSourceData(element.offset,
-                        element.length, bsf);
+                        element.length, byteSource);
             }
         } else {
             for (int i = 0; i < elements.size(); i++) {
@@ -86,6 +86,16 @@ public final class TiffConstants {
     public static final String PARAM_KEY_CUSTOM_PHOTOMETRIC_INTERPRETER
         = "CUSTOM_PHOTOMETRIC_INTERPRETER";
 
+    /**
+     * Specifies how strip and tile data are fetched when reading an image.
+     * <p>
+     * The value supplied with this key should be an instance of
+     * TiffFetchPlanner. Its thresholds control how nearby byte ranges are
+     * merged into single reads, and its counters report the bytes read
+     * and used once the read completes.
+     */
+    public static final String PARAM_KEY_FETCH_PLANNER = "FETCH_PLANNER";
+
     /**
      * Specifies the amount of memory in bytes to be used for a strip
      * or tile size when employing LZW compression.  The default is
@@ -20,12 +20,14 @@ package org.apache.commons.imaging.formats.tiff.datareaders;
 import java.awt.Rectangle;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
 import org.apache.commons.imaging.ImageReadException;
 import org.apache.commons.imaging.common.ImageBuilder;
 import org.apache.commons.imaging.formats.tiff.TiffRasterData;
 import org.apache.commons.imaging.formats.tiff.TiffDirectory;
+import org.apache.commons.imaging.formats.tiff.TiffFetchPlanner;
 import org.apache.commons.imaging.formats.tiff.TiffImageData;
 import org.apache.commons.imaging.formats.tiff.constants.TiffPlanarConfiguration;
 import org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants;
@@ -247,6 +249,18 @@ public final class DataReaderStrips extends ImageDataReader {
     }
 
 
+    private TiffFetchPlanner.Fetch planFetch(final int strip0, final int strip1,
+            final int nPlanes, final int nStripsInPlane) {
+        final int[] needed = new int[(strip1 - strip0 + 1) * nPlanes];
+        int k = 0;
+        for (int strip = strip0; strip <= strip1; strip++) {
+            for (int iPlane = 0; iPlane < nPlanes; iPlane++) {
+                needed[k++] = iPlane * nStripsInPlane + strip;
+            }
+        }
+        return fetchPlanner.plan(imageData.getImageData(), needed);
+    }
+
     @Override
     public ImageBuilder readImageData(final Rectangle subImageSpecification,
         final boolean hasAlpha,
@@ -290,6 +304,7 @@ public final class DataReaderStrips extends ImageDataReader {
                 new ImageBuilder(width, workingHeight,
                     hasAlpha, isAlphaPremultiplied);
         if (planarConfiguration != TiffPlanarConfiguration.PLANAR) {
+            final TiffFetchPlanner.Fetch fetch = planFetch(strip0, strip1, 1, 0);
             for (int strip = strip0; strip <= strip1; strip++) {
                 final long rowsPerStripLong = 0xFFFFffffL & rowsPerStrip;
                 final long rowsRemaining = height - (strip * rowsPerStripLong);
@@ -298,7 +313,7 @@ public final class DataReaderStrips extends ImageDataReader {
                 final long bytesPerStrip = rowsInThisStrip * bytesPerRow;
                 final long pixelsPerStrip = rowsInThisStrip * width;
 
-                final byte[] compressed = imageData.getImageData(strip).getData();
+                final ByteBuffer compressed = fetch.getDataBuffer(strip);
 
                 final byte[] decompressed = decompress(compressed, compression,
                   (int) bytesPerStrip, width, (int) rowsInThisStrip);
@@ -311,6 +326,7 @@ public final class DataReaderStrips extends ImageDataReader {
             }
         } else {
             final int nStripsInPlane = imageData.getImageDataLength() / 3;
+            final TiffFetchPlanner.Fetch fetch = planFetch(strip0, strip1, 3, nStripsInPlane);
             for (int strip = strip0; strip <= strip1; strip++) {
                 final long rowsPerStripLong = 0xFFFFffffL & rowsPerStrip;
                 final long rowsRemaining = height - (strip * rowsPerStripLong);
@@ -322,7 +338,7 @@ public final class DataReaderStrips extends ImageDataReader {
                 final byte[] b = new byte[(int) bytesPerStrip];
                 for (int iPlane = 0; iPlane < 3; iPlane++) {
                     final int planeStrip = iPlane * nStripsInPlane + strip;
-                    final byte[] compressed = imageData.getImageData(planeStrip).getData();
+                    final ByteBuffer compressed = fetch.getDataBuffer(planeStrip);
                     final byte[] decompressed = decompress(compressed, compression,
                       (int) bytesPerStrip, width, (int) rowsInThisStrip);
                     int index = iPlane;
@@ -382,6 +398,7 @@ public final class DataReaderStrips extends ImageDataReader {
         final int strip0 = yRaster / rowsPerStrip;
         final int strip1 = (yRaster + rasterHeight - 1) / rowsPerStrip;
 
+        final TiffFetchPlanner.Fetch fetch = planFetch(strip0, strip1, 1, 0);
         for (int strip = strip0; strip <= strip1; strip++) {
             final int yStrip = strip * rowsPerStrip;
             final int rowsRemaining = height - yStrip;
@@ -389,7 +406,7 @@ public final class DataReaderStrips extends ImageDataReader {
             final int bytesPerRow = (bitsPerPixel * width + 7) / 8;
             final int bytesPerStrip = rowsInThisStrip * bytesPerRow;
 
-            final byte[] compressed = imageData.getImageData(strip).getData();
+            final ByteBuffer compressed = fetch.getDataBuffer(strip);
             final byte[] decompressed = decompress(compressed, compression,
                 bytesPerStrip, width, rowsInThisStrip);
 
@@ -26,12 +26,14 @@ package org.apache.commons.imaging.formats.tiff.datareaders;
 import java.awt.Rectangle;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
 import org.apache.commons.imaging.ImageReadException;
 import org.apache.commons.imaging.common.ImageBuilder;
 import org.apache.commons.imaging.formats.tiff.TiffRasterData;
 import org.apache.commons.imaging.formats.tiff.TiffDirectory;
+import org.apache.commons.imaging.formats.tiff.TiffFetchPlanner;
 import org.apache.commons.imaging.formats.tiff.TiffImageData;
 import org.apache.commons.imaging.formats.tiff.constants.TiffPlanarConfiguration;
 import org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants;
@@ -217,6 +219,18 @@ public final class DataReaderTiled extends ImageDataReader {
         }
     }
 
+    private TiffFetchPlanner.Fetch planFetch(final int row0, final int row1,
+            final int col0, final int col1, final int nColumnsOfTiles) {
+        final int[] needed = new int[(row1 - row0 + 1) * (col1 - col0 + 1)];
+        int k = 0;
+        for (int iRow = row0; iRow <= row1; iRow++) {
+            for (int iCol = col0; iCol <= col1; iCol++) {
+                needed[k++] = iRow * nColumnsOfTiles + iCol;
+            }
+        }
+        return fetchPlanner.plan(imageData.tiles, needed);
+    }
+
     @Override
     public ImageBuilder readImageData(final Rectangle subImageSpecification,
         final boolean hasAlpha,
@@ -258,10 +272,11 @@ public final class DataReaderTiled extends ImageDataReader {
                 new ImageBuilder(workingWidth, workingHeight,
                 hasAlpha, isAlphaPremultiplied);
 
+        final TiffFetchPlanner.Fetch fetch = planFetch(row0, row1, col0, col1, nColumnsOfTiles);
         for (int iRow = row0; iRow <= row1; iRow++) {
             for (int iCol = col0; iCol <= col1; iCol++) {
                 final int tile = iRow * nColumnsOfTiles + iCol;
-                final byte[] compressed = imageData.tiles[tile].getData();
+                final ByteBuffer compressed = fetch.getDataBuffer(tile);
                 final byte[] decompressed = decompress(compressed, compression,
                         bytesPerTile, tileWidth, tileLength);
                 final int x = iCol * tileWidth - x0;
@@ -316,10 +331,11 @@ public final class DataReaderTiled extends ImageDataReader {
 
         final int nColumnsOfTiles = (width + tileWidth - 1) / tileWidth;
 
+        final TiffFetchPlanner.Fetch fetch = planFetch(row0, row1, col0, col1, nColumnsOfTiles);
         for (int iRow = row0; iRow <= row1; iRow++) {
             for (int iCol = col0; iCol <= col1; iCol++) {
                 final int tile = iRow * nColumnsOfTiles + iCol;
-                final byte[] compressed = imageData.tiles[tile].getData();
+                final ByteBuffer compressed = fetch.getDataBuffer(tile);
                 final byte[] decompressed = decompress(compressed, compression,
                     bytesPerTile, tileWidth, tileLength);
                 final int x = iCol * tileWidth;
@@ -30,9 +30,9 @@ import static org.apache.commons.imaging.formats.tiff.constants.TiffConstants.TI
 import static org.apache.commons.imaging.formats.tiff.constants.TiffConstants.TIFF_FLAG_T6_OPTIONS_UNCOMPRESSED_MODE;
 
 import java.awt.Rectangle;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Arrays;
 
@@ -42,8 +42,10 @@ import org.apache.commons.imaging.common.PackBits;
 import org.apache.commons.imaging.common.itu_t4.T4AndT6Compression;
 import org.apache.commons.imaging.common.mylzw.MyLzwDecompressor;
 import org.apache.commons.imaging.common.ZlibDeflate;
+import org.apache.commons.imaging.common.bytesource.ByteBufferInputStream;
 import org.apache.commons.imaging.formats.tiff.TiffRasterData;
 import org.apache.commons.imaging.formats.tiff.TiffDirectory;
+import org.apache.commons.imaging.formats.tiff.TiffFetchPlanner;
 import org.apache.commons.imaging.formats.tiff.TiffField;
 import org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants;
 import org.apache.commons.imaging.formats.tiff.photometricinterpreters.PhotometricInterpreter;
@@ -155,6 +157,7 @@ public abstract class ImageDataReader {
     protected final int width;
     protected final int height;
     protected final int sampleFormat;
+    protected TiffFetchPlanner fetchPlanner = new TiffFetchPlanner();
 
     public ImageDataReader(final TiffDirectory directory,
             final PhotometricInterpreter photometricInterpreter, final int[] bitsPerSample,
@@ -173,6 +176,15 @@ public abstract class ImageDataReader {
     }
 
 
+    /**
+     * Sets the planner used to fetch strip and tile data.
+     *
+     * @param fetchPlanner a valid instance
+     */
+    public void setFetchPlanner(final TiffFetchPlanner fetchPlanner) {
+        this.fetchPlanner = fetchPlanner;
+    }
+
     /**
      * Read the image data from the IFD associated with this
      * instance of ImageDataReader using the optional sub-image specification
@@ -265,25 +277,63 @@ public abstract class ImageDataReader {
     protected byte[] decompress(final byte[] compressedInput, final int compression,
             final int expectedSize, final int tileWidth, final int tileHeight)
             throws ImageReadException, IOException {
+        return decompress(ByteBuffer.wrap(compressedInput), compression,
+                expectedSize, tileWidth, tileHeight);
+    }
+
+    /**
+     * Decompresses the data of a strip or tile held in a buffer. The LZW
+     * decoder reads the buffer directly; the other decoders work on an
+     * array, which is only copied out of the buffer when the buffer does
+     * not wrap one exactly.
+     *
+     * @param compressedInput the compressed data, from its position to its limit
+     * @param compression the TIFF compression code
+     * @param expectedSize the expected size of the decompressed data
+     * @param tileWidth the width of the strip or tile
+     * @param tileHeight the height of the strip or tile
+     * @return the decompressed data
+     * @throws ImageReadException in the event of an invalid format
+     * @throws IOException in the event of an I/O error
+     */
+    protected byte[] decompress(final ByteBuffer compressedInput, final int compression,
+            final int expectedSize, final int tileWidth, final int tileHeight)
+            throws ImageReadException, IOException {
         final TiffField fillOrderField = directory.findField(TiffTagConstants.TIFF_TAG_FILL_ORDER);
         int fillOrder = TiffTagConstants.FILL_ORDER_VALUE_NORMAL;
         if (fillOrderField != null) {
             fillOrder = fillOrderField.getIntValue();
         }
-        final byte[] compressedOrdered; // re-ordered bytes (if necessary)
+        final ByteBuffer compressedBuffer; // re-ordered bytes (if necessary)
         if (fillOrder == TiffTagConstants.FILL_ORDER_VALUE_NORMAL) {
-            compressedOrdered = compressedInput;
+            compressedBuffer = compressedInput;
             // good
         } else if (fillOrder == TiffTagConstants.FILL_ORDER_VALUE_REVERSED) {
-            compressedOrdered = new byte[compressedInput.length];
-            for (int i = 0; i < compressedInput.length; i++) {
-                compressedOrdered[i] = (byte) (Integer.reverse(0xff & compressedInput[i]) >>> 24);
+            final int position = compressedInput.position();
+            final byte[] reversed = new byte[compressedInput.remaining()];
+            for (int i = 0; i < reversed.length; i++) {
+                reversed[i] = (byte) (Integer.reverse(0xff & compressedInput.get(position + i)) >>> 24);
             }
+            compressedBuffer = ByteBuffer.wrap(reversed);
         } else {
             throw new ImageReadException("TIFF FillOrder=" + fillOrder
                     + " is invalid");
         }
 
+        if (compression == TIFF_COMPRESSION_LZW) {
+            final InputStream is = new ByteBufferInputStream(compressedBuffer.duplicate());
+
+            final int lzwMinimumCodeSize = 8;
+
+            final MyLzwDecompressor myLzwDecompressor = new MyLzwDecompressor(
+                    lzwMinimumCodeSize, ByteOrder.BIG_ENDIAN);
+
+            myLzwDecompressor.setTiffLZWMode();
+
+            return myLzwDecompressor.decompress(is, expectedSize);
+        }
+        final byte[] compressedOrdered = toByteArray(compressedBuffer);
+
         switch (compression) {
         case TIFF_COMPRESSION_UNCOMPRESSED: // None;
             return compressedOrdered;
@@ -325,19 +375,6 @@ public abstract class ImageDataReader {
             return T4AndT6Compression.decompressT6(compressedOrdered, tileWidth,
                     tileHeight);
         }
-        case TIFF_COMPRESSION_LZW: {
-            final InputStream is = new ByteArrayInputStream(compressedOrdered);
-
-            final int lzwMinimumCodeSize = 8;
-
-            final MyLzwDecompressor myLzwDecompressor = new MyLzwDecompressor(
-                    lzwMinimumCodeSize, ByteOrder.BIG_ENDIAN);
-
-            myLzwDecompressor.setTiffLZWMode();
-
-            return myLzwDecompressor.decompress(is, expectedSize);
-        }
-
         // Packbits
         case TIFF_COMPRESSION_PACKBITS: {
             return new PackBits().decompress(compressedOrdered, expectedSize);
@@ -346,7 +383,7 @@ public abstract class ImageDataReader {
         // deflate
         case TIFF_COMPRESSION_DEFLATE_ADOBE:
         case TIFF_COMPRESSION_DEFLATE_PKZIP: {
-            return ZlibDeflate.decompress(compressedInput, expectedSize);
+            return ZlibDeflate.decompress(toByteArray(compressedInput), expectedSize);
         }
 
         default:
@@ -354,6 +391,16 @@ public abstract class ImageDataReader {
         }
     }
 
+    private static byte[] toByteArray(final ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+                && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
     /**
      * Given a source file that specifies the floating-point data format, unpack
      * the raw bytes obtained from the source file and organize them into an
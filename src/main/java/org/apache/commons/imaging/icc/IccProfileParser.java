@@ -62,7 +62,12 @@ public class IccProfileParser extends BinaryFileParser {
             return null;
         }
 
-        return getICCProfileInfo(new ByteSourceFile(file));
+        try (ByteSourceFile byteSource = new ByteSourceFile(file)) {
+            return getICCProfileInfo(byteSource);
+        } catch (final IOException e) {
+            LOGGER.log(Level.SEVERE, e.getMessage(), e);
+            return null;
+        }
     }
 
     public IccProfileInfo getICCProfileInfo(final ByteSource byteSource) {
@@ -291,7 +296,9 @@ public class IccProfileParser extends BinaryFileParser {
     }
 
     public boolean issRGB(final File file) throws IOException {
-        return issRGB(new ByteSourceFile(file));
+        try (ByteSourceFile byteSource = new ByteSourceFile(file)) {
+            return issRGB(byteSource);
+        }
     }
 
     public boolean issRGB(final ByteSource byteSource) throws IOException {
@@ -13,9 +13,12 @@
  *  under the License.
  */
 
-package org.apache.commons.imaging.formats.jpeg.decoder;
+package org.apache.commons.imaging.internal;
 
-final class Dct {
+/**
+ * The discrete cosine transforms of the JPEG decoder and encoder.
+ */
+public final class Dct {
     /*
      * The book "JPEG still image data compression standard", by Pennebaker and
      * Mitchell, Chapter 4, discusses a number of approaches to the fast DCT.
@@ -64,6 +67,31 @@ final class Dct {
      * transforms per second per core :-)
      */
 
+    /*
+     * Constants of the fixed-point inverse DCT, scaled by 2^CONST_BITS.
+     * The intermediate results keep PASS1_BITS extra bits of precision
+     * between the two passes, as in IJG's jidctint.c.
+     */
+    private static final int CONST_BITS = 13;
+    private static final int PASS1_BITS = 2;
+    private static final int FIX_0_298631336 = 2446;
+    private static final int FIX_0_390180644 = 3196;
+    private static final int FIX_0_541196100 = 4433;
+    private static final int FIX_0_765366865 = 6270;
+    private static final int FIX_0_899976223 = 7373;
+    private static final int FIX_1_175875602 = 9633;
+    private static final int FIX_1_501321110 = 12299;
+    private static final int FIX_1_847759065 = 15137;
+    private static final int FIX_1_961570560 = 16069;
+    private static final int FIX_2_053119869 = 16819;
+    private static final int FIX_2_562915447 = 20995;
+    private static final int FIX_3_072711026 = 25172;
+
+    // C(u) / 2 * cos((2x + 1) u PI / 2N) for the N-point inverse DCTs used
+    // for scaled decoding, indexed by x * N + u
+    private static final float[] SCALED_IDCT_BASIS_2 = scaledInverseDctBasis(2);
+    private static final float[] SCALED_IDCT_BASIS_4 = scaledInverseDctBasis(4);
+
     private static final float[] DCT_SCALING_FACTORS = {
             (float) (0.5 / Math.sqrt(2.0)),
             (float) (0.25 / Math.cos(Math.PI / 16.0)),
@@ -379,4 +407,232 @@ final class Dct {
             matrix[56 + i] = m4 - a7;
         }
     }
+
+    /**
+     * Dequantizes and inverse transforms an 8x8 block in fixed-point
+     * arithmetic (the Loeffler, Ligtenberg and Moschytz algorithm), then
+     * level shifts and clamps the result into the destination samples.
+     * <p>
+     * The intermediate values are only guaranteed not to overflow for 8-bit
+     * samples.
+     *
+     * @param matrix the quantized coefficients in natural order, used as
+     * scratch space
+     * @param dequantizationMatrix the quantization table in natural order
+     * @param dst the destination samples
+     * @param dstOffset the index of the top left destination sample
+     * @param dstStride the distance between destination rows
+     * @param shift the level shift added to each sample
+     * @param max the maximum sample value
+     */
+    public static void inverseDCT8x8(final int[] matrix, final int[] dequantizationMatrix,
+            final int[] dst, final int dstOffset, final int dstStride,
+            final int shift, final int max) {
+        int tmp0, tmp1, tmp2, tmp3;
+        int tmp10, tmp11, tmp12, tmp13;
+        int z1, z2, z3, z4, z5;
+
+        // columns, dequantized on the fly and stored back scaled up by PASS1_BITS
+        for (int i = 0; i < 8; i++) {
+            if (matrix[8 + i] == 0 && matrix[16 + i] == 0 && matrix[24 + i] == 0
+                    && matrix[32 + i] == 0 && matrix[40 + i] == 0
+                    && matrix[48 + i] == 0 && matrix[56 + i] == 0) {
+                // a column with only the DC term is flat
+                final int dc = (matrix[i] * dequantizationMatrix[i]) << PASS1_BITS;
+                for (int j = i; j < 64; j += 8) {
+                    matrix[j] = dc;
+                }
+                continue;
+            }
+
+            // even part
+            z2 = matrix[16 + i] * dequantizationMatrix[16 + i];
+            z3 = matrix[48 + i] * dequantizationMatrix[48 + i];
+            z1 = (z2 + z3) * FIX_0_541196100;
+            tmp2 = z1 - z3 * FIX_1_847759065;
+            tmp3 = z1 + z2 * FIX_0_765366865;
+            z2 = matrix[i] * dequantizationMatrix[i];
+            z3 = matrix[32 + i] * dequantizationMatrix[32 + i];
+            tmp0 = (z2 + z3) << CONST_BITS;
+            tmp1 = (z2 - z3) << CONST_BITS;
+            tmp10 = tmp0 + tmp3;
+            tmp13 = tmp0 - tmp3;
+            tmp11 = tmp1 + tmp2;
+            tmp12 = tmp1 - tmp2;
+
+            // odd part
+            tmp0 = matrix[56 + i] * dequantizationMatrix[56 + i];
+            tmp1 = matrix[40 + i] * dequantizationMatrix[40 + i];
+            tmp2 = matrix[24 + i] * dequantizationMatrix[24 + i];
+            tmp3 = matrix[8 + i] * dequantizationMatrix[8 + i];
+            z1 = tmp0 + tmp3;
+            z2 = tmp1 + tmp2;
+            z3 = tmp0 + tmp2;
+            z4 = tmp1 + tmp3;
+            z5 = (z3 + z4) * FIX_1_175875602;
+            tmp0 *= FIX_0_298631336;
+            tmp1 *= FIX_2_053119869;
+            tmp2 *= FIX_3_072711026;
+            tmp3 *= FIX_1_501321110;
+            z1 *= -FIX_0_899976223;
+            z2 *= -FIX_2_562915447;
+            z3 = z3 * -FIX_1_961570560 + z5;
+            z4 = z4 * -FIX_0_390180644 + z5;
+            tmp0 += z1 + z3;
+            tmp1 += z2 + z4;
+            tmp2 += z2 + z3;
+            tmp3 += z1 + z4;
+
+            matrix[i] = descale(tmp10 + tmp3, CONST_BITS - PASS1_BITS);
+            matrix[56 + i] = descale(tmp10 - tmp3, CONST_BITS - PASS1_BITS);
+            matrix[8 + i] = descale(tmp11 + tmp2, CONST_BITS - PASS1_BITS);
+            matrix[48 + i] = descale(tmp11 - tmp2, CONST_BITS - PASS1_BITS);
+            matrix[16 + i] = descale(tmp12 + tmp1, CONST_BITS - PASS1_BITS);
+            matrix[40 + i] = descale(tmp12 - tmp1, CONST_BITS - PASS1_BITS);
+            matrix[24 + i] = descale(tmp13 + tmp0, CONST_BITS - PASS1_BITS);
+            matrix[32 + i] = descale(tmp13 - tmp0, CONST_BITS - PASS1_BITS);
+        }
+
+        // rows, removing the remaining scaling and the factor of 8
+        final int rowBits = CONST_BITS + PASS1_BITS + 3;
+        int dstRow = dstOffset;
+        for (int i = 0; i < 64; i += 8) {
+            if (matrix[i + 1] == 0 && matrix[i + 2] == 0 && matrix[i + 3] == 0
+                    && matrix[i + 4] == 0 && matrix[i + 5] == 0
+                    && matrix[i + 6] == 0 && matrix[i + 7] == 0) {
+                final int dc = clamp(descale(matrix[i], PASS1_BITS + 3) + shift, max);
+                for (int j = 0; j < 8; j++) {
+                    dst[dstRow + j] = dc;
+                }
+                dstRow += dstStride;
+                continue;
+            }
+
+            // even part
+            z2 = matrix[i + 2];
+            z3 = matrix[i + 6];
+            z1 = (z2 + z3) * FIX_0_541196100;
+            tmp2 = z1 - z3 * FIX_1_847759065;
+            tmp3 = z1 + z2 * FIX_0_765366865;
+            tmp0 = (matrix[i] + matrix[i + 4]) << CONST_BITS;
+            tmp1 = (matrix[i] - matrix[i + 4]) << CONST_BITS;
+            tmp10 = tmp0 + tmp3;
+            tmp13 = tmp0 - tmp3;
+            tmp11 = tmp1 + tmp2;
+            tmp12 = tmp1 - tmp2;
+
+            // odd part
+            tmp0 = matrix[i + 7];
+            tmp1 = matrix[i + 5];
+            tmp2 = matrix[i + 3];
+            tmp3 = matrix[i + 1];
+            z1 = tmp0 + tmp3;
+            z2 = tmp1 + tmp2;
+            z3 = tmp0 + tmp2;
+            z4 = tmp1 + tmp3;
+            z5 = (z3 + z4) * FIX_1_175875602;
+            tmp0 *= FIX_0_298631336;
+            tmp1 *= FIX_2_053119869;
+            tmp2 *= FIX_3_072711026;
+            tmp3 *= FIX_1_501321110;
+            z1 *= -FIX_0_899976223;
+            z2 *= -FIX_2_562915447;
+            z3 = z3 * -FIX_1_961570560 + z5;
+            z4 = z4 * -FIX_0_390180644 + z5;
+            tmp0 += z1 + z3;
+            tmp1 += z2 + z4;
+            tmp2 += z2 + z3;
+            tmp3 += z1 + z4;
+
+            dst[dstRow] = clamp(descale(tmp10 + tmp3, rowBits) + shift, max);
+            dst[dstRow + 7] = clamp(descale(tmp10 - tmp3, rowBits) + shift, max);
+            dst[dstRow + 1] = clamp(descale(tmp11 + tmp2, rowBits) + shift, max);
+            dst[dstRow + 6] = clamp(descale(tmp11 - tmp2, rowBits) + shift, max);
+            dst[dstRow + 2] = clamp(descale(tmp12 + tmp1, rowBits) + shift, max);
+            dst[dstRow + 5] = clamp(descale(tmp12 - tmp1, rowBits) + shift, max);
+            dst[dstRow + 3] = clamp(descale(tmp13 + tmp0, rowBits) + shift, max);
+            dst[dstRow + 4] = clamp(descale(tmp13 - tmp0, rowBits) + shift, max);
+            dstRow += dstStride;
+        }
+    }
+
+    private static float[] scaledInverseDctBasis(final int size) {
+        final float[] basis = new float[size * size];
+        for (int x = 0; x < size; x++) {
+            for (int u = 0; u < size; u++) {
+                final double c = (u == 0) ? Math.sqrt(0.5) : 1.0;
+                basis[x * size + u] = (float) (c / 2 * Math.cos((2 * x + 1) * u * Math.PI / (2 * size)));
+            }
+        }
+        return basis;
+    }
+
+    /**
+     * Dequantizes the lowest frequencies of an 8x8 block and inverse
+     * transforms them into a smaller block. Evaluating the 8x8 transform at
+     * the centres of 2x2, 4x4 or 8x8 pixel groups with the higher
+     * frequencies dropped is an N-point inverse DCT, so the result is the
+     * block scaled down by 8 / N. A 1x1 block is the mean of the block.
+     *
+     * @param matrix the quantized coefficients in natural order
+     * @param dequantizationMatrix the quantization table in natural order
+     * @param size the width and height of the result, 1, 2 or 4
+     * @param workspace scratch space of at least 16 elements
+     * @param dst the destination samples
+     * @param dstOffset the index of the top left destination sample
+     * @param dstStride the distance between destination rows
+     * @param shift the level shift added to each sample
+     * @param max the maximum sample value
+     */
+    public static void inverseDCTScaled(final int[] matrix, final int[] dequantizationMatrix,
+            final int size, final float[] workspace, final int[] dst, final int dstOffset,
+            final int dstStride, final int shift, final int max) {
+        if (size == 1) {
+            dst[dstOffset] = clamp(matrix[0] * dequantizationMatrix[0] / 8f + shift, max);
+            return;
+        }
+        final float[] basis = (size == 4) ? SCALED_IDCT_BASIS_4 : SCALED_IDCT_BASIS_2;
+        // columns
+        for (int u = 0; u < size; u++) {
+            for (int y = 0; y < size; y++) {
+                float sum = 0;
+                for (int v = 0; v < size; v++) {
+                    sum += basis[y * size + v] * matrix[8 * v + u] * dequantizationMatrix[8 * v + u];
+                }
+                workspace[y * size + u] = sum;
+            }
+        }
+        // rows
+        int dstRow = dstOffset;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                float sum = 0;
+                for (int u = 0; u < size; u++) {
+                    sum += basis[x * size + u] * workspace[y * size + u];
+                }
+                dst[dstRow + x] = clamp(sum + shift, max);
+            }
+            dstRow += dstStride;
+        }
+    }
+
+    private static int clamp(final float sample, final int max) {
+        if (sample < 0) {
+            return 0;
+        } else if (sample > max) {
+            return max;
+        }
+        return (int) (sample + 0.5f);
+    }
+
+    private static int descale(final int x, final int n) {
+        return (x + (1 << (n - 1))) >> n;
+    }
+
+    private static int clamp(final int sample, final int max) {
+        if (sample < 0) {
+            return 0;
+        }
+        return sample > max ? max : sample;
+    }
 }
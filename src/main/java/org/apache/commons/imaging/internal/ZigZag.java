@@ -13,9 +13,13 @@
  *  under the License.
  */
 
-package org.apache.commons.imaging.formats.jpeg.decoder;
+package org.apache.commons.imaging.internal;
 
-final class ZigZag {
+/**
+ * Converts JPEG blocks between natural and zig-zag order, for the JPEG
+ * decoder and encoder.
+ */
+public final class ZigZag {
     private static final int[] ZIG_ZAG = {
          0,  1,  5,  6, 14, 15, 27, 28,
          2,  4,  7, 13, 16, 26, 29, 42,
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.imaging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.apache.commons.imaging.formats.png.PngImageParser;
+import org.apache.commons.imaging.formats.tiff.TiffImageParser;
+import org.junit.jupiter.api.Test;
+
+public class ImageParserRegistryTest {
+
+    @Test
+    public void testDefaultRegistryHoldsBuiltInParsers() {
+        final ImageParserRegistry registry = ImageParserRegistry.getDefault();
+        assertTrue(registry.getImageParsers().size() >= ImageParser.getAllImageParsers().length);
+        for (final ImageParser imageParser : ImageParser.getAllImageParsers()) {
+            for (final ImageFormat format : imageParser.getAcceptedTypes()) {
+                assertEquals(imageParser.getClass(), registry.getImageParser(format).getClass());
+            }
+            for (final String extension : imageParser.getAcceptedExtensions()) {
+                assertEquals(imageParser.getClass(),
+                        registry.getImageParserByFileName("image" + extension.toUpperCase()).getClass());
+            }
+        }
+        // instances are reused
+        assertSame(registry.getImageParser(ImageFormats.PNG), registry.getImageParser(ImageFormats.PNG));
+    }
+
+    @Test
+    public void testUnknownLookups() {
+        final ImageParserRegistry registry = ImageParserRegistry.getDefault();
+        assertNull(registry.getImageParser(ImageFormats.UNKNOWN));
+        assertNull(registry.getImageParserByFileName("image.txt"));
+        assertNull(registry.getImageParserByFileName("jpg"));
+    }
+
+    @Test
+    public void testRegisteredParserTakesPrecedence() {
+        final ImageParserRegistry registry = new ImageParserRegistry();
+        final ImageParser png = new PngImageParser();
+        final ImageParser tiff = new TiffImageParser();
+        registry.register(png);
+        registry.register(tiff);
+        assertSame(png, registry.getImageParser(ImageFormats.PNG));
+        assertSame(tiff, registry.getImageParserByFileName("a.tif"));
+
+        final ImageParser replacement = new PngImageParser();
+        registry.register(replacement);
+        assertSame(replacement, registry.getImageParser(ImageFormats.PNG));
+        assertSame(replacement, registry.getImageParserByFileName("a.png"));
+        assertEquals(3, registry.getImageParsers().size());
+        assertNull(registry.getImageParser(ImageFormats.JPEG));
+    }
+}
@@ -40,6 +40,10 @@ public class ImagingGuessFormatTest extends ImagingTest {
     public static final String PBM_IMAGE_FILE = "pbm\\1\\Oregon Scientific DS6639 - DSC_0307 - small.pbm";
     public static final String PGM_IMAGE_FILE = "pbm\\1\\Oregon Scientific DS6639 - DSC_0307 - small.pgm";
     public static final String PPM_IMAGE_FILE = "pbm\\1\\Oregon Scientific DS6639 - DSC_0307 - small.ppm";
+    public static final String PCX_IMAGE_FILE = "pcx\\1\\Oregon Scientific DS6639 - DSC_0307 - small.pcx";
+    public static final String WBMP_IMAGE_FILE = "wbmp\\1\\Oregon Scientific DS6639 - DSC_0307 - small.wbmp";
+    public static final String XBM_IMAGE_FILE = "xbm\\1\\Oregon Scientific DS6639 - DSC_0307 - small.xbm";
+    public static final String XPM_IMAGE_FILE = "xpm\\1\\Oregon Scientific DS6639 - DSC_0307 - small.xpm";
     public static final String TGA_IMAGE_FILE = "tga\\1\\Oregon Scientific DS6639 - DSC_0307 - small.tga";
     public static final String UNKNOWN_IMAGE_FILE = "info.txt";
 
@@ -48,8 +52,7 @@ public class ImagingGuessFormatTest extends ImagingTest {
                 new Object[] { ImageFormats.PNG, PNG_IMAGE_FILE },
                 new Object[] { ImageFormats.GIF, GIF_IMAGE_FILE },
                 new Object[] { ImageFormats.ICNS, ICNS_IMAGE_FILE },
-                // TODO(cmchen): add ability to sniff ICOs if possible.
-                // new Object[] { ImageFormat.IMAGE_FORMAT_ICO, ICO_IMAGE_FILE },
+                new Object[] { ImageFormats.ICO, ICO_IMAGE_FILE },
                 new Object[] { ImageFormats.TIFF, TIFF_IMAGE_FILE },
                 new Object[] { ImageFormats.JPEG, JPEG_IMAGE_FILE },
                 new Object[] { ImageFormats.BMP, BMP_IMAGE_FILE },
@@ -57,6 +60,10 @@ public class ImagingGuessFormatTest extends ImagingTest {
                 new Object[] { ImageFormats.PBM, PBM_IMAGE_FILE },
                 new Object[] { ImageFormats.PGM, PGM_IMAGE_FILE },
                 new Object[] { ImageFormats.PPM, PPM_IMAGE_FILE },
+                new Object[] { ImageFormats.PCX, PCX_IMAGE_FILE },
+                new Object[] { ImageFormats.WBMP, WBMP_IMAGE_FILE },
+                new Object[] { ImageFormats.XBM, XBM_IMAGE_FILE },
+                new Object[] { ImageFormats.XPM, XPM_IMAGE_FILE },
                 // TODO(cmchen): add ability to sniff TGAs if possible.
                 // new Object[] { ImageFormat.IMAGE_FORMAT_TGA, TGA_IMAGE_FILE },
                 // TODO(cmchen): Add test images for these formats.
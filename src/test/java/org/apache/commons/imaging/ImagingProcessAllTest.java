@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.imaging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class ImagingProcessAllTest extends ImagingTest {
+
+    @Test
+    public void testImageInfoForAllTestImages() throws Exception {
+        final List<File> files = getTestImages();
+        final List<BatchResult<ImageInfo>> results = new ArrayList<>();
+        final long failures = Imaging.processAll(files,
+                BatchOperation.imageInfo(null), results::add);
+
+        assertEquals(files.size(), results.size());
+        final Set<File> seen = new HashSet<>();
+        int failed = 0;
+        for (final BatchResult<ImageInfo> result : results) {
+            assertTrue(seen.add(result.getFile()));
+            if (!result.isSuccess()) {
+                failed++;
+            }
+        }
+        assertEquals(failed, failures);
+    }
+
+    @Test
+    public void testFailuresDoNotStopTheBatch() throws Exception {
+        final List<File> files = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            files.add(new File("missing-" + i + ".png"));
+        }
+        final List<BatchResult<ImageInfo>> delivered = new ArrayList<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            final long failures = Imaging.processAll(files,
+                    BatchOperation.imageInfo(null), executor, 4, delivered::add);
+            assertEquals(20, delivered.size());
+            assertEquals(20, failures);
+            for (final BatchResult<ImageInfo> failure : delivered) {
+                assertFalse(failure.isSuccess());
+                assertNotNull(failure.getException());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testPendingFilesAreBounded() throws Exception {
+        final List<File> files = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            files.add(new File("file-" + i));
+        }
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicInteger undelivered = new AtomicInteger();
+        final AtomicInteger maxUndelivered = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final BatchOperation<String> operation = file -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                maxUndelivered.accumulateAndGet(undelivered.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(2);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                return file.getName();
+            };
+            final long failures = Imaging.processAll(files, operation,
+                    executor, 3, result -> undelivered.decrementAndGet());
+            assertEquals(0, failures);
+            assertTrue(maxRunning.get() <= 3);
+            assertTrue(maxUndelivered.get() <= 3);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
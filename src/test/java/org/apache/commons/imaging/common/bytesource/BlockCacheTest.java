@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.imaging.common.bytesource;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class BlockCacheTest {
+
+    @TempDir
+    File tempDir;
+
+    private static byte[] createBytes(final int length, final int seed) {
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i * 31 + seed);
+        }
+        return bytes;
+    }
+
+    @Test
+    public void testRepeatedReadsHitTheCache() throws IOException {
+        final byte[] bytes = createBytes(10000, 0);
+        final File file = new File(tempDir, "cached.bin");
+        Files.write(file.toPath(), bytes);
+        final BlockCache cache = new BlockCache(1 << 20, 1024);
+
+        try (ByteSourceFile byteSource = new ByteSourceFile(file, cache)) {
+            assertArrayEquals(bytes, byteSource.getAll());
+        }
+        assertEquals(10, cache.getMissCount());
+        assertEquals(0, cache.getHitCount());
+        assertEquals(10000, cache.getSize());
+
+        // a second source for the same file is served from the cache
+        try (ByteSourceFile byteSource = new ByteSourceFile(file, cache)) {
+            final byte[] block = byteSource.getBlock(1000, 2000);
+            for (int i = 0; i < block.length; i++) {
+                assertEquals(bytes[1000 + i], block[i]);
+            }
+            try (InputStream is = byteSource.getInputStream(9000)) {
+                assertEquals(0xff & bytes[9000], is.read());
+                final byte[] rest = IOUtils.toByteArray(is);
+                assertEquals(999, rest.length);
+                assertEquals(bytes[9999], rest[998]);
+            }
+        }
+        assertEquals(10, cache.getMissCount());
+        assertEquals(5, cache.getHitCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedBlocksAreEvicted() throws IOException {
+        final byte[] bytes = createBytes(4096, 0);
+        final File file = new File(tempDir, "evicted.bin");
+        Files.write(file.toPath(), bytes);
+        final BlockCache cache = new BlockCache(2048, 1024);
+
+        try (ByteSourceFile byteSource = new ByteSourceFile(file, cache)) {
+            byteSource.getBlock(0, 1);
+            byteSource.getBlock(1024, 1);
+            byteSource.getBlock(0, 1);
+            byteSource.getBlock(2048, 1);
+            assertEquals(1, cache.getEvictionCount());
+            assertEquals(2048, cache.getSize());
+            // block 0 was used more recently than block 1
+            byteSource.getBlock(0, 1);
+            assertEquals(2, cache.getHitCount());
+            byteSource.getBlock(1024, 1);
+            assertEquals(4, cache.getMissCount());
+        }
+    }
+
+    @Test
+    public void testModifiedFileIsReadAgain() throws IOException {
+        final File file = new File(tempDir, "modified.bin");
+        Files.write(file.toPath(), createBytes(1000, 0));
+        final BlockCache cache = new BlockCache(1 << 20);
+
+        try (ByteSourceFile byteSource = new ByteSourceFile(file, cache)) {
+            byteSource.getAll();
+        }
+        final byte[] modified = createBytes(1200, 7);
+        Files.write(file.toPath(), modified);
+        try (ByteSourceFile byteSource = new ByteSourceFile(file, cache)) {
+            assertArrayEquals(modified, byteSource.getAll());
+        }
+        assertEquals(2, cache.getMissCount());
+        assertTrue(cache.getSize() <= 2200);
+    }
+
+    @Test
+    public void testInvalidatedFileIsReadAgain() throws IOException {
+        final File file = new File(tempDir, "invalidated.bin");
+        Files.write(file.toPath(), createBytes(1000, 0));
+        final long lastModified = file.lastModified();
+        final File other = new File(tempDir, "other.bin");
+        Files.write(other.toPath(), createBytes(1000, 3));
+        final BlockCache cache = new BlockCache(1 << 20);
+
+        try (ByteSourceFile byteSource = new ByteSourceFile(file, cache);
+                ByteSourceFile otherSource = new ByteSourceFile(other, cache)) {
+            byteSource.getAll();
+            otherSource.getAll();
+        }
+        // same length and modification time, so the cache cannot tell
+        final byte[] modified = createBytes(1000, 7);
+        Files.write(file.toPath(), modified);
+        file.setLastModified(lastModified);
+        cache.invalidate(file);
+        assertEquals(1000, cache.getSize());
+        try (ByteSourceFile byteSource = new ByteSourceFile(file, cache)) {
+            assertArrayEquals(modified, byteSource.getAll());
+        }
+        assertEquals(3, cache.getMissCount());
+    }
+}
@@ -25,10 +25,17 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Stream;
 
 import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 
@@ -54,6 +61,32 @@ public class ByteSourceDataTest extends ByteSourceTest {
         }
     }
 
+    private class ByteSourceMappedFileFactory implements ByteSourceFactory {
+        @Override
+        public ByteSource getByteSource(final byte src[]) throws IOException {
+            final File file = createTempFile(src);
+
+            return new ByteSourceMappedFile(file);
+        }
+    }
+
+    private static class ByteSourceHeapBufferFactory implements ByteSourceFactory {
+        @Override
+        public ByteSource getByteSource(final byte src[]) {
+            return new ByteSourceByteBuffer(ByteBuffer.wrap(src));
+        }
+    }
+
+    private static class ByteSourceDirectBufferFactory implements ByteSourceFactory {
+        @Override
+        public ByteSource getByteSource(final byte src[]) {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(src.length);
+            buffer.put(src);
+            buffer.flip();
+            return new ByteSourceByteBuffer(buffer);
+        }
+    }
+
     private class ByteSourceInputStreamFileFactory implements ByteSourceFactory {
         @Override
         public ByteSource getByteSource(final byte src[]) throws IOException {
@@ -75,6 +108,17 @@ public class ByteSourceDataTest extends ByteSourceTest {
 
     }
 
+    private static class ByteSourceInputStreamBoundedFactory implements ByteSourceFactory {
+        @Override
+        public ByteSource getByteSource(final byte src[]) throws IOException {
+            final ByteArrayInputStream is = new ByteArrayInputStream(src);
+
+            // a small limit makes every block after the first go through the temporary file
+            return new ByteSourceInputStream(is, null, 1024);
+        }
+
+    }
+
     protected void writeAndReadBytes(final ByteSourceFactory byteSourceFactory,
             final byte src[]) throws IOException {
         final ByteSource byteSource = byteSourceFactory.getByteSource(src);
@@ -108,6 +152,13 @@ public class ByteSourceDataTest extends ByteSourceTest {
             assertArrayEquals(src, all);
         }
 
+        {
+            // test getHeader() method, which keeps the bytes it has read.
+            assertArrayEquals(Arrays.copyOf(src, Math.min(src.length, 16)), byteSource.getHeader(16));
+            assertArrayEquals(Arrays.copyOf(src, Math.min(src.length, 8)), byteSource.getHeader(8));
+            assertArrayEquals(Arrays.copyOf(src, Math.min(src.length, 64)), byteSource.getHeader(64));
+        }
+
         if (src.length > 2) {
             // test optional start param to getInputStream()
 
@@ -121,6 +172,17 @@ public class ByteSourceDataTest extends ByteSourceTest {
                     assertTrue(dst[i] == src[i + start]);
                 }
             }
+
+            // test getBlock() method.
+            final byte block[] = byteSource.getBlock(start, src.length - start);
+            assertArrayEquals(Arrays.copyOfRange(src, start, src.length), block);
+
+            // test getBlockBuffer() method.
+            final ByteBuffer blockBuffer = byteSource.getBlockBuffer(start, src.length - start);
+            assertTrue(blockBuffer.isReadOnly());
+            final byte view[] = new byte[blockBuffer.remaining()];
+            blockBuffer.get(view);
+            assertArrayEquals(block, view);
         }
 
     }
@@ -130,6 +192,45 @@ public class ByteSourceDataTest extends ByteSourceTest {
     public void testByteSourceFileFactory(final byte[] testByteArray) throws Exception {
         writeAndReadBytes(new ByteSourceFileFactory(), testByteArray);
     }
+    @Test
+    public void testByteSourceFileSharedAcrossThreads() throws Exception {
+        final byte src[] = getTestByteArrays()[4];
+        final File file = createTempFile(src);
+        try (ByteSourceFile byteSource = new ByteSourceFile(file)) {
+            final ExecutorService executor = Executors.newFixedThreadPool(4);
+            try {
+                final List<Future<Boolean>> results = new ArrayList<>();
+                for (int i = 0; i < 64; i++) {
+                    final int start = i * (src.length / 64);
+                    final int length = src.length / 64;
+                    results.add(executor.submit(() -> Arrays.equals(
+                            Arrays.copyOfRange(src, start, start + length),
+                            byteSource.getBlock(start, length))));
+                }
+                for (final Future<Boolean> result : results) {
+                    assertTrue(result.get());
+                }
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("data")
+    public void testByteSourceMappedFileFactory(final byte[] testByteArray) throws Exception {
+        writeAndReadBytes(new ByteSourceMappedFileFactory(), testByteArray);
+    }
+    @ParameterizedTest
+    @MethodSource("data")
+    public void testByteSourceHeapBufferFactory(final byte[] testByteArray) throws Exception {
+        writeAndReadBytes(new ByteSourceHeapBufferFactory(), testByteArray);
+    }
+    @ParameterizedTest
+    @MethodSource("data")
+    public void testByteSourceDirectBufferFactory(final byte[] testByteArray) throws Exception {
+        writeAndReadBytes(new ByteSourceDirectBufferFactory(), testByteArray);
+    }
     @ParameterizedTest
     @MethodSource("data")
     public void testByteSourceInputStreamFileFactory(final byte[] testByteArray) throws Exception {
@@ -140,4 +241,9 @@ public class ByteSourceDataTest extends ByteSourceTest {
     public void testByteSourceInputStreamRawFactory(final byte[] testByteArray) throws Exception {
         writeAndReadBytes(new ByteSourceInputStreamRawFactory(), testByteArray);
     }
+    @ParameterizedTest
+    @MethodSource("data")
+    public void testByteSourceInputStreamBoundedFactory(final byte[] testByteArray) throws Exception {
+        writeAndReadBytes(new ByteSourceInputStreamBoundedFactory(), testByteArray);
+    }
 }
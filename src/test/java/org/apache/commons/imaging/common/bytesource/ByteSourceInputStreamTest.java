@@ -16,20 +16,31 @@
  */
 package org.apache.commons.imaging.common.bytesource;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.awt.image.BufferedImage;
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
+import org.apache.commons.imaging.ImageParser;
 import org.apache.commons.imaging.ImageReadException;
 import org.apache.commons.imaging.Imaging;
 import org.apache.commons.imaging.ImagingConstants;
 import org.apache.commons.imaging.ImagingTestConstants;
+import org.apache.commons.imaging.formats.jpeg.JpegImageParser;
+import org.apache.commons.imaging.formats.png.PngImageParser;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.jupiter.api.Test;
 
 class ByteSourceInputStreamTest {
@@ -53,4 +64,59 @@ class ByteSourceInputStreamTest {
         }
     }
 
+    @Test
+    public void testForwardOnlyDiscardsOldBlocks() throws IOException {
+        final byte[] bytes = new byte[256 * 1024];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        try (ByteSourceInputStream byteSource = new ByteSourceInputStream(
+                new ByteArrayInputStream(bytes), null, 64 * 1024)) {
+            byteSource.setForwardOnly(true);
+            try (InputStream is = byteSource.getInputStream()) {
+                assertArrayEquals(bytes, IOUtils.toByteArray(is));
+            }
+            assertThrows(IOException.class, byteSource::getAll);
+        }
+    }
+
+    private void checkForwardOnlyRestored(final ImageParser parser, final String path)
+            throws IOException, ImageReadException {
+        final File imageFile = new File(ImagingTestConstants.TEST_IMAGE_FOLDER,
+                FilenameUtils.separatorsToSystem(path));
+        try (InputStream imageStream = new FileInputStream(imageFile);
+                ByteSourceInputStream byteSource = new ByteSourceInputStream(imageStream, null, 1024)) {
+            final BufferedImage bufferedImage = parser.getBufferedImage(byteSource, null);
+
+            assertEquals(ICO_IMAGE_WIDTH, bufferedImage.getWidth());
+            assertFalse(byteSource.isForwardOnly());
+        }
+    }
+
+    @Test
+    public void testJpegRestoresForwardOnly() throws IOException, ImageReadException {
+        checkForwardOnlyRestored(new JpegImageParser(),
+                "jpg\\1\\Oregon Scientific DS6639 - DSC_0307 - small.jpg");
+    }
+
+    @Test
+    public void testPngRestoresForwardOnly() throws IOException, ImageReadException {
+        checkForwardOnlyRestored(new PngImageParser(),
+                "png\\1\\Oregon Scientific DS6639 - DSC_0307 - small.png");
+    }
+
+    @Test
+    public void testReadFromStreamWithMemoryLimit() throws IOException, ImageReadException {
+        final String imagePath = FilenameUtils.separatorsToSystem(ICO_IMAGE_FILE);
+        final File imageFile = new File(ImagingTestConstants.TEST_IMAGE_FOLDER, imagePath);
+        final Map<String, Object> params = new HashMap<>();
+        params.put(ImagingConstants.PARAM_KEY_STREAM_MEMORY_LIMIT, 1024);
+        try (BufferedInputStream imageStream = new BufferedInputStream(new FileInputStream(imageFile))) {
+            final BufferedImage bufferedImage = Imaging.getBufferedImage(imageStream, params);
+
+            assertEquals(ICO_IMAGE_WIDTH, bufferedImage.getWidth());
+            assertEquals(ICO_IMAGE_HEIGHT, bufferedImage.getHeight());
+        }
+    }
+
 }
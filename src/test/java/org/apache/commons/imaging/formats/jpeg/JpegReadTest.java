@@ -62,7 +62,7 @@ public class JpegReadTest extends JpegBaseTest {
             final BufferedImage image = Imaging.getBufferedImage(imageFile, params);
             assertNotNull(image);
         } catch (final ImageReadException imageReadException) {
-            assertEquals("Only sequential, baseline JPEGs are supported at the moment",
+            assertEquals("Only sequential, baseline and progressive JPEGs are supported at the moment",
                     imageReadException.getMessage());
         }
     }
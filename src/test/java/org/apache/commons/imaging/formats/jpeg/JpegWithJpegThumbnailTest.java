@@ -17,16 +17,19 @@
 
 package org.apache.commons.imaging.formats.jpeg;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.commons.imaging.Imaging;
 import org.apache.commons.imaging.ImagingTest;
 import org.apache.commons.imaging.common.ImageMetadata;
+import org.apache.commons.imaging.common.bytesource.ByteSourceFile;
 import org.junit.jupiter.api.Test;
 
 public class JpegWithJpegThumbnailTest extends ImagingTest {
@@ -42,4 +45,16 @@ public class JpegWithJpegThumbnailTest extends ImagingTest {
         final BufferedImage image = jpegMetadata.getEXIFThumbnail();
         assertNotNull(image);
     }
+
+    @Test
+    public void testExifThumbnailData() throws Exception {
+        final File imageFile = getTestImageByName("img_F028c_small.jpg");
+
+        final JpegImageMetadata jpegMetadata = (JpegImageMetadata) Imaging.getMetadata(imageFile);
+        final ByteBuffer buffer = new JpegImageParser().getExifThumbnailData(new ByteSourceFile(imageFile));
+        assertNotNull(buffer);
+        final byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        assertArrayEquals(jpegMetadata.getEXIFThumbnailData(), data);
+    }
 }
@@ -17,12 +17,27 @@
 
 package org.apache.commons.imaging.formats.jpeg.decoder;
 
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
 
 import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.ImagingTestConstants;
+import org.apache.commons.imaging.common.bytesource.ByteSourceArray;
 import org.apache.commons.imaging.common.bytesource.ByteSourceFile;
+import org.apache.commons.imaging.formats.jpeg.JpegConstants;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
 
 /**
  * Tests for the JpegDecoder.
@@ -43,4 +58,246 @@ public class JpegDecoderTest {
             new JpegDecoder().decode(byteSourceFile);
         });
     }
+
+    /**
+     * Test that a progressive image decodes like the JDK decodes it.
+     */
+    @Test
+    public void testDecodeProgressive() throws Exception {
+        final File inputFile = new File(ImagingTestConstants.TEST_IMAGE_FOLDER,
+                "jpg/1/Oregon Scientific DS6639 - DSC_0307 - small.jpg");
+        final BufferedImage image;
+        try (ByteSourceFile byteSource = new ByteSourceFile(inputFile)) {
+            image = new JpegDecoder().decode(byteSource);
+        }
+        final BufferedImage reference = ImageIO.read(inputFile);
+        Assertions.assertEquals(reference.getWidth(), image.getWidth());
+        Assertions.assertEquals(reference.getHeight(), image.getHeight());
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                final int argb = image.getRGB(x, y);
+                final int referenceArgb = reference.getRGB(x, y);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    final int difference = ((argb >> shift) & 0xff) - ((referenceArgb >> shift) & 0xff);
+                    Assertions.assertTrue(Math.abs(difference) <= 8);
+                }
+            }
+        }
+    }
+
+    private static void assertSamePixels(final BufferedImage expected, final BufferedImage actual) {
+        Assertions.assertEquals(expected.getWidth(), actual.getWidth());
+        Assertions.assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < actual.getHeight(); y++) {
+            for (int x = 0; x < actual.getWidth(); x++) {
+                Assertions.assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+    /**
+     * Test that a decoder can be reused after a progressive image.
+     */
+    @Test
+    public void testDecodeWithOneInstance() throws Exception {
+        final File progressiveFile = new File(ImagingTestConstants.TEST_IMAGE_FOLDER,
+                "jpg/1/Oregon Scientific DS6639 - DSC_0307 - small.jpg");
+        final File sequentialFile = new File(ImagingTestConstants.TEST_IMAGE_FOLDER,
+                "jpg/2/2008-07-27+-+Photo+216+-+WE+a+l'etang+de+Blodelsheim.jpg");
+        try (ByteSourceFile progressive = new ByteSourceFile(progressiveFile);
+                ByteSourceFile sequential = new ByteSourceFile(sequentialFile)) {
+            final JpegDecoder decoder = new JpegDecoder();
+            decoder.decode(progressive);
+            assertSamePixels(new JpegDecoder().decode(sequential), decoder.decode(sequential));
+            decoder.decodeCoefficients(progressive);
+            final JpegCoefficients coefficients = decoder.decodeCoefficients(sequential);
+            final JpegCoefficients expected = new JpegDecoder().decodeCoefficients(sequential);
+            for (int i = 0; i < expected.getComponentCount(); i++) {
+                Assertions.assertArrayEquals(expected.getCoefficients(i), coefficients.getCoefficients(i));
+            }
+        }
+    }
+
+    /**
+     * Test that the restart interval of an image is not applied to the
+     * next one, which has none.
+     */
+    @Test
+    public void testDecodeWithOneInstanceAfterRestartIntervals() throws Exception {
+        final File restartFile = new File(ImagingTestConstants.TEST_IMAGE_FOLDER, "jpg/7/_DSC6099.jpg");
+        final File sequentialFile = new File(ImagingTestConstants.TEST_IMAGE_FOLDER,
+                "jpg/2/2008-07-27+-+Photo+216+-+WE+a+l'etang+de+Blodelsheim.jpg");
+        try (ByteSourceFile restart = new ByteSourceFile(restartFile);
+                ByteSourceFile sequential = new ByteSourceFile(sequentialFile)) {
+            final JpegDecoder decoder = new JpegDecoder();
+            decoder.decode(restart);
+            assertSamePixels(new JpegDecoder().decode(sequential), decoder.decode(sequential));
+        }
+    }
+
+    public static Stream<Integer> scaleDenominators() {
+        return Stream.of(2, 4, 8);
+    }
+
+    /**
+     * Test that decoding at a smaller scale yields about the means of the
+     * groups of pixels, for a 4:2:0 image and a progressive one. At 1/8
+     * scale only the DC coefficients contribute and the pixels are the
+     * means of the 8x8 blocks; at 1/2 and 1/4 the dropped frequencies make
+     * single pixels differ more.
+     */
+    @ParameterizedTest
+    @MethodSource("scaleDenominators")
+    public void testDecodeScaled(final int denominator) throws Exception {
+        final File progressiveFile = new File(ImagingTestConstants.TEST_IMAGE_FOLDER,
+                "jpg/1/Oregon Scientific DS6639 - DSC_0307 - small.jpg");
+        // the JDK writes 4:2:0 images
+        final ByteArrayOutputStream subsampled = new ByteArrayOutputStream();
+        ImageIO.write(ImageIO.read(new File(ImagingTestConstants.TEST_IMAGE_FOLDER, "jpg/7/_DSC6099.jpg")),
+                "jpeg", subsampled);
+        final Map<String, Object> params = new HashMap<>();
+        params.put(JpegConstants.PARAM_KEY_JPEG_SCALE_DENOMINATOR, denominator);
+        for (final byte[] bytes : new byte[][] { subsampled.toByteArray(),
+                Files.readAllBytes(progressiveFile.toPath()) }) {
+            final ByteSourceArray byteSource = new ByteSourceArray(bytes);
+            final BufferedImage full = new JpegDecoder().decode(byteSource);
+            final BufferedImage image = new JpegDecoder(params).decode(byteSource);
+            Assertions.assertEquals((full.getWidth() + denominator - 1) / denominator, image.getWidth());
+            Assertions.assertEquals((full.getHeight() + denominator - 1) / denominator, image.getHeight());
+            long totalDifference = 0;
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    final int argb = image.getRGB(x, y);
+                    for (int shift = 0; shift < 24; shift += 8) {
+                        int sum = 0;
+                        int count = 0;
+                        for (int yy = denominator * y;
+                                yy < Math.min(denominator * (y + 1), full.getHeight()); yy++) {
+                            for (int xx = denominator * x;
+                                    xx < Math.min(denominator * (x + 1), full.getWidth()); xx++) {
+                                sum += (full.getRGB(xx, yy) >> shift) & 0xff;
+                                count++;
+                            }
+                        }
+                        final int difference = Math.abs(((argb >> shift) & 0xff)
+                                - Math.round(sum / (float) count));
+                        if (denominator == 8) {
+                            Assertions.assertTrue(difference <= 6);
+                        }
+                        totalDifference += difference;
+                    }
+                }
+            }
+            final double meanDifference = totalDifference / (3.0 * image.getWidth() * image.getHeight());
+            Assertions.assertTrue(meanDifference < 5, "mean difference " + meanDifference);
+        }
+    }
+
+    /**
+     * Test that decoding the restart intervals in parallel yields the same
+     * samples as decoding them one after another. The parallel decode runs
+     * in a pool of its own, so the intervals are split into several tasks
+     * however many processors the common pool has.
+     */
+    @Test
+    public void testDecodeRestartIntervalsInParallel() throws Exception {
+        final File inputFile = new File(ImagingTestConstants.TEST_IMAGE_FOLDER, "jpg/7/_DSC6099.jpg");
+        final Map<String, Object> params = new HashMap<>();
+        params.put(JpegConstants.PARAM_KEY_JPEG_PARALLEL_DECODE, Boolean.TRUE);
+        final BufferedImage sequential;
+        final BufferedImage parallel;
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try (ByteSourceFile byteSource = new ByteSourceFile(inputFile)) {
+            sequential = new JpegDecoder().decode(byteSource);
+            parallel = pool.submit(() -> new JpegDecoder(params).decode(byteSource)).get();
+        } finally {
+            pool.shutdown();
+        }
+        Assertions.assertEquals(sequential.getWidth(), parallel.getWidth());
+        Assertions.assertEquals(sequential.getHeight(), parallel.getHeight());
+        for (int y = 0; y < parallel.getHeight(); y++) {
+            for (int x = 0; x < parallel.getWidth(); x++) {
+                Assertions.assertEquals(sequential.getRGB(x, y), parallel.getRGB(x, y));
+            }
+        }
+    }
+
+    /**
+     * Test that decoding a region yields the same samples as cropping the
+     * whole image.
+     */
+    @Test
+    public void testDecodeRegion() throws Exception {
+        for (final String name : new String[] { "jpg/7/_DSC6099.jpg",
+                "jpg/1/Oregon Scientific DS6639 - DSC_0307 - small.jpg" }) {
+            final File inputFile = new File(ImagingTestConstants.TEST_IMAGE_FOLDER, name);
+            final BufferedImage full;
+            final Rectangle region;
+            final BufferedImage image;
+            try (ByteSourceFile byteSource = new ByteSourceFile(inputFile)) {
+                full = new JpegDecoder().decode(byteSource);
+                region = new Rectangle(full.getWidth() / 3 + 5, full.getHeight() / 4 + 3,
+                        full.getWidth() / 3, full.getHeight() / 2);
+                final Map<String, Object> params = new HashMap<>();
+                params.put(JpegConstants.PARAM_KEY_JPEG_REGION, region);
+                image = new JpegDecoder(params).decode(byteSource);
+            }
+            Assertions.assertEquals(region.width, image.getWidth());
+            Assertions.assertEquals(region.height, image.getHeight());
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    Assertions.assertEquals(full.getRGB(region.x + x, region.y + y), image.getRGB(x, y));
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that a region outside the image is rejected.
+     */
+    @Test
+    public void testDecodeRegionOutsideImage() throws Exception {
+        final File inputFile = new File(ImagingTestConstants.TEST_IMAGE_FOLDER, "jpg/7/_DSC6099.jpg");
+        final Map<String, Object> params = new HashMap<>();
+        params.put(JpegConstants.PARAM_KEY_JPEG_REGION, new Rectangle(0, 0, 100000, 10));
+        try (ByteSourceFile byteSource = new ByteSourceFile(inputFile)) {
+            Assertions.assertThrows(ImageReadException.class, () -> {
+                new JpegDecoder(params).decode(byteSource);
+            });
+        }
+    }
+
+    /**
+     * Test that the rows passed to a row sink make up the decoded image.
+     */
+    @Test
+    public void testDecodeToRowSink() throws Exception {
+        for (final String name : new String[] { "jpg/7/_DSC6099.jpg",
+                "jpg/1/Oregon Scientific DS6639 - DSC_0307 - small.jpg" }) {
+            final File inputFile = new File(ImagingTestConstants.TEST_IMAGE_FOLDER, name);
+            final BufferedImage image;
+            final int[] nextRow = new int[1];
+            try (ByteSourceFile byteSource = new ByteSourceFile(inputFile)) {
+                image = new JpegDecoder().decode(byteSource);
+                new JpegDecoder().decode(byteSource, new JpegDecoder.RowSink() {
+                    @Override
+                    public void begin(final int width, final int height) {
+                        Assertions.assertEquals(image.getWidth(), width);
+                        Assertions.assertEquals(image.getHeight(), height);
+                    }
+
+                    @Override
+                    public void rows(final int y, final int count, final int[] rgb, final int offset) {
+                        Assertions.assertEquals(nextRow[0], y);
+                        for (int i = 0; i < count * image.getWidth(); i++) {
+                            Assertions.assertEquals(image.getRGB(i % image.getWidth(), y + i / image.getWidth()),
+                                    0xff000000 | rgb[offset + i]);
+                        }
+                        nextRow[0] = y + count;
+                    }
+                });
+            }
+            Assertions.assertEquals(image.getHeight(), nextRow[0]);
+        }
+    }
 }
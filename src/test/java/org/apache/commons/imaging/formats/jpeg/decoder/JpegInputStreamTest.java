@@ -28,10 +28,10 @@ public class JpegInputStreamTest {
 
   @Test
   public void testNextBitThrowsImageReadExceptionOne() {
-    final int[] byteArray = new int[6];
+    final byte[] byteArray = new byte[6];
     byteArray[0] = (byte) (-1);
     byteArray[1] = (byte) 74;
-    final JpegInputStream jpegInputStream = new JpegInputStream(byteArray);
+    final JpegInputStream jpegInputStream = new JpegInputStream(byteArray, 0, byteArray.length);
 
     Assertions.assertThrows(ImageReadException.class, () -> {
         jpegInputStream.nextBit();
@@ -41,8 +41,8 @@ public class JpegInputStreamTest {
 
   @Test
   public void testNextBitThrowsImageReadExceptionTwo() {
-    final int[] byteArray = new int[0];
-    final JpegInputStream jpegInputStream = new JpegInputStream(byteArray);
+    final byte[] byteArray = new byte[0];
+    final JpegInputStream jpegInputStream = new JpegInputStream(byteArray, 0, byteArray.length);
 
     Assertions.assertThrows(IllegalStateException.class, () -> {
         jpegInputStream.nextBit();
@@ -50,4 +50,18 @@ public class JpegInputStreamTest {
 
   }
 
+  @Test
+  public void testNextBitsSkipsStuffedZero() throws ImageReadException {
+    final byte[] byteArray = { (byte) 0xff, 0x00, (byte) 0xa5 };
+    final JpegInputStream jpegInputStream = new JpegInputStream(byteArray, 0, byteArray.length);
+
+    Assertions.assertEquals(0xff, jpegInputStream.peekBits(8));
+    Assertions.assertEquals(0xffa, jpegInputStream.nextBits(12));
+    Assertions.assertEquals(0x5, jpegInputStream.nextBits(4));
+    Assertions.assertFalse(jpegInputStream.hasNext());
+    Assertions.assertThrows(IllegalStateException.class, () -> {
+        jpegInputStream.nextBit();
+    });
+  }
+
 }
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.imaging.formats.jpeg.decoder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class YCbCrConverterTest {
+
+    private static final int SAMPLES = 64;
+    private static final int UNTOUCHED = 0x12345678;
+
+    private final int[] ys = new int[SAMPLES];
+    private final int[] cbs = new int[SAMPLES];
+    private final int[] crs = new int[SAMPLES];
+
+    public YCbCrConverterTest() {
+        final Random random = new Random(0);
+        for (int i = 0; i < SAMPLES; i++) {
+            ys[i] = random.nextInt(256);
+            cbs[i] = random.nextInt(256);
+            crs[i] = random.nextInt(256);
+        }
+        // the extremes of every component
+        ys[0] = 0;
+        cbs[0] = 0;
+        crs[0] = 255;
+        ys[1] = 255;
+        cbs[1] = 255;
+        crs[1] = 0;
+    }
+
+    @Test
+    public void testConvertRow() {
+        for (final int yIndex : new int[] { 0, 3 }) {
+            for (final int cIndex : new int[] { 0, 5 }) {
+                for (int count = 0; count <= 17; count++) {
+                    final int[] rgb = new int[SAMPLES];
+                    Arrays.fill(rgb, UNTOUCHED);
+                    YCbCrConverter.convertRow(ys, yIndex, cbs, crs, cIndex, count, rgb, 2);
+                    for (int i = 0; i < rgb.length; i++) {
+                        final int expected = i >= 2 && i < 2 + count
+                                ? YCbCrConverter.convertYCbCrToRGB(ys[yIndex + i - 2],
+                                        cbs[cIndex + i - 2], crs[cIndex + i - 2])
+                                : UNTOUCHED;
+                        assertEquals(expected, rgb[i], "pixel " + i + " of " + count);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testConvertRowHalfChroma() {
+        for (final int cRowIndex : new int[] { 0, 5 }) {
+            // even and odd start columns
+            for (int x = 0; x <= 3; x++) {
+                // even and odd widths
+                for (int count = 0; count <= 17; count++) {
+                    final int[] rgb = new int[SAMPLES];
+                    Arrays.fill(rgb, UNTOUCHED);
+                    YCbCrConverter.convertRowHalfChroma(ys, 7 + x, cbs, crs, cRowIndex, x, count,
+                            rgb, 1);
+                    for (int i = 0; i < rgb.length; i++) {
+                        int expected = UNTOUCHED;
+                        if (i >= 1 && i < 1 + count) {
+                            final int column = x + i - 1;
+                            final int c = cRowIndex + (column >> 1);
+                            expected = YCbCrConverter.convertYCbCrToRGB(ys[7 + column], cbs[c], crs[c]);
+                        }
+                        assertEquals(expected, rgb[i], "pixel " + i + " of " + count + " from x " + x);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.imaging.formats.jpeg.encoder;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.imaging.ImageFormats;
+import org.apache.commons.imaging.ImageInfo;
+import org.apache.commons.imaging.ImageWriteException;
+import org.apache.commons.imaging.Imaging;
+import org.apache.commons.imaging.ImagingTestConstants;
+import org.apache.commons.imaging.formats.jpeg.JpegConstants;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the JpegEncoder.
+ */
+public class JpegEncoderTest {
+
+    private static BufferedImage readTestImage(final int type) throws Exception {
+        final BufferedImage image = ImageIO.read(new File(ImagingTestConstants.TEST_IMAGE_FOLDER,
+                "png/2/12118.png"));
+        final BufferedImage result = new BufferedImage(image.getWidth(), image.getHeight(), type);
+        result.getGraphics().drawImage(image, 0, 0, null);
+        return result;
+    }
+
+    private static byte[] encode(final BufferedImage image, final Map<String, Object> params)
+            throws Exception {
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        new JpegEncoder(params).encode(image, os);
+        return os.toByteArray();
+    }
+
+    private static double psnr(final BufferedImage image, final BufferedImage reference) {
+        long squaredError = 0;
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                final int rgb = image.getRGB(x, y);
+                final int referenceRgb = reference.getRGB(x, y);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    final int difference = ((rgb >> shift) & 0xff) - ((referenceRgb >> shift) & 0xff);
+                    squaredError += difference * difference;
+                }
+            }
+        }
+        final double mse = squaredError / (3.0 * image.getWidth() * image.getHeight());
+        return 10 * Math.log10(255 * 255 / mse);
+    }
+
+    /**
+     * Test that the written images decode, with our decoder and the JDK's,
+     * close to the original at each subsampling.
+     */
+    @Test
+    public void testEncode() throws Exception {
+        final BufferedImage image = readTestImage(BufferedImage.TYPE_INT_RGB);
+        for (final int subsampling : new int[] { JpegConstants.JPEG_CHROMA_SUBSAMPLING_444,
+                JpegConstants.JPEG_CHROMA_SUBSAMPLING_422, JpegConstants.JPEG_CHROMA_SUBSAMPLING_420 }) {
+            final Map<String, Object> params = new HashMap<>();
+            params.put(JpegConstants.PARAM_KEY_JPEG_QUALITY, 90);
+            params.put(JpegConstants.PARAM_KEY_JPEG_CHROMA_SUBSAMPLING, subsampling);
+            final ByteArrayOutputStream os = new ByteArrayOutputStream();
+            Imaging.writeImage(image, os, ImageFormats.JPEG, params);
+            final byte[] bytes = os.toByteArray();
+
+            final BufferedImage decoded = Imaging.getBufferedImage(bytes);
+            Assertions.assertEquals(image.getWidth(), decoded.getWidth());
+            Assertions.assertEquals(image.getHeight(), decoded.getHeight());
+            Assertions.assertTrue(psnr(decoded, image) > 33);
+            Assertions.assertTrue(psnr(ImageIO.read(new ByteArrayInputStream(bytes)), image) > 33);
+        }
+    }
+
+    /**
+     * Test that optimized Huffman tables make the file smaller without
+     * changing the pixels.
+     */
+    @Test
+    public void testEncodeOptimizedHuffman() throws Exception {
+        final BufferedImage image = readTestImage(BufferedImage.TYPE_INT_RGB);
+        final Map<String, Object> params = new HashMap<>();
+        final byte[] standard = encode(image, params);
+        params.put(JpegConstants.PARAM_KEY_JPEG_OPTIMIZE_HUFFMAN, Boolean.TRUE);
+        final byte[] optimized = encode(image, params);
+        Assertions.assertTrue(optimized.length < standard.length);
+
+        final BufferedImage standardImage = Imaging.getBufferedImage(standard);
+        final BufferedImage optimizedImage = Imaging.getBufferedImage(optimized);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                Assertions.assertEquals(standardImage.getRGB(x, y), optimizedImage.getRGB(x, y));
+            }
+        }
+    }
+
+    /**
+     * Test that images read from the int array are written like images
+     * read with getRGB, including sub-images sharing the array.
+     */
+    @Test
+    public void testEncodeImageTypes() throws Exception {
+        final BufferedImage image = readTestImage(BufferedImage.TYPE_INT_RGB);
+        final Map<String, Object> params = new HashMap<>();
+        final byte[] expected = encode(readTestImage(BufferedImage.TYPE_3BYTE_BGR), params);
+        Assertions.assertArrayEquals(expected, encode(image, params));
+        Assertions.assertArrayEquals(expected, encode(readTestImage(BufferedImage.TYPE_INT_ARGB), params));
+
+        final BufferedImage subimage = image.getSubimage(13, 7, 101, 55);
+        final BufferedImage copy = new BufferedImage(101, 55, BufferedImage.TYPE_3BYTE_BGR);
+        copy.getGraphics().drawImage(subimage, 0, 0, null);
+        Assertions.assertArrayEquals(encode(copy, params), encode(subimage, params));
+    }
+
+    /**
+     * Test that grayscale images are written with a single component.
+     */
+    @Test
+    public void testEncodeGray() throws Exception {
+        final BufferedImage image = readTestImage(BufferedImage.TYPE_BYTE_GRAY);
+        final byte[] bytes = encode(image, null);
+        Assertions.assertEquals(ImageInfo.ColorType.GRAYSCALE, Imaging.getImageInfo(bytes).getColorType());
+        Assertions.assertTrue(psnr(ImageIO.read(new ByteArrayInputStream(bytes)), image) > 33);
+    }
+
+    @Test
+    public void testInvalidParameters() {
+        final Map<String, Object> params = new HashMap<>();
+        params.put(JpegConstants.PARAM_KEY_JPEG_QUALITY, 0);
+        Assertions.assertThrows(ImageWriteException.class, () -> new JpegEncoder(params));
+        params.put(JpegConstants.PARAM_KEY_JPEG_QUALITY, 100);
+        params.put(JpegConstants.PARAM_KEY_JPEG_CHROMA_SUBSAMPLING, 411);
+        Assertions.assertThrows(ImageWriteException.class, () -> new JpegEncoder(params));
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.imaging.formats.jpeg.encoder;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.apache.commons.imaging.ImageWriteException;
+import org.apache.commons.imaging.Imaging;
+import org.apache.commons.imaging.ImagingTestConstants;
+import org.apache.commons.imaging.common.bytesource.ByteSourceArray;
+import org.apache.commons.imaging.formats.jpeg.JpegConstants;
+import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
+import org.apache.commons.imaging.formats.jpeg.encoder.JpegTranscoder.Transform;
+import org.apache.commons.imaging.formats.jpeg.exif.ExifRewriter;
+import org.apache.commons.imaging.formats.tiff.TiffImageMetadata;
+import org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants;
+import org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputDirectory;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the JpegTranscoder.
+ */
+public class JpegTranscoderTest {
+
+    private static BufferedImage readTestImage(final int width, final int height) throws Exception {
+        final BufferedImage image = ImageIO.read(new File(ImagingTestConstants.TEST_IMAGE_FOLDER,
+                "png/2/12118.png"));
+        final BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        result.getGraphics().drawImage(image, -200, -150, null);
+        return result;
+    }
+
+    private static byte[] encode(final BufferedImage image, final int subsampling) throws Exception {
+        final Map<String, Object> params = new HashMap<>();
+        params.put(JpegConstants.PARAM_KEY_JPEG_QUALITY, 90);
+        params.put(JpegConstants.PARAM_KEY_JPEG_CHROMA_SUBSAMPLING, subsampling);
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        new JpegEncoder(params).encode(image, os);
+        return os.toByteArray();
+    }
+
+    private static byte[] encodeProgressive(final BufferedImage image) throws Exception {
+        final ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        final ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(os)) {
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return os.toByteArray();
+    }
+
+    private static byte[] transform(final byte[] bytes, final Transform transform,
+            final Map<String, Object> params) throws Exception {
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        new JpegTranscoder(params).transform(new ByteSourceArray(bytes), os, transform);
+        return os.toByteArray();
+    }
+
+    /**
+     * Transforms the pixels of the top left part of an image.
+     */
+    private static BufferedImage transformPixels(final BufferedImage image, final int width,
+            final int height, final Transform transform) {
+        final boolean transpose = transform.transpose;
+        final BufferedImage result = new BufferedImage(transpose ? height : width,
+                transpose ? width : height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < result.getHeight(); y++) {
+            for (int x = 0; x < result.getWidth(); x++) {
+                int sourceX = transpose ? y : x;
+                int sourceY = transpose ? x : y;
+                if (transform.flipX) {
+                    sourceX = width - 1 - sourceX;
+                }
+                if (transform.flipY) {
+                    sourceY = height - 1 - sourceY;
+                }
+                result.setRGB(x, y, image.getRGB(sourceX, sourceY));
+            }
+        }
+        return result;
+    }
+
+    private static double psnr(final BufferedImage image, final BufferedImage reference) {
+        long squaredError = 0;
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                final int rgb = image.getRGB(x, y);
+                final int referenceRgb = reference.getRGB(x, y);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    final int difference = ((rgb >> shift) & 0xff) - ((referenceRgb >> shift) & 0xff);
+                    squaredError += difference * difference;
+                }
+            }
+        }
+        final double mse = squaredError / (3.0 * image.getWidth() * image.getHeight());
+        return 10 * Math.log10(255 * 255 / mse);
+    }
+
+    private static void checkTransforms(final byte[] bytes, final int mcuWidth, final int mcuHeight)
+            throws Exception {
+        final BufferedImage image = Imaging.getBufferedImage(bytes);
+        for (final Transform transform : Transform.values()) {
+            final byte[] transformed = transform(bytes, transform, null);
+            // partial MCUs that would move to the left or top are dropped
+            final int width = transform.flipX
+                    ? image.getWidth() - image.getWidth() % mcuWidth : image.getWidth();
+            final int height = transform.flipY
+                    ? image.getHeight() - image.getHeight() % mcuHeight : image.getHeight();
+            final BufferedImage expected = transformPixels(image, width, height, transform);
+
+            final BufferedImage decoded = Imaging.getBufferedImage(transformed);
+            Assertions.assertEquals(expected.getWidth(), decoded.getWidth(), transform.name());
+            Assertions.assertEquals(expected.getHeight(), decoded.getHeight(), transform.name());
+            Assertions.assertTrue(psnr(decoded, expected) > 40, transform.name());
+            final BufferedImage jdkDecoded = ImageIO.read(new ByteArrayInputStream(transformed));
+            Assertions.assertEquals(expected.getWidth(), jdkDecoded.getWidth(), transform.name());
+            Assertions.assertTrue(psnr(jdkDecoded, expected) > 40, transform.name());
+        }
+    }
+
+    /**
+     * Test that each transformation moves the pixels like the
+     * transformation of the decoded image, at each subsampling.
+     */
+    @Test
+    public void testTransform() throws Exception {
+        final BufferedImage image = readTestImage(101, 55);
+        checkTransforms(encode(image, JpegConstants.JPEG_CHROMA_SUBSAMPLING_444), 8, 8);
+        checkTransforms(encode(image, JpegConstants.JPEG_CHROMA_SUBSAMPLING_422), 16, 8);
+        checkTransforms(encode(image, JpegConstants.JPEG_CHROMA_SUBSAMPLING_420), 16, 16);
+    }
+
+    @Test
+    public void testTransformProgressive() throws Exception {
+        checkTransforms(encodeProgressive(readTestImage(101, 55)), 16, 16);
+    }
+
+    /**
+     * Test that transforming back restores the coefficients exactly, and
+     * that optimized Huffman tables only change the size.
+     */
+    @Test
+    public void testTransformInverse() throws Exception {
+        final byte[] bytes = encode(readTestImage(96, 64), JpegConstants.JPEG_CHROMA_SUBSAMPLING_420);
+        final byte[] expected = transform(transform(bytes, Transform.ROTATE_180, null),
+                Transform.ROTATE_180, null);
+        Assertions.assertArrayEquals(expected, transform(transform(bytes, Transform.ROTATE_90, null),
+                Transform.ROTATE_270, null));
+        Assertions.assertArrayEquals(expected, transform(transform(bytes, Transform.TRANSVERSE, null),
+                Transform.TRANSVERSE, null));
+        Assertions.assertArrayEquals(expected, transform(transform(bytes, Transform.FLIP_HORIZONTAL, null),
+                Transform.FLIP_HORIZONTAL, null));
+        Assertions.assertArrayEquals(Imaging.getBufferedImage(bytes).getRGB(0, 0, 96, 64, null, 0, 96),
+                Imaging.getBufferedImage(expected).getRGB(0, 0, 96, 64, null, 0, 96));
+
+        final Map<String, Object> params = new HashMap<>();
+        params.put(JpegConstants.PARAM_KEY_JPEG_OPTIMIZE_HUFFMAN, Boolean.TRUE);
+        final byte[] optimized = transform(bytes, Transform.ROTATE_180, params);
+        Assertions.assertTrue(optimized.length < transform(bytes, Transform.ROTATE_180, null).length);
+        Assertions.assertArrayEquals(expected, transform(optimized, Transform.ROTATE_180, null));
+    }
+
+    @Test
+    public void testTransformTooSmall() throws Exception {
+        final byte[] bytes = encode(readTestImage(12, 12), JpegConstants.JPEG_CHROMA_SUBSAMPLING_420);
+        Assertions.assertThrows(ImageWriteException.class,
+                () -> transform(bytes, Transform.FLIP_HORIZONTAL, null));
+        Assertions.assertEquals(12, Imaging.getBufferedImage(
+                transform(bytes, Transform.TRANSPOSE, null)).getWidth());
+    }
+
+    private static void checkExif(final byte[] bytes, final int orientation, final int width,
+            final int height) throws Exception {
+        final TiffImageMetadata exif = ((JpegImageMetadata) Imaging.getMetadata(bytes)).getExif();
+        Assertions.assertEquals(orientation,
+                exif.findField(TiffTagConstants.TIFF_TAG_ORIENTATION).getIntValue());
+        Assertions.assertEquals(width,
+                exif.findField(ExifTagConstants.EXIF_TAG_EXIF_IMAGE_WIDTH).getIntValue());
+        Assertions.assertEquals(height,
+                exif.findField(ExifTagConstants.EXIF_TAG_EXIF_IMAGE_LENGTH).getIntValue());
+    }
+
+    /**
+     * Test that the EXIF orientation and dimensions describe the
+     * transformed image only when asked to.
+     */
+    @Test
+    public void testResetExifOrientation() throws Exception {
+        final TiffOutputSet outputSet = new TiffOutputSet();
+        outputSet.getOrCreateRootDirectory().add(TiffTagConstants.TIFF_TAG_ORIENTATION,
+                (short) TiffTagConstants.ORIENTATION_VALUE_ROTATE_90_CW);
+        final TiffOutputDirectory exifDirectory = outputSet.getOrCreateExifDirectory();
+        exifDirectory.add(ExifTagConstants.EXIF_TAG_EXIF_IMAGE_WIDTH, (short) 96);
+        exifDirectory.add(ExifTagConstants.EXIF_TAG_EXIF_IMAGE_LENGTH, (short) 64);
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        new ExifRewriter().updateExifMetadataLossless(
+                encode(readTestImage(96, 64), JpegConstants.JPEG_CHROMA_SUBSAMPLING_420), os, outputSet);
+        final byte[] bytes = os.toByteArray();
+        final Transform transform = Transform.forExifOrientation(
+                TiffTagConstants.ORIENTATION_VALUE_ROTATE_90_CW);
+
+        checkExif(transform(bytes, transform, null), TiffTagConstants.ORIENTATION_VALUE_ROTATE_90_CW, 96, 64);
+
+        final Map<String, Object> params = new HashMap<>();
+        params.put(JpegConstants.PARAM_KEY_JPEG_RESET_EXIF_ORIENTATION, Boolean.TRUE);
+        final byte[] upright = transform(bytes, transform, params);
+        checkExif(upright, TiffTagConstants.ORIENTATION_VALUE_HORIZONTAL_NORMAL, 64, 96);
+        Assertions.assertEquals(64, Imaging.getImageInfo(upright).getWidth());
+        checkExif(transform(bytes, Transform.ROTATE_180, params),
+                TiffTagConstants.ORIENTATION_VALUE_HORIZONTAL_NORMAL, 96, 64);
+    }
+
+    private static void assertSamePixels(final BufferedImage expected, final BufferedImage actual) {
+        Assertions.assertEquals(expected.getWidth(), actual.getWidth());
+        Assertions.assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                Assertions.assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+    private static byte[] crop(final byte[] bytes, final Rectangle region) throws Exception {
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        new JpegTranscoder(null).crop(new ByteSourceArray(bytes), os, region);
+        return os.toByteArray();
+    }
+
+    /**
+     * Test that a crop keeps the pixels of the region, from the MCU
+     * boundary at or above and left of it.
+     */
+    @Test
+    public void testCrop() throws Exception {
+        final BufferedImage image = readTestImage(101, 55);
+        final byte[] bytes = encode(image, JpegConstants.JPEG_CHROMA_SUBSAMPLING_420);
+        final BufferedImage decoded = Imaging.getBufferedImage(bytes);
+        for (final Rectangle region : new Rectangle[] { new Rectangle(37, 21, 50, 30),
+                new Rectangle(0, 0, 101, 55), new Rectangle(100, 54, 1, 1), new Rectangle(16, 0, 80, 16) }) {
+            final byte[] cropped = crop(bytes, region);
+            final int x = region.x - region.x % 16;
+            final int y = region.y - region.y % 16;
+            final BufferedImage expected = decoded.getSubimage(x, y,
+                    region.x + region.width - x, region.y + region.height - y);
+            final BufferedImage croppedImage = Imaging.getBufferedImage(cropped);
+            Assertions.assertEquals(expected.getWidth(), croppedImage.getWidth(), region.toString());
+            Assertions.assertEquals(expected.getHeight(), croppedImage.getHeight(), region.toString());
+            Assertions.assertTrue(psnr(croppedImage, expected) > 40, region.toString());
+            Assertions.assertTrue(psnr(ImageIO.read(new ByteArrayInputStream(cropped)), expected) > 40,
+                    region.toString());
+        }
+
+        // without subsampling the blocks decode exactly as before
+        final byte[] bytes444 = encode(image, JpegConstants.JPEG_CHROMA_SUBSAMPLING_444);
+        final BufferedImage expected = Imaging.getBufferedImage(bytes444).getSubimage(8, 16, 40, 24);
+        final BufferedImage croppedImage = Imaging.getBufferedImage(crop(bytes444, new Rectangle(9, 20, 39, 20)));
+        assertSamePixels(expected, croppedImage);
+
+        final byte[] progressive = encodeProgressive(image);
+        final BufferedImage progressiveCrop = Imaging.getBufferedImage(crop(progressive, new Rectangle(20, 3, 50, 10)));
+        Assertions.assertTrue(psnr(progressiveCrop,
+                Imaging.getBufferedImage(progressive).getSubimage(16, 0, 54, 13)) > 40);
+
+        Assertions.assertThrows(ImageWriteException.class, () -> crop(bytes, new Rectangle(90, 0, 20, 10)));
+        Assertions.assertThrows(ImageWriteException.class, () -> crop(bytes, new Rectangle(0, 0, 0, 10)));
+    }
+
+    /**
+     * Test that optimizing the Huffman tables makes images coded with the
+     * typical tables smaller without changing their pixels.
+     */
+    @Test
+    public void testOptimize() throws Exception {
+        final byte[] encoded = encode(readTestImage(101, 55), JpegConstants.JPEG_CHROMA_SUBSAMPLING_420);
+        final File camera = new File(ImagingTestConstants.TEST_IMAGE_FOLDER, "jpg/7/_DSC6099.jpg");
+        for (final byte[] bytes : new byte[][] { encoded, Files.readAllBytes(camera.toPath()) }) {
+            final ByteArrayOutputStream os = new ByteArrayOutputStream();
+            new JpegTranscoder(null).optimize(new ByteSourceArray(bytes), os);
+            final byte[] optimized = os.toByteArray();
+            Assertions.assertTrue(optimized.length < bytes.length);
+            assertSamePixels(Imaging.getBufferedImage(bytes), Imaging.getBufferedImage(optimized));
+            assertSamePixels(ImageIO.read(new ByteArrayInputStream(bytes)),
+                    ImageIO.read(new ByteArrayInputStream(optimized)));
+        }
+    }
+
+    /**
+     * Test that images which would grow, such as progressive ones or ones
+     * already optimized, are copied unchanged.
+     */
+    @Test
+    public void testOptimizeNeverGrows() throws Exception {
+        // the progressive scans of a photograph code it better than one
+        // sequential scan can
+        final BufferedImage photograph = ImageIO.read(new File(ImagingTestConstants.TEST_IMAGE_FOLDER,
+                "jpg/7/_DSC6099.jpg"));
+        final ByteArrayOutputStream once = new ByteArrayOutputStream();
+        new JpegTranscoder(null).optimize(new ByteSourceArray(
+                encode(readTestImage(101, 55), JpegConstants.JPEG_CHROMA_SUBSAMPLING_420)), once);
+        for (final byte[] bytes : new byte[][] { encodeProgressive(photograph), once.toByteArray() }) {
+            final ByteArrayOutputStream os = new ByteArrayOutputStream();
+            new JpegTranscoder(null).optimize(new ByteSourceArray(bytes), os);
+            final byte[] optimized = os.toByteArray();
+            Assertions.assertTrue(optimized.length <= bytes.length);
+            if (optimized.length == bytes.length) {
+                Assertions.assertArrayEquals(bytes, optimized);
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidParameters() {
+        final Map<String, Object> params = new HashMap<>();
+        params.put(JpegConstants.PARAM_KEY_JPEG_OPTIMIZE_HUFFMAN, "yes");
+        Assertions.assertThrows(ImageWriteException.class, () -> new JpegTranscoder(params));
+        params.clear();
+        params.put(JpegConstants.PARAM_KEY_JPEG_RESET_EXIF_ORIENTATION, 1);
+        Assertions.assertThrows(ImageWriteException.class, () -> new JpegTranscoder(params));
+        params.clear();
+        params.put(JpegConstants.PARAM_KEY_JPEG_QUALITY, 90);
+        Assertions.assertThrows(ImageWriteException.class, () -> new JpegTranscoder(params));
+    }
+}
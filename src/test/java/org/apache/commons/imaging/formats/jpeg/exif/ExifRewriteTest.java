@@ -19,14 +19,18 @@ package org.apache.commons.imaging.formats.jpeg.exif;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -38,6 +42,7 @@ import org.apache.commons.imaging.ImageReadException;
 import org.apache.commons.imaging.ImageWriteException;
 import org.apache.commons.imaging.Imaging;
 import org.apache.commons.imaging.common.ImageMetadata.ImageMetadataItem;
+import org.apache.commons.imaging.common.bytesource.BlockCache;
 import org.apache.commons.imaging.common.bytesource.ByteSource;
 import org.apache.commons.imaging.common.bytesource.ByteSourceArray;
 import org.apache.commons.imaging.common.bytesource.ByteSourceFile;
@@ -45,7 +50,9 @@ import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
 import org.apache.commons.imaging.formats.jpeg.JpegUtils;
 import org.apache.commons.imaging.formats.tiff.TiffField;
 import org.apache.commons.imaging.formats.tiff.TiffImageMetadata;
+import org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants;
 import org.apache.commons.imaging.formats.tiff.fieldtypes.FieldType;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputDirectory;
 import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
 import org.apache.commons.imaging.internal.Debug;
 import org.apache.commons.io.FileUtils;
@@ -254,6 +261,144 @@ public class ExifRewriteTest extends ExifBaseTest {
         rewrite(rewriter, "lossless");
     }
 
+    /**
+     * Test that the image data is passed through unchanged whatever the
+     * source and destination, including file to file copies.
+     */
+    @Test
+    public void testRewriteStreaming() throws Exception {
+        final List<File> images = getImagesWithExifData();
+        for (final File imageFile : images) {
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            new ExifRewriter().removeExifMetadata(imageFile, baos);
+            final byte[] expected = baos.toByteArray();
+
+            baos.reset();
+            try (InputStream is = new FileInputStream(imageFile)) {
+                new ExifRewriter().removeExifMetadata(is, baos);
+            }
+            assertArrayEquals(expected, baos.toByteArray());
+
+            final File tempFile = File.createTempFile("test", ".jpg");
+            try {
+                new ExifRewriter().removeExifMetadata(imageFile, tempFile);
+                assertArrayEquals(expected, FileUtils.readFileToByteArray(tempFile));
+            } finally {
+                tempFile.delete();
+            }
+        }
+
+        final File imageFile = images.get(0);
+        Assertions.assertThrows(ImageWriteException.class,
+                () -> new ExifRewriter().removeExifMetadata(imageFile, imageFile));
+    }
+
+    private static String setDescription(final TiffOutputSet outputSet, final char c,
+            final int length) throws ImageWriteException {
+        final char[] description = new char[length];
+        Arrays.fill(description, c);
+        final TiffOutputDirectory rootDirectory = outputSet.getOrCreateRootDirectory();
+        rootDirectory.removeField(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION);
+        rootDirectory.add(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION, new String(description));
+        return new String(description);
+    }
+
+    /**
+     * Test that a file is rewritten when the new EXIF segment doesn't fit,
+     * reserving fill bytes, and that the next update fits in them.
+     */
+    @Test
+    public void testUpdateInPlace() throws Exception {
+        final List<File> images = getImagesWithExifData();
+        for (final File imageFile : images) {
+            if (isPhilHarveyTestImage(imageFile)) {
+                continue;
+            }
+
+            final File tempFile = File.createTempFile("test", ".jpg");
+            try {
+                FileUtils.copyFile(imageFile, tempFile);
+                final JpegImageMetadata metadata = (JpegImageMetadata) Imaging.getMetadata(tempFile);
+                final TiffOutputSet outputSet = metadata.getExif().getOutputSet();
+
+                setDescription(outputSet, 'a', 2000);
+                try {
+                    assertFalse(new ExifRewriter().updateExifMetadataInPlace(tempFile, outputSet, 1000));
+                } catch (final ExifRewriter.ExifOverflowException e) {
+                    // the old metadata almost fills the segment already
+                    continue;
+                }
+                final byte[] rewritten = FileUtils.readFileToByteArray(tempFile);
+
+                final String description = setDescription(outputSet, 'b', 2500);
+                assertTrue(new ExifRewriter().updateExifMetadataInPlace(tempFile, outputSet, 1000));
+                final byte[] updated = FileUtils.readFileToByteArray(tempFile);
+                assertEquals(rewritten.length, updated.length);
+
+                final TiffImageMetadata newExifMetadata = ((JpegImageMetadata) Imaging.getMetadata(tempFile)).getExif();
+                assertEquals(description,
+                        newExifMetadata.findField(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION).getStringValue());
+
+                // the rest of the file is untouched
+                final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                new ExifRewriter().removeExifMetadata(rewritten, expected);
+                final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+                new ExifRewriter().removeExifMetadata(updated, actual);
+                assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+            } finally {
+                tempFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Test that back to back in place updates are seen through the shared
+     * block cache, also when the modification time of the file stays the
+     * same, as it does on file systems with coarse timestamps.
+     */
+    @Test
+    public void testUpdateInPlaceWithSharedCache() throws Exception {
+        final BlockCache previous = BlockCache.getShared();
+        BlockCache.setShared(new BlockCache(1 << 20));
+        try {
+            for (final File imageFile : getImagesWithExifData()) {
+                if (isPhilHarveyTestImage(imageFile)) {
+                    continue;
+                }
+
+                final File tempFile = File.createTempFile("test", ".jpg");
+                try {
+                    FileUtils.copyFile(imageFile, tempFile);
+                    final JpegImageMetadata metadata = (JpegImageMetadata) Imaging.getMetadata(tempFile);
+                    final TiffOutputSet outputSet = metadata.getExif().getOutputSet();
+                    setDescription(outputSet, 'x', 2000);
+                    try {
+                        // the rewrite reserves the space for the updates below
+                        assertFalse(new ExifRewriter().updateExifMetadataInPlace(tempFile, outputSet, 1000));
+                    } catch (final ExifRewriter.ExifOverflowException e) {
+                        continue;
+                    }
+
+                    for (final char c : new char[] { 'a', 'b' }) {
+                        final String description = setDescription(outputSet, c, 500);
+                        final long lastModified = tempFile.lastModified();
+                        assertTrue(new ExifRewriter().updateExifMetadataInPlace(tempFile, outputSet, 1000));
+                        tempFile.setLastModified(lastModified);
+
+                        final TiffImageMetadata exif = ((JpegImageMetadata) Imaging.getMetadata(tempFile)).getExif();
+                        assertEquals(description,
+                                exif.findField(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION).getStringValue());
+                    }
+                    return;
+                } finally {
+                    tempFile.delete();
+                }
+            }
+        } finally {
+            BlockCache.setShared(previous);
+        }
+    }
+
     private Map<Integer,TiffImageMetadata.Directory> makeDirectoryMap(final List<? extends ImageMetadataItem> directories) {
         final Map<Integer,TiffImageMetadata.Directory> directoryMap = new HashMap<>();
         for (final ImageMetadataItem element : directories) {
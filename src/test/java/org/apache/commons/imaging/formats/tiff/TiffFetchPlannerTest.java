@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.imaging.formats.tiff;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.commons.imaging.common.bytesource.ByteSource;
+import org.apache.commons.imaging.common.bytesource.ByteSourceArray;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Provides unit tests for the strip and tile fetch planner.
+ */
+public class TiffFetchPlannerTest {
+
+    private final byte[] bytes = new byte[1000];
+    private final ByteSource byteSource = new ByteSourceArray(bytes);
+    // four elements: two adjacent, one after a 50-byte gap, one far away
+    private final TiffElement.DataElement[] elements = {
+        new TiffImageData.ByteSourceData(100, 100, byteSource),
+        new TiffImageData.ByteSourceData(200, 100, byteSource),
+        new TiffImageData.ByteSourceData(350, 50, byteSource),
+        new TiffImageData.ByteSourceData(900, 100, byteSource),
+    };
+
+    public TiffFetchPlannerTest() {
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+    }
+
+    private void checkAll(final TiffFetchPlanner.Fetch fetch, final int[] order) throws IOException {
+        for (final int i : order) {
+            final TiffElement.DataElement element = elements[i];
+            assertArrayEquals(
+                Arrays.copyOfRange(bytes, (int) element.offset, (int) element.offset + element.length),
+                fetch.getData(i));
+        }
+    }
+
+    @Test
+    public void testAdjacentElementsAreMerged() throws IOException {
+        final TiffFetchPlanner planner = new TiffFetchPlanner(0, 1 << 20);
+        final TiffFetchPlanner.Fetch fetch = planner.plan(elements, new int[] {0, 1, 2, 3});
+        assertEquals(3, fetch.getRangeCount());
+        checkAll(fetch, new int[] {3, 2, 1, 0});
+        assertEquals(3, planner.getReadCount());
+        assertEquals(350, planner.getBytesRead());
+        assertEquals(350, planner.getBytesUsed());
+    }
+
+    @Test
+    public void testGapThreshold() throws IOException {
+        final TiffFetchPlanner planner = new TiffFetchPlanner(64, 1 << 20);
+        final TiffFetchPlanner.Fetch fetch = planner.plan(elements, new int[] {0, 1, 2, 3});
+        assertEquals(2, fetch.getRangeCount());
+        checkAll(fetch, new int[] {0, 1, 2, 3});
+        assertEquals(400, planner.getBytesRead());
+        assertEquals(350, planner.getBytesUsed());
+    }
+
+    @Test
+    public void testMaxReadSize() throws IOException {
+        final TiffFetchPlanner planner = new TiffFetchPlanner(1000, 150);
+        final TiffFetchPlanner.Fetch fetch = planner.plan(elements, new int[] {0, 1, 2, 3});
+        assertEquals(4, fetch.getRangeCount());
+        checkAll(fetch, new int[] {0, 1, 2, 3});
+    }
+
+    @Test
+    public void testOnlyNeededElementsAreRead() throws IOException {
+        final TiffFetchPlanner planner = new TiffFetchPlanner(-1, 1 << 20);
+        final TiffFetchPlanner.Fetch fetch = planner.plan(elements, new int[] {1, 3});
+        assertEquals(2, fetch.getRangeCount());
+        checkAll(fetch, new int[] {1, 3});
+        assertEquals(200, planner.getBytesRead());
+    }
+}
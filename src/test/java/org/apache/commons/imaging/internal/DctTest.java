@@ -15,9 +15,13 @@
  * limitations under the License.
  */
 
-package org.apache.commons.imaging.formats.jpeg.decoder;
+package org.apache.commons.imaging.internal;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
 
 import org.junit.jupiter.api.Test;
 
@@ -88,6 +92,124 @@ public class DctTest {
         }
     }
 
+    @Test
+    public void testIntegerInverseDctMatchesFloat() {
+        // the luminance table from Annex K of T.81 and a flat one
+        final int[] luminanceTable = {
+                16, 11, 10, 16, 24, 40, 51, 61,
+                12, 12, 14, 19, 26, 58, 60, 55,
+                14, 13, 16, 24, 40, 57, 69, 56,
+                14, 17, 22, 29, 51, 87, 80, 62,
+                18, 22, 37, 56, 68, 109, 103, 77,
+                24, 35, 55, 64, 81, 104, 113, 92,
+                49, 64, 78, 87, 103, 121, 120, 101,
+                72, 92, 95, 98, 112, 100, 103, 99 };
+        final int[] flatTable = new int[64];
+        Arrays.fill(flatTable, 1);
+
+        final Random random = new Random(1180);
+        final int[] samples = new int[8 * 8];
+        for (final int[] table : new int[][] { luminanceTable, flatTable }) {
+            final float[] dequantizationMatrix = new float[64];
+            for (int i = 0; i < 64; i++) {
+                dequantizationMatrix[i] = table[i];
+            }
+            Dct.scaleDequantizationMatrix(dequantizationMatrix);
+
+            long totalError = 0;
+            for (int n = 0; n < 10000; n++) {
+                // quantize the transform of a random block
+                final float[] data = new float[64];
+                for (int i = 0; i < 64; i++) {
+                    data[i] = random.nextInt(256) - 128;
+                }
+                REFERENCE_forwardDCT8x8(data);
+                final int[] coefficients = new int[64];
+                for (int i = 0; i < 64; i++) {
+                    coefficients[i] = Math.round(data[i] / table[i]);
+                }
+
+                final float[] expected = new float[64];
+                for (int i = 0; i < 64; i++) {
+                    expected[i] = coefficients[i] * dequantizationMatrix[i];
+                }
+                Dct.inverseDCT8x8(expected);
+                Dct.inverseDCT8x8(coefficients.clone(), table, samples, 0, 8, 128, 255);
+
+                for (int i = 0; i < 64; i++) {
+                    final int expectedSample = Math.max(0, Math.min(255, Math.round(expected[i] + 128)));
+                    final int error = Math.abs(expectedSample - samples[i]);
+                    assertTrue(error <= 1, "sample error " + error);
+                    totalError += error;
+                }
+            }
+            // the two transforms round differently for few samples only
+            assertTrue(totalError < 10000 * 64 / 20, "total error " + totalError);
+        }
+    }
+
+    @Test
+    public void testScaledInverseDct() {
+        final int[] table = new int[64];
+        final Random random = new Random(4);
+        for (int i = 0; i < 64; i++) {
+            table[i] = 1 + random.nextInt(16);
+        }
+        final float[] workspace = new float[16];
+        for (final int size : new int[] { 4, 2 }) {
+            for (int n = 0; n < 1000; n++) {
+                final int[] coefficients = new int[64];
+                for (int i = 0; i < 64; i++) {
+                    coefficients[i] = random.nextInt(41) - 20;
+                }
+                // the samples go to the middle of a wider buffer
+                final int stride = 3 * size;
+                final int offset = stride + size;
+                final int[] samples = new int[stride * (size + 2)];
+                Arrays.fill(samples, -1);
+                Dct.inverseDCTScaled(coefficients.clone(), table, size, workspace, samples, offset, stride,
+                        128, 255);
+
+                for (int i = 0; i < samples.length; i++) {
+                    final int x = (i - offset) % stride;
+                    final int y = (i - offset) / stride;
+                    if (i < offset || x >= size || y >= size) {
+                        assertEquals(-1, samples[i], "sample outside the block written");
+                        continue;
+                    }
+                    // the 8x8 inverse transform at the centre of the group
+                    // of pixels, which the higher frequencies do not reach
+                    final double centerX = (2 * x + 1) * 8.0 / size;
+                    final double centerY = (2 * y + 1) * 8.0 / size;
+                    double sum = 0;
+                    for (int v = 0; v < size; v++) {
+                        for (int u = 0; u < size; u++) {
+                            final double cu = (u == 0) ? Math.sqrt(0.5) : 1;
+                            final double cv = (v == 0) ? Math.sqrt(0.5) : 1;
+                            sum += cu * cv * coefficients[8 * v + u] * table[8 * v + u]
+                                    * Math.cos(centerX * u * Math.PI / 16)
+                                    * Math.cos(centerY * v * Math.PI / 16);
+                        }
+                    }
+                    final long expected = Math.max(0, Math.min(255, Math.round(sum / 4 + 128)));
+                    assertTrue(Math.abs(expected - samples[i]) <= 1,
+                            "sample " + samples[i] + " instead of " + expected);
+                }
+            }
+        }
+    }
+
+    private static void REFERENCE_forwardDCT8x8(final float[] data) {
+        final float[][] matrix = new float[8][8];
+        for (int i = 0; i < 64; i++) {
+            matrix[i / 8][i % 8] = data[i];
+        }
+        final float[][] transformed = REFERENCE_forwardDCT(matrix);
+        for (int i = 0; i < 64; i++) {
+            data[i] = transformed[i / 8][i % 8];
+        }
+    }
+
     private static float[][] REFERENCE_inverseDCT(final float[][] matrix) {
         final float[][] ret = new float[8][8];
         for (int y = 0; y < 8; y++) {
@@ -34,6 +34,8 @@ class FormatInfo {
                     COLOR_FULL_RGB, true, true), //
             new FormatInfo(ImageFormats.TIFF, true, true,
                     COLOR_FULL_RGB, true, true), //
+            new FormatInfo(ImageFormats.JPEG, true, true,
+                    COLOR_FULL_RGB, false, true, true), //
             new FormatInfo(ImageFormats.BMP, true, true,
                     COLOR_FULL_RGB, true, true), //
             new FormatInfo(ImageFormats.PCX, true, true,
@@ -51,6 +53,8 @@ class FormatInfo {
                     COLOR_FULL_RGB, true, true), //
             new FormatInfo(ImageFormats.TIFF, true, true,
                     COLOR_FULL_RGB, true, true), //
+            new FormatInfo(ImageFormats.JPEG, true, true,
+                    COLOR_FULL_RGB, false, true, true), //
             new FormatInfo(ImageFormats.BMP, true, true,
                     COLOR_FULL_RGB, true, true), //
             new FormatInfo(ImageFormats.PBM, true, true,
@@ -82,8 +86,8 @@ class FormatInfo {
                     COLOR_FULL_RGB, true, true), //
             new FormatInfo(ImageFormats.TIFF, true, true,
                     COLOR_FULL_RGB, true, true), //
-            new FormatInfo(ImageFormats.JPEG, true, false,
-                    COLOR_FULL_RGB, true, true), //
+            new FormatInfo(ImageFormats.JPEG, true, true,
+                    COLOR_FULL_RGB, false, true, true), //
             new FormatInfo(ImageFormats.BMP, true, true,
                     COLOR_FULL_RGB, true, true), //
             new FormatInfo(ImageFormats.PSD, true, false,
@@ -118,16 +122,27 @@ class FormatInfo {
     final int colorSupport;
     final boolean identicalSecondWrite;
     final boolean preservesResolution;
+    // the pixels read back only approximate the pixels written
+    final boolean lossy;
 
     FormatInfo(final ImageFormat format, final boolean canRead,
                       final boolean canWrite, final int colorSupport,
                       final boolean identicalSecondWrite,
                       final boolean preservesResolution) {
+        this(format, canRead, canWrite, colorSupport, identicalSecondWrite,
+                preservesResolution, false);
+    }
+
+    FormatInfo(final ImageFormat format, final boolean canRead,
+                      final boolean canWrite, final int colorSupport,
+                      final boolean identicalSecondWrite,
+                      final boolean preservesResolution, final boolean lossy) {
         this.canRead = canRead;
         this.canWrite = canWrite;
         this.colorSupport = colorSupport;
         this.format = format;
         this.identicalSecondWrite = identicalSecondWrite;
         this.preservesResolution = preservesResolution;
+        this.lossy = lossy;
     }
 }